@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.automodule.inject;
+
+/**
+ * Java Flight Recorder events for this plugin's look for a module-info, so
+ * a build recorded with <code>-XX:StartFlightRecording</code> accounts for
+ * it. The events live in <code>JfrAutomoduleEvents</code>, compiled for
+ * Java 11 when building on it and loaded reflectively, so the plugin still
+ * runs on Java 8; when nothing is recording, the methods here return a
+ * shared no-op.
+ *
+ * @author Tim Boudreau
+ */
+abstract class AutomoduleEvents {
+
+    private static final AutomoduleEvents INSTANCE = load();
+    static final SourceScan NO_SOURCE_SCAN = (directories, files) -> {
+    };
+
+    static AutomoduleEvents get() {
+        return INSTANCE;
+    }
+
+    private static AutomoduleEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event", false, AutomoduleEvents.class.getClassLoader());
+            return (AutomoduleEvents) Class.forName(AutomoduleEvents.class.getPackage().getName()
+                    + ".JfrAutomoduleEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return new AutomoduleEvents() {
+            };
+        }
+    }
+
+    /**
+     * Start timing a look through a project's sources.
+     *
+     * @param project The project id
+     * @return A handle to finish when done
+     */
+    SourceScan sourceScan(String project) {
+        return NO_SOURCE_SCAN;
+    }
+
+    interface SourceScan {
+
+        void finish(long directories, long files);
+    }
+}
@@ -28,7 +28,6 @@ import java.nio.file.Path;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import static org.apache.maven.plugins.annotations.InstantiationStrategy.SINGLETON;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
@@ -47,6 +46,10 @@ import org.apache.maven.project.MavenProject;
  * </p><p>
  * If a module-info.java file exists in <code>src/main/java</code>, then the
  * property will remain unset.
+ * </p><p>
+ * It touches nothing but the properties of the project it runs against, so
+ * it is safe under <code>-T</code> - provided each execution gets its own
+ * instance, since the project is injected into a field.
  * </p>
  *
  * @author Tim Boudreau
@@ -54,8 +57,7 @@ import org.apache.maven.project.MavenProject;
 @org.apache.maven.plugins.annotations.Mojo(
         defaultPhase = LifecyclePhase.INITIALIZE,
         requiresDependencyResolution = ResolutionScope.NONE,
-        instantiationStrategy = SINGLETON,
-        name = "automodule-inject", threadSafe = false)
+        name = "automodule-inject", threadSafe = true)
 public class AutomoduleInjectMojo extends AbstractMojo {
 
     /**
@@ -106,7 +108,10 @@ public class AutomoduleInjectMojo extends AbstractMojo {
         if (!skip && !"pom".equals(project.getPackaging())) {
             Path moduleInfo = project.getBasedir().toPath().resolve("src")
                     .resolve("main").resolve("java").resolve("module-info.java");
-            if (!Files.exists(moduleInfo)) {
+            AutomoduleEvents.SourceScan event = AutomoduleEvents.get().sourceScan(project.getId());
+            boolean hasModuleInfo = Files.exists(moduleInfo);
+            event.finish(1, hasModuleInfo ? 1 : 0);
+            if (!hasModuleInfo) {
                 project.getProperties().setProperty(autoModuleNameProperty,
                         autoModuleName(project.getGroupId(), project.getArtifactId()));
             }
@@ -136,7 +141,7 @@ public class AutomoduleInjectMojo extends AbstractMojo {
         return result;
     }
 
-    private static String splitAndConvert(String what) {
+    static String splitAndConvert(String what) {
         String[] parts = what.split("[\\._-]+");
         StringBuilder sb = new StringBuilder();
         for (String part : parts) {
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Mastfrog Technologies.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.mastfrog.automodule.inject;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder implementation of {@link AutomoduleEvents}, compiled
+ * for Java 11 by the <code>jfr-events</code> profile.
+ *
+ * @author Tim Boudreau
+ */
+final class JfrAutomoduleEvents extends AutomoduleEvents {
+
+    @Override
+    SourceScan sourceScan(String project) {
+        SourceScanEvent event = new SourceScanEvent();
+        if (!event.isEnabled()) {
+            return NO_SOURCE_SCAN;
+        }
+        event.project = project;
+        event.begin();
+        return event;
+    }
+
+    @Name("com.mastfrog.automodule.SourceScan")
+    @Label("Source Scan")
+    @Description("automodule-inject looking for a module-info.java in a project")
+    @Category({"Maven", "automodule-inject"})
+    static final class SourceScanEvent extends Event implements SourceScan {
+
+        @Label("Project")
+        String project;
+
+        @Label("Directories")
+        long directories;
+
+        @Label("Files")
+        @Description("The number of module-info.java files found")
+        long files;
+
+        @Override
+        public void finish(long directories, long files) {
+            end();
+            if (shouldCommit()) {
+                this.directories = directories;
+                this.files = files;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.mastfrog.build.profiler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.maven.eventspy.AbstractEventSpy;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Records per-project and per-mojo start and end times as a reactor build
+ * runs, and when the session ends writes <code>build-profile.txt</code> and
+ * <code>build-profile.json</code> to <code>target/</code> under the execution
+ * root (or the directory named by <code>-Dbuild.profiler.output</code>),
+ * including the critical path through the module graph and the total time
+ * taken by each plugin goal across all modules - which shows which bindings in
+ * the parent pom are worth optimizing or making conditional.
+ * <p>
+ * Event spies are only picked up from core extensions, so this must be loaded
+ * via <code>.mvn/extensions.xml</code> or <code>-Dmaven.ext.class.path</code>,
+ * not as a build extension. Pass <code>-Dbuild.profiler.skip</code> to
+ * disable it.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Named("mastfrog-build-profiler")
+@Singleton
+public class BuildProfiler extends AbstractEventSpy {
+
+    static final String SKIP_PROPERTY = "build.profiler.skip";
+    static final String OUTPUT_PROPERTY = "build.profiler.output";
+    private final Logger logger;
+    private final Map<String, ModuleTiming> modules = new ConcurrentHashMap<>();
+    private volatile long sessionStart;
+
+    @Inject
+    public BuildProfiler(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onEvent(Object event) throws Exception {
+        if (event instanceof ExecutionEvent) {
+            onExecutionEvent((ExecutionEvent) event, System.nanoTime());
+        }
+    }
+
+    private void onExecutionEvent(ExecutionEvent event, long now) {
+        switch (event.getType()) {
+            case SessionStarted:
+                // Under mvnd, the same spy sees many sessions
+                modules.clear();
+                sessionStart = now;
+                break;
+            case ProjectStarted:
+                ModuleTiming started = module(event.getProject());
+                started.start = now;
+                started.thread = Thread.currentThread().getName();
+                break;
+            case ProjectSucceeded:
+                projectEnded(event.getProject(), "succeeded", now);
+                break;
+            case ProjectFailed:
+                projectEnded(event.getProject(), "failed", now);
+                break;
+            case ProjectSkipped:
+                projectEnded(event.getProject(), "skipped", now);
+                break;
+            case MojoStarted:
+                MojoExecution mojo = event.getMojoExecution();
+                module(event.getProject()).mojoStarted(pluginId(mojo), mojo.getGoal(),
+                        mojo.getExecutionId(), mojo.getLifecyclePhase(), now);
+                break;
+            case MojoSucceeded:
+                mojoEnded(event, "succeeded", now);
+                break;
+            case MojoFailed:
+                mojoEnded(event, "failed", now);
+                break;
+            case MojoSkipped:
+                mojoEnded(event, "skipped", now);
+                break;
+            case SessionEnded:
+                sessionEnded(event.getSession(), now);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private ModuleTiming module(MavenProject project) {
+        return modules.computeIfAbsent(id(project),
+                id -> new ModuleTiming(id, project.getName() == null ? project.getArtifactId() : project.getName()));
+    }
+
+    private void projectEnded(MavenProject project, String status, long now) {
+        ModuleTiming timing = module(project);
+        timing.end = now;
+        timing.status = status;
+        if (timing.start == 0) {
+            // Skipped projects are never started
+            timing.start = now;
+        }
+    }
+
+    private void mojoEnded(ExecutionEvent event, String status, long now) {
+        MojoExecution mojo = event.getMojoExecution();
+        module(event.getProject()).mojoEnded(pluginId(mojo), mojo.getGoal(),
+                mojo.getExecutionId(), status, now);
+    }
+
+    private void sessionEnded(MavenSession session, long now) {
+        if (session == null || modules.isEmpty() || isSkipped(session)) {
+            return;
+        }
+        ProjectDependencyGraph graph = session.getProjectDependencyGraph();
+        Map<String, List<String>> upstream = new LinkedHashMap<>();
+        if (graph != null) {
+            for (MavenProject project : graph.getSortedProjects()) {
+                List<String> deps = new ArrayList<>();
+                for (MavenProject dep : graph.getUpstreamProjects(project, false)) {
+                    deps.add(id(dep));
+                }
+                upstream.put(id(project), deps);
+            }
+        }
+        ProfileReport report = new ProfileReport(sessionStart, now,
+                new ArrayList<>(modules.values()), upstream,
+                session.getRequest() == null ? 1 : session.getRequest().getDegreeOfConcurrency());
+        Path dir = outputDir(session);
+        try {
+            report.write(dir);
+            logger.info(report.headline());
+            logger.info("Build profile written to " + dir.resolve(ProfileReport.TEXT_REPORT));
+        } catch (IOException ex) {
+            logger.warn("Could not write build profile to " + dir, ex);
+        }
+    }
+
+    private static boolean isSkipped(MavenSession session) {
+        String val = session.getUserProperties().getProperty(SKIP_PROPERTY,
+                session.getSystemProperties().getProperty(SKIP_PROPERTY));
+        return val != null && !"false".equals(val);
+    }
+
+    private static Path outputDir(MavenSession session) {
+        String out = session.getUserProperties().getProperty(OUTPUT_PROPERTY);
+        if (out != null) {
+            return Paths.get(out);
+        }
+        String root = session.getExecutionRootDirectory();
+        return Paths.get(root == null ? "." : root, "target");
+    }
+
+    private static String pluginId(MojoExecution mojo) {
+        return mojo.getGroupId() + ":" + mojo.getArtifactId();
+    }
+
+    static String id(MavenProject project) {
+        return project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion();
+    }
+}
@@ -0,0 +1,111 @@
+package com.mastfrog.build.profiler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the longest chain of dependent modules in a reactor, weighted by how
+ * long each module took to build. No amount of parallelism can make a build
+ * faster than its critical path, so those modules - and the mojos that
+ * dominate them - are the ones worth optimizing.
+ *
+ * @author Tim Boudreau
+ */
+final class CriticalPath {
+
+    private final List<String> modules;
+    private final long nanos;
+
+    private CriticalPath(List<String> modules, long nanos) {
+        this.modules = Collections.unmodifiableList(modules);
+        this.nanos = nanos;
+    }
+
+    /**
+     * The modules on the critical path, most-upstream first.
+     *
+     * @return A list of module ids
+     */
+    List<String> modules() {
+        return modules;
+    }
+
+    /**
+     * The sum of the durations of the modules on the path.
+     *
+     * @return Nanoseconds
+     */
+    long nanos() {
+        return nanos;
+    }
+
+    /**
+     * Compute the critical path.
+     *
+     * @param durations The build duration of each module
+     * @param upstream The modules each module directly depends on; modules not
+     * present in <code>durations</code> (e.g. not built in this session) are
+     * ignored
+     * @return A critical path
+     */
+    static CriticalPath compute(Map<String, Long> durations, Map<String, ? extends Collection<String>> upstream) {
+        Map<String, Long> finish = new HashMap<>();
+        Map<String, String> predecessor = new HashMap<>();
+        String last = null;
+        long longest = -1;
+        for (String module : durations.keySet()) {
+            long f = finish(module, durations, upstream, finish, predecessor, new ArrayList<>());
+            if (f > longest || (f == longest && last != null && module.compareTo(last) < 0)) {
+                longest = f;
+                last = module;
+            }
+        }
+        List<String> path = new ArrayList<>();
+        for (String m = last; m != null; m = predecessor.get(m)) {
+            path.add(m);
+        }
+        Collections.reverse(path);
+        return new CriticalPath(path, Math.max(0, longest));
+    }
+
+    private static long finish(String module, Map<String, Long> durations,
+            Map<String, ? extends Collection<String>> upstream,
+            Map<String, Long> finish, Map<String, String> predecessor, List<String> visiting) {
+        Long cached = finish.get(module);
+        if (cached != null) {
+            return cached;
+        }
+        if (visiting.contains(module)) {
+            // Maven rejects cyclic reactors, but don't overflow the stack if
+            // we are handed one
+            throw new IllegalArgumentException("Cycle in module graph: " + visiting + " -> " + module);
+        }
+        visiting.add(module);
+        long start = 0;
+        String pred = null;
+        Collection<String> deps = upstream.get(module);
+        if (deps != null) {
+            for (String dep : deps) {
+                if (!durations.containsKey(dep)) {
+                    continue;
+                }
+                long f = finish(dep, durations, upstream, finish, predecessor, visiting);
+                if (f > start || (f == start && pred != null && dep.compareTo(pred) < 0)) {
+                    start = f;
+                    pred = dep;
+                }
+            }
+        }
+        visiting.remove(visiting.size() - 1);
+        if (pred != null) {
+            predecessor.put(module, pred);
+        }
+        long result = start + durations.get(module);
+        finish.put(module, result);
+        return result;
+    }
+}
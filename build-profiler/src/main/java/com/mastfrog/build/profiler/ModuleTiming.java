@@ -0,0 +1,85 @@
+package com.mastfrog.build.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Start and end times of one project in a reactor build, and of each mojo
+ * executed against it. Times are System.nanoTime() values.
+ *
+ * @author Tim Boudreau
+ */
+final class ModuleTiming {
+
+    final String id;
+    final String name;
+    volatile long start;
+    volatile long end;
+    volatile String thread;
+    volatile String status = "unfinished";
+    private final List<MojoTiming> mojos = new ArrayList<>();
+
+    ModuleTiming(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    long nanos() {
+        return end == 0 || start == 0 ? 0 : end - start;
+    }
+
+    synchronized MojoTiming mojoStarted(String plugin, String goal, String executionId, String phase, long now) {
+        MojoTiming result = new MojoTiming(plugin, goal, executionId, phase, now);
+        mojos.add(result);
+        return result;
+    }
+
+    synchronized MojoTiming mojoEnded(String plugin, String goal, String executionId, String status, long now) {
+        // Iterate backwards - the most recently started match is the one
+        for (int i = mojos.size() - 1; i >= 0; i--) {
+            MojoTiming m = mojos.get(i);
+            if (m.end == 0 && m.matches(plugin, goal, executionId)) {
+                m.end = now;
+                m.status = status;
+                return m;
+            }
+        }
+        return null;
+    }
+
+    synchronized List<MojoTiming> mojos() {
+        return new ArrayList<>(mojos);
+    }
+
+    static final class MojoTiming {
+
+        final String plugin;
+        final String goal;
+        final String executionId;
+        final String phase;
+        final long start;
+        long end;
+        String status = "unfinished";
+
+        MojoTiming(String plugin, String goal, String executionId, String phase, long start) {
+            this.plugin = plugin;
+            this.goal = goal;
+            this.executionId = executionId;
+            this.phase = phase;
+            this.start = start;
+        }
+
+        boolean matches(String plugin, String goal, String executionId) {
+            return this.plugin.equals(plugin) && this.goal.equals(goal)
+                    && (this.executionId == null ? executionId == null : this.executionId.equals(executionId));
+        }
+
+        String key() {
+            return plugin + ":" + goal;
+        }
+
+        long nanos() {
+            return end == 0 ? 0 : end - start;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.mastfrog.build.profiler;
+
+import com.mastfrog.build.profiler.ModuleTiming.MojoTiming;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the timings collected over a session into a text report for humans and
+ * a JSON report for tooling.
+ *
+ * @author Tim Boudreau
+ */
+final class ProfileReport {
+
+    static final String TEXT_REPORT = "build-profile.txt";
+    static final String JSON_REPORT = "build-profile.json";
+    private static final int TOP = 20;
+    private final long sessionStart;
+    private final long sessionEnd;
+    private final List<ModuleTiming> modules;
+    private final Map<String, ? extends Collection<String>> upstream;
+    private final int threads;
+    private final CriticalPath criticalPath;
+    private final List<GoalTotal> goals;
+
+    ProfileReport(long sessionStart, long sessionEnd, List<ModuleTiming> modules,
+            Map<String, ? extends Collection<String>> upstream, int threads) {
+        this.sessionStart = sessionStart == 0 ? earliestStart(modules, sessionEnd) : sessionStart;
+        this.sessionEnd = sessionEnd;
+        this.modules = new ArrayList<>(modules);
+        this.modules.sort((a, b) -> Long.compare(b.nanos(), a.nanos()));
+        this.upstream = upstream;
+        this.threads = Math.max(1, threads);
+        Map<String, Long> durations = new HashMap<>();
+        for (ModuleTiming m : modules) {
+            durations.put(m.id, m.nanos());
+        }
+        criticalPath = CriticalPath.compute(durations, upstream);
+        goals = goalTotals(modules);
+    }
+
+    private static long earliestStart(List<ModuleTiming> modules, long fallback) {
+        long result = fallback;
+        for (ModuleTiming m : modules) {
+            if (m.start != 0) {
+                result = Math.min(result, m.start);
+            }
+        }
+        return result;
+    }
+
+    private static List<GoalTotal> goalTotals(List<ModuleTiming> modules) {
+        Map<String, GoalTotal> totals = new LinkedHashMap<>();
+        for (ModuleTiming m : modules) {
+            for (MojoTiming mojo : m.mojos()) {
+                totals.computeIfAbsent(mojo.key(), GoalTotal::new).add(mojo);
+            }
+        }
+        List<GoalTotal> result = new ArrayList<>(totals.values());
+        result.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        return result;
+    }
+
+    long wallNanos() {
+        return sessionEnd - sessionStart;
+    }
+
+    long moduleNanos() {
+        long result = 0;
+        for (ModuleTiming m : modules) {
+            result += m.nanos();
+        }
+        return result;
+    }
+
+    CriticalPath criticalPath() {
+        return criticalPath;
+    }
+
+    String headline() {
+        return "Build profile: " + modules.size() + " modules in " + ms(wallNanos())
+                + " ms with " + threads + " threads; critical path "
+                + ms(criticalPath.nanos()) + " ms through " + criticalPath.modules().size()
+                + " modules; slowest goal " + (goals.isEmpty() ? "none"
+                : goals.get(0).key + " (" + ms(goals.get(0).nanos) + " ms)");
+    }
+
+    void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        writeAtomically(dir.resolve(TEXT_REPORT), text().getBytes(StandardCharsets.UTF_8));
+        writeAtomically(dir.resolve(JSON_REPORT), json().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        // Renamed into place, so nothing reading the report sees half of one
+        Path temp = file.resolveSibling("." + file.getFileName() + "."
+                + Long.toHexString(System.nanoTime()) + "-" + Thread.currentThread().getId() + ".tmp");
+        Files.createFile(temp);
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    String text() {
+        StringBuilder sb = new StringBuilder(4096);
+        long wall = wallNanos();
+        long work = moduleNanos();
+        sb.append(headline()).append("\n\n");
+        sb.append(String.format("Wall time:            %10d ms%n", ms(wall)));
+        sb.append(String.format("Sum of module times:  %10d ms%n", ms(work)));
+        sb.append(String.format("Effective parallelism: %9.2f of %d threads%n",
+                wall == 0 ? 0D : (double) work / wall, threads));
+        sb.append(String.format("Critical path:        %10d ms (%.0f%% of wall time)%n%n",
+                ms(criticalPath.nanos()), wall == 0 ? 0D : 100D * criticalPath.nanos() / wall));
+
+        sb.append("Critical path, most upstream first:\n");
+        Map<String, ModuleTiming> byId = new HashMap<>();
+        for (ModuleTiming m : modules) {
+            byId.put(m.id, m);
+        }
+        for (String id : criticalPath.modules()) {
+            ModuleTiming m = byId.get(id);
+            sb.append(String.format("  %10d ms  %s%n", ms(m.nanos()), id));
+            List<MojoTiming> mojos = m.mojos();
+            mojos.sort((a, b) -> Long.compare(b.nanos(), a.nanos()));
+            for (int i = 0; i < Math.min(3, mojos.size()); i++) {
+                MojoTiming mojo = mojos.get(i);
+                sb.append(String.format("      %10d ms  %s (%s)%n", ms(mojo.nanos()),
+                        mojo.key(), mojo.executionId));
+            }
+        }
+
+        sb.append("\nTime by goal, summed across modules:\n");
+        sb.append(String.format("  %10s %10s %6s %10s  %s%n", "total ms", "on path", "count", "max ms", "goal"));
+        for (GoalTotal g : goals) {
+            long onPath = 0;
+            for (String id : criticalPath.modules()) {
+                for (MojoTiming mojo : byId.get(id).mojos()) {
+                    if (mojo.key().equals(g.key)) {
+                        onPath += mojo.nanos();
+                    }
+                }
+            }
+            sb.append(String.format("  %10d %10d %6d %10d  %s%n", ms(g.nanos), ms(onPath),
+                    g.count, ms(g.max), g.key));
+        }
+
+        sb.append("\nSlowest modules:\n");
+        for (int i = 0; i < Math.min(TOP, modules.size()); i++) {
+            ModuleTiming m = modules.get(i);
+            sb.append(String.format("  %10d ms  +%8d ms  %-9s %-24s %s%n", ms(m.nanos()),
+                    ms(m.start - sessionStart), m.status, m.thread, m.id));
+        }
+        return sb.toString();
+    }
+
+    String json() {
+        StringBuilder sb = new StringBuilder(2048 + modules.size() * 512);
+        sb.append("{\n  \"wallNanos\": ").append(wallNanos())
+                .append(",\n  \"threads\": ").append(threads)
+                .append(",\n  \"criticalPathNanos\": ").append(criticalPath.nanos())
+                .append(",\n  \"criticalPath\": [");
+        List<String> path = criticalPath.modules();
+        for (int i = 0; i < path.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(quote(path.get(i)));
+        }
+        sb.append("],\n  \"goals\": [");
+        for (int i = 0; i < goals.size(); i++) {
+            GoalTotal g = goals.get(i);
+            sb.append(i == 0 ? "\n" : ",\n").append("    {\"goal\": ").append(quote(g.key))
+                    .append(", \"nanos\": ").append(g.nanos)
+                    .append(", \"count\": ").append(g.count)
+                    .append(", \"maxNanos\": ").append(g.max).append('}');
+        }
+        sb.append("\n  ],\n  \"modules\": [");
+        for (int i = 0; i < modules.size(); i++) {
+            ModuleTiming m = modules.get(i);
+            sb.append(i == 0 ? "\n" : ",\n").append("    {\"id\": ").append(quote(m.id))
+                    .append(", \"status\": ").append(quote(m.status))
+                    .append(", \"thread\": ").append(quote(String.valueOf(m.thread)))
+                    .append(", \"startNanos\": ").append(m.start - sessionStart)
+                    .append(", \"nanos\": ").append(m.nanos())
+                    .append(", \"upstream\": [");
+            Collection<String> deps = upstream.get(m.id);
+            if (deps != null) {
+                int ix = 0;
+                for (String dep : deps) {
+                    sb.append(ix++ == 0 ? "" : ", ").append(quote(dep));
+                }
+            }
+            sb.append("], \"mojos\": [");
+            List<MojoTiming> mojos = m.mojos();
+            for (int j = 0; j < mojos.size(); j++) {
+                MojoTiming mojo = mojos.get(j);
+                sb.append(j == 0 ? "\n" : ",\n").append("      {\"goal\": ").append(quote(mojo.key()))
+                        .append(", \"execution\": ").append(quote(String.valueOf(mojo.executionId)))
+                        .append(", \"phase\": ").append(quote(String.valueOf(mojo.phase)))
+                        .append(", \"status\": ").append(quote(mojo.status))
+                        .append(", \"startNanos\": ").append(mojo.start - sessionStart)
+                        .append(", \"nanos\": ").append(mojo.nanos()).append('}');
+            }
+            sb.append(mojos.isEmpty() ? "]}" : "\n    ]}");
+        }
+        return sb.append("\n  ]\n}\n").toString();
+    }
+
+    private static long ms(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class GoalTotal {
+
+        final String key;
+        long nanos;
+        long max;
+        int count;
+
+        GoalTotal(String key) {
+            this.key = key;
+        }
+
+        void add(MojoTiming mojo) {
+            long n = mojo.nanos();
+            nanos += n;
+            max = Math.max(max, n);
+            count++;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.mastfrog.build.profiler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class CriticalPathTest {
+
+    @Test
+    public void testLongestWeightedChainWins() {
+        // util -> strings -> acteur is longer in time than util -> giulius -> acteur
+        // even though both have three modules
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("util", 10L);
+        durations.put("strings", 50L);
+        durations.put("giulius", 20L);
+        durations.put("acteur", 5L);
+        durations.put("blurt", 40L);
+        Map<String, List<String>> upstream = new HashMap<>();
+        upstream.put("strings", Collections.singletonList("util"));
+        upstream.put("giulius", Collections.singletonList("util"));
+        upstream.put("acteur", Arrays.asList("giulius", "strings"));
+        upstream.put("blurt", Collections.singletonList("util"));
+        CriticalPath path = CriticalPath.compute(durations, upstream);
+        assertEquals(Arrays.asList("util", "strings", "acteur"), path.modules());
+        assertEquals(65L, path.nanos());
+    }
+
+    @Test
+    public void testModulesNotInSessionAreIgnored() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("acteur", 5L);
+        Map<String, List<String>> upstream = new HashMap<>();
+        upstream.put("acteur", Collections.singletonList("util"));
+        CriticalPath path = CriticalPath.compute(durations, upstream);
+        assertEquals(Collections.singletonList("acteur"), path.modules());
+        assertEquals(5L, path.nanos());
+    }
+
+    @Test
+    public void testEmpty() {
+        CriticalPath path = CriticalPath.compute(Collections.emptyMap(), Collections.emptyMap());
+        assertEquals(Collections.emptyList(), path.modules());
+        assertEquals(0L, path.nanos());
+    }
+}
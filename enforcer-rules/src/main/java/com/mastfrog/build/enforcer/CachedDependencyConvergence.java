@@ -0,0 +1,343 @@
+package com.mastfrog.build.enforcer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.enforcer.rule.api.EnforcerRule;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleHelper;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A drop-in replacement for the enforcer plugin's
+ * <code>DependencyConvergence</code> rule for large reactors. The stock rule
+ * collects and walks the full, unreduced dependency graph of every module,
+ * even though most modules in a reactor like this one share most of their
+ * dependencies. This rule instead:
+ * <ul>
+ * <li>Collects the graph beneath each direct dependency separately, and
+ * memoizes it for the rest of the session by coordinate, exclusions,
+ * dependency management and repositories - so a library used by fifty modules
+ * is collected once, not fifty times</li>
+ * <li>Memoizes the verdict for a module by a fingerprint of its declared
+ * dependencies, dependency management and repositories, so modules with
+ * identical dependency sets are checked once</li>
+ * <li>Persists that fingerprint, under the local repository, once a
+ * dependency set is known to converge, so later builds skip collection
+ * entirely. Graphs containing version ranges, or snapshots which are not
+ * projects in the reactor, are never persisted, since the same declarations
+ * can collect differently tomorrow; the fingerprint of a dependency on a
+ * reactor project includes that project's own fingerprint</li>
+ * </ul>
+ * Configure it in place of <code>&lt;DependencyConvergence/&gt;</code>, with
+ * this artifact as a dependency of the enforcer plugin:
+ * <pre>
+ * &lt;cachedDependencyConvergence implementation="com.mastfrog.build.enforcer.CachedDependencyConvergence"/&gt;
+ * </pre>
+ *
+ * @author Tim Boudreau
+ */
+public class CachedDependencyConvergence implements EnforcerRule {
+
+    // Bump when the fingerprint or the check changes, to orphan old stamps
+    private static final String FORMAT = "1";
+    private static final DefaultArtifact ROOT
+            = new DefaultArtifact("com.mastfrog.build.enforcer", "convergence-root", "pom", "0");
+    // Keyed on the request, which is shared by every project's copy of the
+    // session - Maven 3.6 and 3.8 clone the session for each project
+    private static final Map<MavenExecutionRequest, SessionCache> SESSIONS
+            = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * <code>groupId:artifactId</code> patterns, which may use <code>*</code>,
+     * for artifacts which are allowed to appear at more than one version.
+     */
+    private List<String> excludes;
+
+    /**
+     * If true, timestamped snapshots of the same artifact are different
+     * versions.
+     */
+    private boolean uniqueVersions;
+
+    /**
+     * If false, nothing is read from or written to disk, and only the
+     * session's memo is used.
+     */
+    private boolean persistent = true;
+
+    /**
+     * Where to record fingerprints of dependency sets known to converge;
+     * defaults to <code>.cache/mastfrog-enforcer/convergence</code> in the
+     * local repository.
+     */
+    private File cacheDirectory;
+
+    @Override
+    public void execute(EnforcerRuleHelper helper) throws EnforcerRuleException {
+        MavenProject project;
+        MavenSession session;
+        RepositorySystem system;
+        try {
+            project = (MavenProject) helper.evaluate("${project}");
+            session = (MavenSession) helper.evaluate("${session}");
+            system = helper.getComponent(RepositorySystem.class);
+        } catch (ExpressionEvaluationException | ComponentLookupException ex) {
+            throw new EnforcerRuleException("Unable to look up the project or repository system", ex);
+        }
+        Log log = helper.getLog();
+        SessionCache cache = SESSIONS.computeIfAbsent(session.getRequest(), request -> new SessionCache(session));
+        String fingerprint = cache.fingerprint(project, config());
+        String projectId = project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion();
+
+        DependencyVersions versions = cache.results.get(fingerprint);
+        if (versions == null) {
+            Path stamp = stampFile(session, fingerprint);
+            if (stamp != null && Files.exists(stamp)) {
+                log.debug("Dependencies of " + projectId + " are known to converge (" + fingerprint + ")");
+                versions = DependencyVersions.empty();
+            } else {
+                versions = collect(cache, system, project);
+                if (stamp != null && versions.conflicts(projectId, excludes).isEmpty() && persistable(cache, versions)) {
+                    writeStamp(stamp, projectId, log);
+                }
+            }
+            cache.results.putIfAbsent(fingerprint, versions);
+        } else {
+            log.debug("Dependencies of " + projectId + " already checked this session (" + fingerprint + ")");
+        }
+        List<String> conflicts = versions.conflicts(projectId, excludes);
+        if (!conflicts.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (String c : conflicts) {
+                log.warn(c);
+                sb.append(c);
+            }
+            throw new EnforcerRuleException("Failed while enforcing releasability. "
+                    + "See above detailed error message." + sb);
+        }
+    }
+
+    private String config() {
+        List<String> sorted = excludes == null ? new ArrayList<>() : new ArrayList<>(excludes);
+        Collections.sort(sorted);
+        return FORMAT + " " + uniqueVersions + " " + sorted;
+    }
+
+    private DependencyVersions collect(SessionCache cache, RepositorySystem system, MavenProject project)
+            throws EnforcerRuleException {
+        ArtifactTypeRegistry types = cache.verbose.getArtifactTypeRegistry();
+        List<Dependency> managed = new ArrayList<>();
+        List<String> managedKeys = new ArrayList<>();
+        if (project.getDependencyManagement() != null) {
+            for (org.apache.maven.model.Dependency d : project.getDependencyManagement().getDependencies()) {
+                managed.add(RepositoryUtils.toDependency(d, types));
+                managedKeys.add(coordinates(d, true));
+            }
+        }
+        List<RemoteRepository> repos = project.getRemoteProjectRepositories();
+        String context = sha256(managedKeys + " " + repositories(repos) + " " + uniqueVersions);
+        List<DependencyVersions> subtrees = new ArrayList<>();
+        for (org.apache.maven.model.Dependency d : project.getDependencies()) {
+            // Scope and optionality of a direct dependency do not change what
+            // is collected beneath it, so they are not part of the key
+            String key = coordinates(d, false) + " " + context;
+            DependencyVersions subtree = cache.subtrees.get(key);
+            if (subtree == null) {
+                CollectRequest request = new CollectRequest();
+                request.setRootArtifact(ROOT);
+                request.setDependencies(Collections.singletonList(RepositoryUtils.toDependency(d, types)));
+                request.setManagedDependencies(managed);
+                request.setRepositories(repos);
+                request.setRequestContext("project");
+                try {
+                    subtree = DependencyVersions.of(system.collectDependencies(cache.verbose, request).getRoot(),
+                            uniqueVersions);
+                } catch (DependencyCollectionException ex) {
+                    throw new EnforcerRuleException("Could not collect dependencies of "
+                            + d.getManagementKey() + ": " + ex.getMessage(), ex);
+                }
+                cache.subtrees.putIfAbsent(key, subtree);
+            }
+            subtrees.add(subtree);
+        }
+        return DependencyVersions.merge(subtrees);
+    }
+
+    private static boolean persistable(SessionCache cache, DependencyVersions versions) {
+        if (versions.hasRanges()) {
+            return false;
+        }
+        for (String snapshot : versions.snapshots()) {
+            if (!cache.reactor.containsKey(snapshot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path stampFile(MavenSession session, String fingerprint) {
+        if (!persistent) {
+            return null;
+        }
+        File dir = cacheDirectory;
+        if (dir == null) {
+            if (session.getLocalRepository() == null) {
+                return null;
+            }
+            dir = new File(session.getLocalRepository().getBasedir(), ".cache/mastfrog-enforcer/convergence");
+        }
+        return dir.toPath().resolve(fingerprint);
+    }
+
+    private static void writeStamp(Path stamp, String projectId, Log log) {
+        try {
+            Files.createDirectories(stamp.getParent());
+            Path tmp = Files.createTempFile(stamp.getParent(), stamp.getFileName().toString(), ".tmp");
+            Files.write(tmp, (projectId + "\n").getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, stamp, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            log.debug("Could not write " + stamp, ex);
+        }
+    }
+
+    static String coordinates(org.apache.maven.model.Dependency d, boolean withScope) {
+        StringBuilder sb = new StringBuilder(d.getGroupId()).append(':').append(d.getArtifactId())
+                .append(':').append(d.getType()).append(':').append(d.getClassifier() == null ? "" : d.getClassifier())
+                .append(':').append(d.getVersion());
+        if (withScope) {
+            sb.append(':').append(d.getScope()).append(':').append(d.isOptional());
+        }
+        List<String> exclusions = new ArrayList<>();
+        for (Exclusion ex : d.getExclusions()) {
+            exclusions.add(ex.getGroupId() + ":" + ex.getArtifactId());
+        }
+        if (!exclusions.isEmpty()) {
+            Collections.sort(exclusions);
+            sb.append(exclusions);
+        }
+        return sb.toString();
+    }
+
+    private static String repositories(List<RemoteRepository> repos) {
+        List<String> result = new ArrayList<>();
+        for (RemoteRepository repo : repos) {
+            result.add(repo.getId() + "=" + repo.getUrl());
+        }
+        return result.toString();
+    }
+
+    static String sha256(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public boolean isCacheable() {
+        // The enforcer's own cache is keyed without reference to the
+        // project, so it cannot be used - we do our own
+        return false;
+    }
+
+    @Override
+    public boolean isResultValid(EnforcerRule cachedRule) {
+        return false;
+    }
+
+    @Override
+    public String getCacheId() {
+        return "";
+    }
+
+    /**
+     * Per-session state: collected subtrees, verdicts by fingerprint, and
+     * the fingerprints of reactor projects.
+     */
+    static final class SessionCache {
+
+        final Map<String, DependencyVersions> subtrees = new ConcurrentHashMap<>();
+        final Map<String, DependencyVersions> results = new ConcurrentHashMap<>();
+        final Map<String, MavenProject> reactor = new ConcurrentHashMap<>();
+        private final Map<MavenProject, String> fingerprints = new ConcurrentHashMap<>();
+        final RepositorySystemSession verbose;
+
+        SessionCache(MavenSession session) {
+            for (MavenProject p : session.getProjects()) {
+                reactor.put(p.getGroupId() + ":" + p.getArtifactId() + ":" + p.getVersion(), p);
+            }
+            // Without a graph transformer, collection leaves every version
+            // of every artifact in the graph, which is what is checked
+            DefaultRepositorySystemSession s = new DefaultRepositorySystemSession(session.getRepositorySession());
+            s.setDependencyGraphTransformer(null);
+            s.setReadOnly();
+            verbose = s;
+        }
+
+        /**
+         * Fingerprint what determines a project's unreduced dependency
+         * graph: its declared and managed dependencies, its repositories,
+         * the rule's configuration, and recursively the fingerprints of any
+         * reactor projects it depends on, whose dependencies are read from
+         * the reactor rather than from a released pom.
+         */
+        String fingerprint(MavenProject project, String config) {
+            String result = fingerprints.get(project);
+            if (result == null) {
+                List<String> lines = new ArrayList<>();
+                for (org.apache.maven.model.Dependency d : project.getDependencies()) {
+                    lines.add("dependency " + coordinates(d, true));
+                    MavenProject sibling = reactor.get(d.getGroupId() + ":" + d.getArtifactId() + ":" + d.getVersion());
+                    if (sibling != null && sibling != project) {
+                        lines.add("reactor " + fingerprint(sibling, config));
+                    }
+                }
+                if (project.getDependencyManagement() != null) {
+                    for (org.apache.maven.model.Dependency d : project.getDependencyManagement().getDependencies()) {
+                        lines.add("managed " + coordinates(d, true));
+                    }
+                }
+                Collections.sort(lines);
+                lines.add("repositories " + repositories(project.getRemoteProjectRepositories()));
+                lines.add("config " + config);
+                result = sha256(String.join("\n", lines));
+                fingerprints.putIfAbsent(project, result);
+            }
+            return result;
+        }
+    }
+}
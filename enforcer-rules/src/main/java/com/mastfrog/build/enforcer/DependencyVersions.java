@@ -0,0 +1,192 @@
+package com.mastfrog.build.enforcer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.DependencyNode;
+
+/**
+ * Every version of every artifact found in an unreduced dependency graph,
+ * with the first path by which each version was reached. This is all that is
+ * kept of a collected graph, so instances are cheap to memoize and to merge
+ * into the view of a module whose direct dependencies they came from.
+ *
+ * @author Tim Boudreau
+ */
+final class DependencyVersions {
+
+    // groupId:artifactId -> version -> path from the direct dependency
+    private final Map<String, Map<String, List<String>>> versions;
+    private final Set<String> snapshots;
+    private final boolean ranged;
+
+    private DependencyVersions(Map<String, Map<String, List<String>>> versions,
+            Set<String> snapshots, boolean ranged) {
+        this.versions = versions;
+        this.snapshots = snapshots;
+        this.ranged = ranged;
+    }
+
+    static DependencyVersions empty() {
+        return new DependencyVersions(new LinkedHashMap<>(), new LinkedHashSet<>(), false);
+    }
+
+    /**
+     * Summarize the graph beneath a synthetic root. Graphs collected without
+     * conflict resolution share subgraphs between parents, so each node is
+     * visited once, reached by whichever path finds it first.
+     *
+     * @param root The root, whose own artifact is not recorded
+     * @param uniqueVersions If true, timestamped snapshots are distinct
+     * versions, rather than all being <code>-SNAPSHOT</code>
+     * @return A summary
+     */
+    static DependencyVersions of(DependencyNode root, boolean uniqueVersions) {
+        DependencyVersions result = empty();
+        Map<DependencyNode, Boolean> seen = new IdentityHashMap<>();
+        List<String> path = new ArrayList<>();
+        boolean ranged = false;
+        for (DependencyNode child : root.getChildren()) {
+            ranged |= result.visit(child, path, seen, uniqueVersions);
+        }
+        return new DependencyVersions(result.versions, result.snapshots, ranged);
+    }
+
+    private boolean visit(DependencyNode node, List<String> path, Map<DependencyNode, Boolean> seen,
+            boolean uniqueVersions) {
+        if (seen.put(node, Boolean.TRUE) != null) {
+            return false;
+        }
+        Artifact a = node.getArtifact();
+        boolean ranged = node.getVersionConstraint() != null
+                && node.getVersionConstraint().getRange() != null;
+        String version = uniqueVersions ? a.getVersion() : a.getBaseVersion();
+        String id = a.getGroupId() + ":" + a.getArtifactId() + ":" + version;
+        path.add(id);
+        versions.computeIfAbsent(a.getGroupId() + ":" + a.getArtifactId(), k -> new LinkedHashMap<>())
+                .putIfAbsent(version, new ArrayList<>(path));
+        if (a.isSnapshot()) {
+            snapshots.add(a.getGroupId() + ":" + a.getArtifactId() + ":" + a.getBaseVersion());
+        }
+        for (DependencyNode child : node.getChildren()) {
+            ranged |= visit(child, path, seen, uniqueVersions);
+        }
+        path.remove(path.size() - 1);
+        return ranged;
+    }
+
+    /**
+     * Combine the summaries of several direct dependencies' graphs into that
+     * of a module which depends on all of them.
+     *
+     * @param all Summaries
+     * @return A summary
+     */
+    static DependencyVersions merge(Iterable<DependencyVersions> all) {
+        Map<String, Map<String, List<String>>> versions = new LinkedHashMap<>();
+        Set<String> snapshots = new LinkedHashSet<>();
+        boolean ranged = false;
+        for (DependencyVersions v : all) {
+            for (Map.Entry<String, Map<String, List<String>>> e : v.versions.entrySet()) {
+                Map<String, List<String>> into = versions.computeIfAbsent(e.getKey(), k -> new LinkedHashMap<>());
+                for (Map.Entry<String, List<String>> ver : e.getValue().entrySet()) {
+                    into.putIfAbsent(ver.getKey(), ver.getValue());
+                }
+            }
+            snapshots.addAll(v.snapshots);
+            ranged |= v.ranged;
+        }
+        return new DependencyVersions(versions, snapshots, ranged);
+    }
+
+    /**
+     * Whether any version in the graph was chosen from a range, in which case
+     * the same declarations may collect differently later.
+     */
+    boolean hasRanges() {
+        return ranged;
+    }
+
+    /**
+     * The <code>groupId:artifactId:baseVersion</code> of every snapshot in
+     * the graph.
+     */
+    Set<String> snapshots() {
+        return Collections.unmodifiableSet(snapshots);
+    }
+
+    /**
+     * Describe every artifact reached at more than one version, in the same
+     * form the stock <code>DependencyConvergence</code> rule uses.
+     *
+     * @param rootId The module, shown at the top of each path
+     * @param excludes <code>groupId:artifactId</code> patterns, which may use
+     * <code>*</code>, for artifacts whose versions may differ
+     * @return Error messages, empty if the graph converges
+     */
+    List<String> conflicts(String rootId, List<String> excludes) {
+        List<Pattern> patterns = patterns(excludes);
+        List<String> result = new ArrayList<>();
+        outer:
+        for (Map.Entry<String, Map<String, List<String>>> e : versions.entrySet()) {
+            if (e.getValue().size() < 2) {
+                continue;
+            }
+            for (Pattern p : patterns) {
+                if (p.matcher(e.getKey()).matches()) {
+                    continue outer;
+                }
+            }
+            StringBuilder sb = new StringBuilder("\nDependency convergence error for ")
+                    .append(e.getKey()).append(" paths to dependency are:\n");
+            boolean first = true;
+            for (List<String> path : e.getValue().values()) {
+                if (!first) {
+                    sb.append("and\n");
+                }
+                first = false;
+                sb.append("+-").append(rootId).append('\n');
+                String indent = "  ";
+                for (String step : path) {
+                    sb.append(indent).append("+-").append(step).append('\n');
+                    indent += "  ";
+                }
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    static List<Pattern> patterns(List<String> excludes) {
+        if (excludes == null || excludes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Pattern> result = new ArrayList<>(excludes.size());
+        for (String ex : excludes) {
+            String trimmed = ex.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.indexOf(':') < 0) {
+                trimmed += ":*";
+            }
+            String[] parts = trimmed.split("\\*", -1);
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(parts[i]));
+            }
+            result.add(Pattern.compile(regex.toString()));
+        }
+        return result;
+    }
+}
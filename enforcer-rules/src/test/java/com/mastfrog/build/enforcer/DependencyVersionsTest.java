@@ -0,0 +1,69 @@
+package com.mastfrog.build.enforcer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class DependencyVersionsTest {
+
+    @Test
+    public void testConflictsAreFoundAcrossSubtrees() throws Exception {
+        DefaultDependencyNode guava20 = node("com.google.guava:guava:20.0");
+        DefaultDependencyNode a = node("com.x:a:1.0", guava20);
+        DefaultDependencyNode b = node("com.x:b:1.0", node("com.google.guava:guava:31.1"));
+        // A subgraph shared by two parents is only walked once
+        DefaultDependencyNode c = node("com.x:c:1.0", a);
+        DependencyVersions left = DependencyVersions.of(node("root:root:0", a, c), false);
+        DependencyVersions right = DependencyVersions.of(node("root:root:0", b), false);
+
+        assertTrue(left.conflicts("com.x:app:1.0", null).isEmpty());
+        assertTrue(right.conflicts("com.x:app:1.0", null).isEmpty());
+
+        DependencyVersions merged = DependencyVersions.merge(Arrays.asList(left, right));
+        List<String> conflicts = merged.conflicts("com.x:app:1.0", null);
+        assertEquals(1, conflicts.size());
+        assertEquals("\nDependency convergence error for com.google.guava:guava paths to dependency are:\n"
+                + "+-com.x:app:1.0\n"
+                + "  +-com.x:a:1.0\n"
+                + "    +-com.google.guava:guava:20.0\n"
+                + "and\n"
+                + "+-com.x:app:1.0\n"
+                + "  +-com.x:b:1.0\n"
+                + "    +-com.google.guava:guava:31.1\n", conflicts.get(0));
+
+        assertTrue(merged.conflicts("com.x:app:1.0", Collections.singletonList("com.google.*")).isEmpty());
+        assertTrue(merged.conflicts("com.x:app:1.0", Collections.singletonList("com.google.guava")).isEmpty());
+        assertFalse(merged.conflicts("com.x:app:1.0", Collections.singletonList("com.google:guava")).isEmpty());
+    }
+
+    @Test
+    public void testSnapshotsAndRanges() throws Exception {
+        DefaultDependencyNode snap = node("com.x:s:1.0-20220101.101010-3");
+        DefaultDependencyNode other = node("com.x:s:1.0-20220202.101010-4");
+        DependencyVersions one = DependencyVersions.of(node("root:root:0", node("com.x:a:1.0", snap), node("com.x:b:1.0", other)), false);
+        assertTrue(one.conflicts("app", null).isEmpty());
+        assertEquals(Collections.singleton("com.x:s:1.0-SNAPSHOT"), one.snapshots());
+        assertFalse(one.hasRanges());
+        DependencyVersions unique = DependencyVersions.of(node("root:root:0", node("com.x:a:1.0", snap), node("com.x:b:1.0", other)), true);
+        assertEquals(1, unique.conflicts("app", null).size());
+
+        DefaultDependencyNode ranged = node("com.x:r:1.5");
+        GenericVersionScheme scheme = new GenericVersionScheme();
+        ranged.setVersionConstraint(scheme.parseVersionConstraint("[1.0,2.0)"));
+        assertTrue(DependencyVersions.of(node("root:root:0", node("com.x:a:1.0", ranged)), false).hasRanges());
+    }
+
+    private static DefaultDependencyNode node(String coords, DefaultDependencyNode... children) {
+        DefaultDependencyNode result = new DefaultDependencyNode(new Dependency(new DefaultArtifact(coords), "compile"));
+        result.setChildren(Arrays.asList(children));
+        return result;
+    }
+}
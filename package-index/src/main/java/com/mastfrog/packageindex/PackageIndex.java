@@ -0,0 +1,331 @@
+package com.mastfrog.packageindex;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * A compact binary index of what a jar contains - the packages it has
+ * classes in, the service providers it registers under
+ * <code>META-INF/services</code> and its revision info - which the
+ * <code>package-index</code> goal of revision-info-plugin writes into each
+ * artifact, and which applications can read at startup instead of scanning
+ * the classpath:
+ * {@link #load(ClassLoader)} finds every jar's index with one resource
+ * lookup and merges them, so finding a service's providers or the jar which
+ * owns a package costs a map lookup.
+ * <p>
+ * This library depends on nothing but the JDK.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public final class PackageIndex {
+
+    /**
+     * The location of the index within a jar.
+     */
+    public static final String RESOURCE = "META-INF/mastfrog/package-index.bin";
+    private static final int MAGIC = 0x4D504958;
+    private static final int VERSION = 1;
+    private static final String SERVICES = "META-INF/services/";
+    private final List<Entry> entries;
+    private final Map<String, Entry> owners = new TreeMap<>();
+    private final Map<String, List<String>> providers = new TreeMap<>();
+
+    private PackageIndex(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+        for (Entry e : entries) {
+            for (String pkg : e.packages) {
+                // The first jar on the classpath with a package wins, as it
+                // does for class loading
+                owners.putIfAbsent(pkg, e);
+            }
+            for (Map.Entry<String, List<String>> svc : e.services.entrySet()) {
+                List<String> all = providers.computeIfAbsent(svc.getKey(), k -> new ArrayList<>());
+                for (String p : svc.getValue()) {
+                    // As ServiceLoader does, ignore duplicates
+                    if (!all.contains(p)) {
+                        all.add(p);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read and merge the indexes of every jar visible to a class loader,
+     * in classpath order. Jars built without an index are not included.
+     *
+     * @param loader A class loader
+     * @return An index
+     * @throws IOException If an index cannot be read
+     */
+    public static PackageIndex load(ClassLoader loader) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Enumeration<URL> urls = loader.getResources(RESOURCE);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            URLConnection conn = url.openConnection();
+            // Do not hold jars open through the JarURLConnection cache
+            conn.setUseCaches(false);
+            try (InputStream in = conn.getInputStream()) {
+                entries.add(read(location(url), in));
+            }
+        }
+        return new PackageIndex(entries);
+    }
+
+    /**
+     * The indexes merged into this one, in classpath order.
+     *
+     * @return A list
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * All packages any indexed jar has classes in.
+     *
+     * @return A sorted set
+     */
+    public Set<String> packages() {
+        return Collections.unmodifiableSet(owners.keySet());
+    }
+
+    /**
+     * Find the jar which classes in a package are loaded from.
+     *
+     * @param pkg A package name
+     * @return The first entry on the classpath with classes in that package,
+     * or null
+     */
+    public Entry owner(String pkg) {
+        return owners.get(pkg);
+    }
+
+    /**
+     * The providers registered for a service, in the order ServiceLoader
+     * would find them.
+     *
+     * @param service The fully qualified name of the service type
+     * @return A list of class names, empty if there are none
+     */
+    public List<String> providers(String service) {
+        List<String> result = providers.get(service);
+        return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The index of one jar.
+     */
+    public static final class Entry {
+
+        private final String id;
+        private final URL location;
+        private final Set<String> packages;
+        private final Map<String, List<String>> services;
+        private final Properties revision;
+
+        Entry(String id, URL location, Set<String> packages, Map<String, List<String>> services, Properties revision) {
+            this.id = id;
+            this.location = location;
+            this.packages = packages;
+            this.services = services;
+            this.revision = revision;
+        }
+
+        /**
+         * The id of the project the jar was built from.
+         *
+         * @return <code>groupId:artifactId:packaging:version</code>
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * The root of the jar or directory the index was found in.
+         *
+         * @return A URL, or null if not read from the classpath
+         */
+        public URL location() {
+            return location;
+        }
+
+        /**
+         * The packages the jar has classes in.
+         *
+         * @return A sorted set
+         */
+        public Set<String> packages() {
+            return Collections.unmodifiableSet(packages);
+        }
+
+        /**
+         * The service providers the jar registers.
+         *
+         * @return A map of service type names to provider class names
+         */
+        public Map<String, List<String>> services() {
+            return Collections.unmodifiableMap(services);
+        }
+
+        /**
+         * The revision info the jar was built with, as in its
+         * <code>.versions.properties</code>.
+         *
+         * @return A copy of the properties, empty if it was built without
+         */
+        public Properties revision() {
+            Properties result = new Properties();
+            result.putAll(revision);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return id + (location == null ? "" : " (" + location + ")");
+        }
+    }
+
+    private static URL location(URL resource) throws IOException {
+        String s = resource.toString();
+        return s.endsWith(RESOURCE) ? new URL(s.substring(0, s.length() - RESOURCE.length())) : resource;
+    }
+
+    /**
+     * Index the classes and service registrations in a class output
+     * directory, as the build does before the jar is created.
+     *
+     * @param id The project's id
+     * @param classes The class output directory
+     * @param revision The revision properties, or null
+     * @return The index
+     * @throws IOException If something goes wrong
+     */
+    public static Entry scan(String id, Path classes, Properties revision) throws IOException {
+        Set<String> packages = new TreeSet<>();
+        Map<String, List<String>> services = new TreeMap<>();
+        try (Stream<Path> all = Files.walk(classes)) {
+            for (Path p : (Iterable<Path>) all::iterator) {
+                String rel = classes.relativize(p).toString().replace('\\', '/');
+                if (rel.startsWith(SERVICES) && rel.indexOf('/', SERVICES.length()) < 0 && Files.isRegularFile(p)) {
+                    List<String> providers = readProviders(p);
+                    if (!providers.isEmpty()) {
+                        services.put(rel.substring(SERVICES.length()), providers);
+                    }
+                } else if (rel.endsWith(".class") && !rel.startsWith("META-INF/")) {
+                    int ix = rel.lastIndexOf('/');
+                    // Classes in the default package cannot be loaded by name
+                    // from anywhere else, so there is nothing to index
+                    if (ix > 0 && !"module-info.class".equals(rel.substring(ix + 1))) {
+                        packages.add(rel.substring(0, ix).replace('/', '.'));
+                    }
+                }
+            }
+        }
+        return new Entry(id, null, packages, services, revision == null ? new Properties() : revision);
+    }
+
+    private static List<String> readProviders(Path file) throws IOException {
+        List<String> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int comment = line.indexOf('#');
+                String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (!provider.isEmpty() && !result.contains(provider)) {
+                    result.add(provider);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Serialize an index. The output is the same for the same content, so
+     * rewriting an unchanged index leaves the file untouched.
+     *
+     * @param entry An index
+     * @return The bytes
+     * @throws IOException If something goes wrong
+     */
+    public static byte[] write(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(entry.id);
+            out.writeInt(entry.packages.size());
+            for (String pkg : entry.packages) {
+                out.writeUTF(pkg);
+            }
+            out.writeInt(entry.services.size());
+            for (Map.Entry<String, List<String>> svc : entry.services.entrySet()) {
+                out.writeUTF(svc.getKey());
+                out.writeInt(svc.getValue().size());
+                for (String p : svc.getValue()) {
+                    out.writeUTF(p);
+                }
+            }
+            Set<String> keys = new TreeSet<>(entry.revision.stringPropertyNames());
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                out.writeUTF(key);
+                out.writeUTF(entry.revision.getProperty(key));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Entry read(URL location, InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a package index: " + location);
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported package index version " + version + " in " + location);
+        }
+        String id = data.readUTF();
+        Set<String> packages = new LinkedHashSet<>();
+        for (int i = data.readInt(); i > 0; i--) {
+            packages.add(data.readUTF());
+        }
+        Map<String, List<String>> services = new LinkedHashMap<>();
+        for (int i = data.readInt(); i > 0; i--) {
+            String service = data.readUTF();
+            List<String> providers = new ArrayList<>();
+            for (int j = data.readInt(); j > 0; j--) {
+                providers.add(data.readUTF());
+            }
+            services.put(service, providers);
+        }
+        Properties revision = new Properties();
+        for (int i = data.readInt(); i > 0; i--) {
+            revision.setProperty(data.readUTF(), data.readUTF());
+        }
+        return new Entry(id, location, packages, services, revision);
+    }
+}
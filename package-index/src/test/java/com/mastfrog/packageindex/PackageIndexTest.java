@@ -0,0 +1,98 @@
+package com.mastfrog.packageindex;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PackageIndexTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testScan() throws Exception {
+        Path classes = dir.resolve("a");
+        write(classes.resolve("com/a/A.class"), "");
+        write(classes.resolve("com/a/impl/B.class"), "");
+        write(classes.resolve("com/a/resources/data.txt"), "");
+        write(classes.resolve("module-info.class"), "");
+        write(classes.resolve("Default.class"), "");
+        write(classes.resolve("META-INF/versions/11/com/a/A.class"), "");
+        write(classes.resolve("META-INF/services/com.x.Service"), "# providers\ncom.a.A\n\ncom.a.impl.B # the other\ncom.a.A\n");
+        write(classes.resolve("META-INF/services/com.x.Empty"), "# nothing\n");
+        Properties revision = new Properties();
+        revision.setProperty("shortCommitHash", "abcdef0");
+
+        PackageIndex.Entry entry = PackageIndex.scan("com:a:jar:1.0", classes, revision);
+        assertEquals(Arrays.asList("com.a", "com.a.impl"), new ArrayList<>(entry.packages()));
+        assertEquals(Collections.singleton("com.x.Service"), entry.services().keySet());
+        assertEquals(Arrays.asList("com.a.A", "com.a.impl.B"), entry.services().get("com.x.Service"));
+
+        byte[] bytes = PackageIndex.write(entry);
+        assertArrayEquals("Output should be stable", bytes,
+                PackageIndex.write(PackageIndex.scan("com:a:jar:1.0", classes, revision)));
+        PackageIndex.Entry read = PackageIndex.read(null, new java.io.ByteArrayInputStream(bytes));
+        assertEquals(entry.id(), read.id());
+        assertEquals(entry.packages(), read.packages());
+        assertEquals(entry.services(), read.services());
+        assertEquals("abcdef0", read.revision().getProperty("shortCommitHash"));
+    }
+
+    @Test
+    public void testLoadMergesInClasspathOrder() throws Exception {
+        Path a = dir.resolve("a");
+        Path b = dir.resolve("b");
+        Path c = dir.resolve("c");
+        write(a.resolve("com/shared/A.class"), "");
+        write(a.resolve("META-INF/services/com.x.Service"), "com.a.First\ncom.shared.Both\n");
+        write(b.resolve("com/shared/B.class"), "");
+        write(b.resolve("com/b/B.class"), "");
+        write(b.resolve("META-INF/services/com.x.Service"), "com.shared.Both\ncom.b.Second\n");
+        // Built without an index
+        write(c.resolve("com/c/C.class"), "");
+        for (Path p : new Path[]{a, b}) {
+            Files.createDirectories(p.resolve(PackageIndex.RESOURCE).getParent());
+            Files.write(p.resolve(PackageIndex.RESOURCE),
+                    PackageIndex.write(PackageIndex.scan("com:" + p.getFileName() + ":jar:1.0", p, null)));
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{a.toUri().toURL(), b.toUri().toURL(),
+            c.toUri().toURL()}, null)) {
+            PackageIndex index = PackageIndex.load(loader);
+            assertEquals(2, index.entries().size());
+            assertEquals(Arrays.asList("com.b", "com.shared"), new ArrayList<>(index.packages()));
+            assertEquals("com:a:jar:1.0", index.owner("com.shared").id());
+            assertEquals(b.toUri().toURL(), index.owner("com.b").location());
+            assertNull(index.owner("com.c"));
+            assertEquals(Arrays.asList("com.a.First", "com.shared.Both", "com.b.Second"),
+                    index.providers("com.x.Service"));
+            assertTrue(index.providers("com.x.Other").isEmpty());
+            assertTrue(index.entries().get(0).revision().isEmpty());
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
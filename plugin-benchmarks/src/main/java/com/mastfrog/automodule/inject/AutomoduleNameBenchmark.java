@@ -0,0 +1,54 @@
+package com.mastfrog.automodule.inject;
+
+import com.mastfrog.plugin.benchmarks.Fixtures;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks converting group and artifact ids into valid module names, over a
+ * batch of names of the given number of parts.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AutomoduleNameBenchmark {
+
+    @Param({"2", "5", "12"})
+    int parts;
+
+    @Param({"100"})
+    int names;
+
+    private String[] inputs;
+
+    @Setup
+    public void setup() {
+        inputs = new String[names];
+        for (int i = 0; i < names; i++) {
+            inputs[i] = Fixtures.mavenName(parts, i);
+        }
+    }
+
+    @Benchmark
+    public void splitAndConvert(Blackhole bh) {
+        for (String name : inputs) {
+            bh.consume(AutomoduleInjectMojo.splitAndConvert(name));
+        }
+    }
+}
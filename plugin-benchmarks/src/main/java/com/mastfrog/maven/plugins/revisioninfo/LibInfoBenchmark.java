@@ -0,0 +1,53 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import com.mastfrog.plugin.benchmarks.Fixtures;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks parsing git log output into properties, over a batch of distinct
+ * lines so the regular expressions and date parsing are not measured against
+ * one input the JIT has memorized.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LibInfoBenchmark {
+
+    @Param({"1", "100", "500"})
+    int outputs;
+
+    private String[] lines;
+
+    @Setup
+    public void setup() {
+        lines = Fixtures.gitLogLines(outputs);
+    }
+
+    @Benchmark
+    public void gitOutputToProperties(Blackhole bh) {
+        StringBuilder errors = new StringBuilder();
+        for (String line : lines) {
+            bh.consume(LibInfo.gitOutputToProperties(line, LibInfo.STATUS_CLEAN, errors));
+        }
+        if (errors.length() > 0) {
+            throw new IllegalStateException(errors.toString());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import com.mastfrog.plugin.benchmarks.Fixtures;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the source-root scan RevisionInfoMojo performs to find the package
+ * to generate RevisionInfo into when <code>auto</code> is set, over synthetic
+ * source trees of varying depth and width.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SourceScanBenchmark {
+
+    @Param({"2", "4", "6"})
+    int depth;
+
+    @Param({"2", "4"})
+    int width;
+
+    @Param({"3"})
+    int filesPerPackage;
+
+    private Path root;
+    private RevisionInfoMojo mojo;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("scan-bench-");
+        Fixtures.sourceTree(root, depth, width, filesPerPackage);
+        mojo = new RevisionInfoMojo();
+        mojo.compileSourceRoots = Collections.singletonList(root.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.delete(root);
+    }
+
+    @Benchmark
+    public String scanForLeastPackageWithSourceFile() throws IOException {
+        return mojo.scanForLeastPackageWithSourceFile();
+    }
+}
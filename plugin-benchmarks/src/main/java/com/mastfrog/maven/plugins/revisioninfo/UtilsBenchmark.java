@@ -0,0 +1,107 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import com.mastfrog.plugin.benchmarks.Fixtures;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the string and stream helpers in Utils which every execution of
+ * the revision-info goal passes through.
+ *
+ * @author Tim Boudreau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class UtilsBenchmark {
+
+    @Param({"8", "64", "1024"})
+    int propertyCount;
+
+    private Properties props;
+    private String[] keysAndValues;
+    private String pathLike;
+    private byte[] statusOutput;
+
+    @Setup
+    public void setup() {
+        props = Fixtures.properties(propertyCount);
+        keysAndValues = new String[propertyCount * 2];
+        int ix = 0;
+        for (String key : props.stringPropertyNames()) {
+            keysAndValues[ix++] = key;
+            keysAndValues[ix++] = props.getProperty(key);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < propertyCount; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append("/usr/local/").append(Fixtures.mavenName(3, i).replace('.', '/'));
+        }
+        pathLike = sb.toString();
+        statusOutput = Fixtures.gitStatusOutput(propertyCount);
+    }
+
+    @Benchmark
+    public void convert(Blackhole bh) {
+        for (int i = 0; i < keysAndValues.length; i++) {
+            // Keys escape spaces, values do not
+            bh.consume(Utils.convert(keysAndValues[i], (i & 1) == 0));
+        }
+    }
+
+    @Benchmark
+    public int savePropertiesFile() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        Utils.savePropertiesFile(props, out, "Generated by benchmark", true);
+        return out.count;
+    }
+
+    @Benchmark
+    public String[] split() {
+        return Utils.split(':', pathLike);
+    }
+
+    @Benchmark
+    public String readString() throws IOException {
+        return Utils.readString(new ByteArrayInputStream(statusOutput), "UTF-8", 768);
+    }
+
+    @Benchmark
+    public int copyToNull() throws IOException {
+        return Utils.copy(new ByteArrayInputStream(statusOutput), Utils.nullOutputStream());
+    }
+
+    static final class CountingOutputStream extends java.io.OutputStream {
+
+        int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
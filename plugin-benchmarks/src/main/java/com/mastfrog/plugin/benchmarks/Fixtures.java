@@ -0,0 +1,246 @@
+package com.mastfrog.plugin.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Generators for the synthetic inputs the benchmarks run against - source
+ * trees, property sets and git output. Everything is derived from a seeded
+ * Random, so the same parameters always produce the same fixture and runs are
+ * comparable across releases.
+ *
+ * @author Tim Boudreau
+ */
+public final class Fixtures {
+
+    private static final String[] WORDS = {"acteur", "giulius", "util", "netty",
+        "http", "client", "server", "strings", "collections", "function",
+        "predicates", "bits", "graph", "numble", "blurt", "crypto", "tests",
+        "web", "settings", "etcd", "mongo", "promises", "bunyan", "java"};
+
+    private static final DateTimeFormatter GIT_DATE
+            = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    private Fixtures() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Create a tree of Java packages under <code>root</code>, shaped like
+     * <code>com/mastfrog/...</code> with <code>depth</code> levels of packages
+     * below the root package, <code>width</code> subpackages in each, and
+     * <code>filesPerPackage</code> source files in every package below the
+     * first two levels (so the least package with a source file is never
+     * trivially the first one visited).
+     *
+     * @param root The source root
+     * @param depth The number of package levels below com.mastfrog
+     * @param width The number of child packages of each package
+     * @param filesPerPackage The number of .java files per package
+     * @return The number of files created
+     * @throws IOException If something goes wrong
+     */
+    public static int sourceTree(Path root, int depth, int width, int filesPerPackage) throws IOException {
+        Path base = root.resolve("com").resolve("mastfrog");
+        Files.createDirectories(base);
+        return populate(base, "com.mastfrog", depth, width, filesPerPackage, new Random(depth * 31 + width));
+    }
+
+    private static int populate(Path dir, String pkg, int depth, int width, int filesPerPackage, Random rnd) throws IOException {
+        int count = 0;
+        for (int i = 0; i < filesPerPackage; i++) {
+            String name = capitalize(word(rnd)) + capitalize(word(rnd)) + i;
+            Path file = dir.resolve(name + ".java");
+            Files.write(file, ("package " + pkg + ";\n\npublic class " + name
+                    + " {\n}\n").getBytes(StandardCharsets.UTF_8));
+            count++;
+        }
+        // Something that is not a source file, as real trees have
+        Files.write(dir.resolve("package.html"), "<html/>".getBytes(StandardCharsets.UTF_8));
+        if (depth > 0) {
+            for (int i = 0; i < width; i++) {
+                String child = word(rnd) + i;
+                Path childDir = dir.resolve(child);
+                Files.createDirectories(childDir);
+                count += populate(childDir, pkg + "." + child, depth - 1,
+                        width, filesPerPackage, rnd);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Recursively delete a fixture directory.
+     *
+     * @param dir A directory
+     * @throws IOException If something goes wrong
+     */
+    public static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Create a properties set with <code>count</code> entries, with keys in
+     * the bicapitalized style the plugin emits, and values mixing plain ASCII
+     * with the characters that need escaping in a properties file (spaces,
+     * colons, equals signs, backslashes, tabs and non-ASCII characters).
+     *
+     * @param count The number of properties
+     * @return A properties
+     */
+    public static Properties properties(int count) {
+        Random rnd = new Random(count);
+        Properties result = new Properties();
+        for (int i = 0; i < count; i++) {
+            String key = word(rnd) + capitalize(word(rnd)) + i;
+            StringBuilder value = new StringBuilder();
+            int parts = 1 + rnd.nextInt(6);
+            for (int j = 0; j < parts; j++) {
+                if (j > 0) {
+                    value.append(separator(rnd));
+                }
+                value.append(word(rnd));
+            }
+            result.setProperty(key, value.toString());
+        }
+        return result;
+    }
+
+    private static String separator(Random rnd) {
+        switch (rnd.nextInt(8)) {
+            case 0:
+                return ":";
+            case 1:
+                return "=";
+            case 2:
+                return "\\";
+            case 3:
+                return "\t";
+            case 4:
+                return "é";
+            case 5:
+                return "#";
+            default:
+                return " ";
+        }
+    }
+
+    /**
+     * Create a line in the format LibInfo requests from
+     * <code>git log --format=format:%h %H %cd --date=iso</code>.
+     *
+     * @param seed A seed
+     * @return A line of fake git output
+     */
+    public static String gitLogLine(long seed) {
+        Random rnd = new Random(seed);
+        String longHash = hex(rnd, 40);
+        String date = ZonedDateTime.ofInstant(Instant.ofEpochSecond(1_300_000_000L
+                + rnd.nextInt(400_000_000)), ZoneOffset.ofHours(rnd.nextInt(24) - 12))
+                .format(GIT_DATE);
+        return longHash.substring(0, 7 + rnd.nextInt(5)) + " " + longHash + " " + date;
+    }
+
+    /**
+     * Create a batch of distinct git log lines, so a benchmark does not
+     * simply measure the same match over and over.
+     *
+     * @param count The number of lines
+     * @return An array of lines
+     */
+    public static String[] gitLogLines(int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = gitLogLine(i);
+        }
+        return result;
+    }
+
+    /**
+     * Create output in the format of <code>git status --porcelain</code> for
+     * a dirty repository with <code>files</code> modified files - what the
+     * plugin reads and discards to decide if the repository is dirty.
+     *
+     * @param files The number of modified files
+     * @return Fake git output as UTF-8 bytes
+     */
+    public static byte[] gitStatusOutput(int files) {
+        Random rnd = new Random(files);
+        StringBuilder sb = new StringBuilder(files * 64);
+        for (int i = 0; i < files; i++) {
+            sb.append(rnd.nextBoolean() ? " M " : "?? ");
+            int depth = 2 + rnd.nextInt(8);
+            for (int j = 0; j < depth; j++) {
+                sb.append(word(rnd)).append('/');
+            }
+            sb.append(capitalize(word(rnd))).append(i).append(".java\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a dotted name of <code>parts</code> parts, such as a group or
+     * artifact id, including hyphens and characters that are not legal in a
+     * Java identifier.
+     *
+     * @param parts The number of parts
+     * @param seed A seed
+     * @return A name
+     */
+    public static String mavenName(int parts, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts; i++) {
+            if (i > 0) {
+                sb.append(rnd.nextInt(3) == 0 ? '-' : '.');
+            }
+            if (rnd.nextInt(5) == 0) {
+                sb.append(rnd.nextInt(10));
+            }
+            sb.append(word(rnd));
+        }
+        return sb.toString();
+    }
+
+    private static String word(Random rnd) {
+        return WORDS[rnd.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static String hex(Random rnd, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(Character.forDigit(rnd.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+}
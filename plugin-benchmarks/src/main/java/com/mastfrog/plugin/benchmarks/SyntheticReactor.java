@@ -0,0 +1,198 @@
+package com.mastfrog.plugin.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a local git repository containing an aggregator pom and
+ * <code>modules</code> jar projects, with <code>commits</code> commits of
+ * history spread across the modules, optionally with the first
+ * <code>submodules</code> modules being git submodules backed by their own
+ * repositories - the shape of this repository, at a configurable scale.
+ * <p>
+ * Module poms are standalone (no parent) so the plugin testing harness can
+ * read them without resolving anything.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public final class SyntheticReactor {
+
+    public static final String GROUP_ID = "com.mastfrog.synthetic";
+    private final Path root;
+    private final List<Path> modules;
+
+    private SyntheticReactor(Path root, List<Path> modules) {
+        this.root = root;
+        this.modules = Collections.unmodifiableList(modules);
+    }
+
+    /**
+     * The root of the generated repository.
+     *
+     * @return A path
+     */
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * The module directories, in reactor order.
+     *
+     * @return A list of paths
+     */
+    public List<Path> modules() {
+        return modules;
+    }
+
+    public static String artifactId(int index) {
+        return "module-" + index;
+    }
+
+    /**
+     * Generate a reactor.
+     *
+     * @param base A directory to create it in, which will also hold the
+     * repositories backing any submodules
+     * @param modules The number of modules
+     * @param commits The number of commits, at least one
+     * @param submodules How many of the modules should be git submodules
+     * @return A reactor
+     * @throws IOException If something goes wrong
+     * @throws InterruptedException If interrupted
+     */
+    public static SyntheticReactor create(Path base, int modules, int commits, int submodules) throws IOException, InterruptedException {
+        if (submodules > modules) {
+            throw new IllegalArgumentException("More submodules than modules: "
+                    + submodules + " > " + modules);
+        }
+        Path root = base.resolve("reactor");
+        Files.createDirectories(root);
+        git(root, "init", "-q");
+        List<Path> dirs = new ArrayList<>(modules);
+        StringBuilder moduleList = new StringBuilder();
+        for (int i = 0; i < modules; i++) {
+            String aid = artifactId(i);
+            moduleList.append("        <module>").append(aid).append("</module>\n");
+            if (i < submodules) {
+                Path remote = base.resolve("remotes").resolve(aid);
+                writeModule(remote, i);
+                git(remote, "init", "-q");
+                git(remote, "add", "-A");
+                git(remote, "commit", "-q", "-m", "Initial " + aid);
+                git(root, "-c", "protocol.file.allow=always", "submodule", "add", "-q",
+                        remote.toUri().toString(), aid);
+            } else {
+                writeModule(root.resolve(aid), i);
+            }
+            dirs.add(root.resolve(aid));
+        }
+        write(root.resolve("pom.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                + "    <artifactId>synthetic-reactor</artifactId>\n"
+                + "    <version>1.0</version>\n"
+                + "    <packaging>pom</packaging>\n"
+                + "    <modules>\n" + moduleList
+                + "    </modules>\n"
+                + "</project>\n");
+        write(root.resolve(".gitignore"), "target/\n");
+        git(root, "add", "-A");
+        git(root, "commit", "-q", "-m", "Initial reactor");
+        for (int i = 1; i < commits; i++) {
+            int target = submodules + (i % Math.max(1, modules - submodules));
+            if (target >= modules) {
+                // Everything is a submodule; commit to the superproject only
+                write(root.resolve("CHANGES.txt"), "Change " + i + "\n");
+            } else {
+                Path file = dirs.get(target).resolve("CHANGES.txt");
+                write(file, "Change " + i + "\n");
+            }
+            git(root, "add", "-A");
+            git(root, "commit", "-q", "-m", "Change " + i);
+        }
+        return new SyntheticReactor(root, dirs);
+    }
+
+    private static void writeModule(Path dir, int index) throws IOException {
+        String aid = artifactId(index);
+        String pkg = "com.mastfrog.synthetic.module" + index;
+        write(dir.resolve("pom.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                + "    <artifactId>" + aid + "</artifactId>\n"
+                + "    <version>1.0</version>\n"
+                + "    <properties>\n"
+                + "        <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n"
+                + "    </properties>\n"
+                + "</project>\n");
+        Path src = dir.resolve("src").resolve("main").resolve("java");
+        Fixtures.sourceTree(src, 2, 2, 2);
+        Path pkgDir = src.resolve(pkg.replace('.', '/'));
+        write(pkgDir.resolve("Module" + index + ".java"), "package " + pkg
+                + ";\n\npublic class Module" + index + " {\n}\n");
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Run git in a directory with a fixed identity and dates, failing if it
+     * exits non-zero.
+     *
+     * @param dir The working directory
+     * @param args Arguments to git
+     * @return The output of the process
+     * @throws IOException If it fails
+     * @throws InterruptedException If interrupted
+     */
+    public static String git(Path dir, String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(args.length + 1);
+        cmd.add("git");
+        Collections.addAll(cmd, args);
+        ProcessBuilder pb = new ProcessBuilder(cmd).directory(dir.toFile())
+                .redirectErrorStream(true);
+        Map<String, String> env = pb.environment();
+        env.put("GIT_AUTHOR_NAME", "Benchmark");
+        env.put("GIT_AUTHOR_EMAIL", "benchmark@example.com");
+        env.put("GIT_COMMITTER_NAME", "Benchmark");
+        env.put("GIT_COMMITTER_EMAIL", "benchmark@example.com");
+        env.put("GIT_AUTHOR_DATE", "2020-01-01T00:00:00Z");
+        env.put("GIT_COMMITTER_DATE", "2020-01-01T00:00:00Z");
+        env.put("GIT_CONFIG_NOSYSTEM", "1");
+        Process proc = pb.start();
+        String output = read(proc.getInputStream());
+        if (!proc.waitFor(60, TimeUnit.SECONDS)) {
+            proc.destroyForcibly();
+            throw new IOException("Timed out: " + cmd + " in " + dir);
+        }
+        if (proc.exitValue() != 0) {
+            throw new IOException(cmd + " in " + dir + " exited with "
+                    + proc.exitValue() + ":\n" + output);
+        }
+        return output;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int count;
+        while ((count = in.read(buf)) > 0) {
+            out.write(buf, 0, count);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
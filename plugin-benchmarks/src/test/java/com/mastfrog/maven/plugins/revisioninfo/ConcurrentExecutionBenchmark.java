@@ -0,0 +1,313 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import com.mastfrog.automodule.inject.AutomoduleInjectMojo;
+import com.mastfrog.plugin.benchmarks.Fixtures;
+import com.mastfrog.plugin.benchmarks.SyntheticReactor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Stress test of revision-info and automodule-inject executing concurrently
+ * across the modules of a generated git repository, as they do under
+ * <code>-T</code>: every module's outputs - the files written under
+ * <code>target/</code> and the properties set on the project - must be
+ * byte-for-byte what a single-threaded run produces, on every round at every
+ * thread count. Throughput and its scaling with thread count are reported.
+ * <p>
+ * Not run by the default build; run it with
+ * <code>mvn -f plugin-benchmarks/pom.xml test -Preactor-benchmark -Dtest=ConcurrentExecutionBenchmark</code>,
+ * optionally setting <code>concurrent.benchmark.modules</code>,
+ * <code>concurrent.benchmark.threads</code> (comma-delimited thread counts),
+ * <code>concurrent.benchmark.rounds</code> and
+ * <code>concurrent.benchmark.submodules</code>. Results are printed and
+ * appended to <code>target/concurrency-benchmark.csv</code>.
+ * </p>
+ * <p>
+ * Both plugins' descriptors are also checked: Maven runs a mojo which
+ * claims <code>threadSafe</code> concurrently without further checks, and
+ * a singleton mojo shares its injected fields between those executions.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public class ConcurrentExecutionBenchmark {
+
+    private static final String CSV_HEADER = "modules,submodules,threads,rounds,"
+            + "meanMillis,bestMillis,modulesPerSecond,speedup";
+    private static final Pattern MOJO = Pattern.compile("<mojo>(.*?)</mojo>", Pattern.DOTALL);
+    private static final Pattern GOAL = Pattern.compile("<goal>([^<]+)</goal>");
+    // Timings, and a cache whose header is the time it was written
+    private static final String[] NONDETERMINISTIC = {RevisionInfoMetrics.MODULE_METRICS_FILE,
+        "revision-info-source-hashes.txt"};
+
+    @Rule
+    public MojoRule rule = new MojoRule() {
+        @Override
+        protected void before() throws Throwable {
+        }
+
+        @Override
+        protected void after() {
+        }
+    };
+
+    @Test
+    public void testDescriptorsAreSafeForParallelBuilds() throws IOException {
+        Enumeration<URL> descriptors = getClass().getClassLoader().getResources("META-INF/maven/plugin.xml");
+        int count = 0;
+        while (descriptors.hasMoreElements()) {
+            URL url = descriptors.nextElement();
+            String xml;
+            try (InputStream in = url.openStream()) {
+                xml = Utils.readString(in, "UTF-8", 8192);
+            }
+            if (!xml.contains("<groupId>com.mastfrog</groupId>")) {
+                // Maven's own, from maven-compat
+                continue;
+            }
+            Matcher m = MOJO.matcher(xml);
+            while (m.find()) {
+                String mojo = m.group(1);
+                Matcher goal = GOAL.matcher(mojo);
+                assertTrue(url.toString(), goal.find());
+                assertTrue(goal.group(1) + " in " + url + " is not thread-safe",
+                        mojo.contains("<threadSafe>true</threadSafe>"));
+                assertTrue(goal.group(1) + " in " + url + " is a singleton",
+                        mojo.contains("<instantiationStrategy>per-lookup</instantiationStrategy>"));
+                count++;
+            }
+        }
+        assertTrue("No mojos found", count > 0);
+    }
+
+    @Test
+    public void benchmarkConcurrentExecution() throws Exception {
+        int modules = Integer.getInteger("concurrent.benchmark.modules", 64);
+        int submodules = Math.min(modules, Integer.getInteger("concurrent.benchmark.submodules", 4));
+        int rounds = Integer.getInteger("concurrent.benchmark.rounds", 3);
+        String threadCounts = System.getProperty("concurrent.benchmark.threads", "1,2,4,8,16,32");
+        Path base = Files.createTempDirectory("concurrent-bench-");
+        List<Result> results = new ArrayList<>();
+        try {
+            SyntheticReactor reactor = SyntheticReactor.create(base, modules, 10, submodules);
+            // What a single thread produces is the reference for every run
+            List<Map<String, String>> expected = run(reactor, 1).outputs;
+            for (String s : Utils.split(',', threadCounts)) {
+                int threads = Integer.parseInt(s.trim());
+                long[] nanos = new long[rounds];
+                for (int round = 0; round < rounds; round++) {
+                    Run run = run(reactor, threads);
+                    nanos[round] = run.nanos;
+                    for (int i = 0; i < modules; i++) {
+                        assertEquals("Output of " + SyntheticReactor.artifactId(i) + " with "
+                                + threads + " threads, round " + round, expected.get(i), run.outputs.get(i));
+                    }
+                }
+                results.add(new Result(modules, submodules, threads, nanos));
+            }
+        } finally {
+            Fixtures.delete(base);
+        }
+        report(results);
+    }
+
+    private Run run(SyntheticReactor reactor, int threads) throws Exception {
+        List<Path> dirs = reactor.modules();
+        List<RevisionInfoMojo> revs = new ArrayList<>(dirs.size());
+        List<AutomoduleInjectMojo> autos = new ArrayList<>(dirs.size());
+        MavenSession session = null;
+        for (Path dir : dirs) {
+            Fixtures.delete(dir.resolve("target"));
+            // Configured up front, as Maven builds every model before it
+            // runs anything
+            RevisionInfoMojo rev = (RevisionInfoMojo) rule.lookupConfiguredMojo(dir.toFile(), "revision-info");
+            if (session == null) {
+                session = rev.session;
+            } else {
+                rev.session = session;
+            }
+            rev.publishProperties = true;
+            rev.sourceFingerprint = true;
+            rev.nativeImage = true;
+            revs.add(rev);
+            AutomoduleInjectMojo auto = new AutomoduleInjectMojo();
+            rule.setVariableValueToObject(auto, "project", rev.project);
+            rule.setVariableValueToObject(auto, "includeGroupId", true);
+            rule.setVariableValueToObject(auto, "autoModuleNameProperty", "autoAutoModuleName");
+            autos.add(auto);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>(dirs.size());
+            for (int i = 0; i < dirs.size(); i++) {
+                AutomoduleInjectMojo auto = autos.get(i);
+                RevisionInfoMojo rev = revs.get(i);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    // initialize, then generate-sources
+                    auto.execute();
+                    rev.execute();
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException ex) {
+                    throw new AssertionError("Failed with " + threads + " threads", ex.getCause());
+                }
+            }
+            long elapsed = System.nanoTime() - begin;
+            List<Map<String, String>> outputs = new ArrayList<>(dirs.size());
+            for (int i = 0; i < dirs.size(); i++) {
+                outputs.add(outputs(dirs.get(i), revs.get(i).project));
+            }
+            return new Run(elapsed, outputs);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Map<String, String> outputs(Path dir, MavenProject project) throws IOException {
+        Map<String, String> result = new TreeMap<>();
+        Path target = dir.resolve("target");
+        if (Files.exists(target)) {
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> all = Files.walk(target)) {
+                all.filter(Files::isRegularFile).forEach(files::add);
+            }
+            outer:
+            for (Path file : files) {
+                for (String skip : NONDETERMINISTIC) {
+                    if (file.getFileName().toString().equals(skip)) {
+                        continue outer;
+                    }
+                }
+                result.put(dir.relativize(file).toString(),
+                        new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+        }
+        for (String key : project.getProperties().stringPropertyNames()) {
+            result.put("property " + key, project.getProperties().getProperty(key));
+        }
+        return result;
+    }
+
+    private void report(List<Result> results) throws IOException {
+        Path csv = Paths.get("target", "concurrency-benchmark.csv");
+        boolean exists = Files.exists(csv);
+        Files.createDirectories(csv.getParent());
+        long baseline = results.isEmpty() ? 0 : results.get(0).best();
+        try (PrintStream out = new PrintStream(Files.newOutputStream(csv,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), true, "UTF-8")) {
+            if (!exists) {
+                out.println(CSV_HEADER);
+            }
+            System.out.println(String.format("%8s %8s %10s %10s %12s %8s",
+                    "modules", "threads", "mean ms", "best ms", "modules/s", "speedup"));
+            for (Result r : results) {
+                out.println(r.toCsv(baseline));
+                System.out.println(r.toString(baseline));
+            }
+        }
+        System.out.println("Appended results to " + csv.toAbsolutePath());
+        if (results.isEmpty()) {
+            fail("No thread counts in " + System.getProperty("concurrent.benchmark.threads"));
+        }
+    }
+
+    static final class Run {
+
+        final long nanos;
+        final List<Map<String, String>> outputs;
+
+        Run(long nanos, List<Map<String, String>> outputs) {
+            this.nanos = nanos;
+            this.outputs = Collections.unmodifiableList(outputs);
+        }
+    }
+
+    static final class Result {
+
+        final int modules;
+        final int submodules;
+        final int threads;
+        final long[] nanos;
+
+        Result(int modules, int submodules, int threads, long[] nanos) {
+            this.modules = modules;
+            this.submodules = submodules;
+            this.threads = threads;
+            this.nanos = nanos;
+        }
+
+        long best() {
+            long result = Long.MAX_VALUE;
+            for (long n : nanos) {
+                result = Math.min(result, n);
+            }
+            return result;
+        }
+
+        long mean() {
+            long total = 0;
+            for (long n : nanos) {
+                total += n;
+            }
+            return total / Math.max(1, nanos.length);
+        }
+
+        double modulesPerSecond() {
+            return modules / (best() / 1_000_000_000D);
+        }
+
+        double speedup(long baseline) {
+            return baseline / (double) best();
+        }
+
+        String toCsv(long baseline) {
+            return modules + "," + submodules + "," + threads + "," + nanos.length + ","
+                    + TimeUnit.NANOSECONDS.toMillis(mean()) + "," + TimeUnit.NANOSECONDS.toMillis(best())
+                    + "," + String.format("%.1f", modulesPerSecond()) + "," + String.format("%.2f", speedup(baseline));
+        }
+
+        String toString(long baseline) {
+            return String.format("%8d %8d %10d %10d %12.1f %8.2f", modules, threads,
+                    TimeUnit.NANOSECONDS.toMillis(mean()), TimeUnit.NANOSECONDS.toMillis(best()),
+                    modulesPerSecond(), speedup(baseline));
+        }
+    }
+}
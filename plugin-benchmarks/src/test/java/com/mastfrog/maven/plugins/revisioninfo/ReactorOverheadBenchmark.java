@@ -0,0 +1,218 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import com.mastfrog.automodule.inject.AutomoduleInjectMojo;
+import com.mastfrog.plugin.benchmarks.Fixtures;
+import com.mastfrog.plugin.benchmarks.SyntheticReactor;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * End-to-end benchmark of the per-module overhead of revision-info and
+ * automodule-inject, including forking git and writing files, against
+ * generated git repositories of 10, 100 and 500 modules.
+ * <p>
+ * Not run by the default build; run it with
+ * <code>mvn -f plugin-benchmarks/pom.xml test -Preactor-benchmark</code>,
+ * optionally setting <code>reactor.benchmark.modules</code> (comma-delimited
+ * module counts), <code>reactor.benchmark.commits</code> and
+ * <code>reactor.benchmark.submodules</code>. Results are printed and appended
+ * to <code>target/reactor-benchmark.csv</code>.
+ * </p>
+ * <p>
+ * The harness loads a single plugin descriptor per container, and takes the
+ * first <code>META-INF/maven/plugin.xml</code> on the classpath, which is
+ * revision-info-plugin's; automodule-inject is instantiated directly and
+ * configured through the harness's field injection.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+public class ReactorOverheadBenchmark {
+
+    private static final String CSV_HEADER = "modules,commits,submodules,"
+            + "totalMillis,meanMicros,medianMicros,p95Micros,maxMicros,"
+            + "revisionInfoMicros,automoduleMicros,forks,bytesWritten";
+
+    @Rule
+    public MojoRule rule = new MojoRule() {
+        @Override
+        protected void before() throws Throwable {
+        }
+
+        @Override
+        protected void after() {
+        }
+    };
+
+    @Test
+    public void benchmarkReactorOverhead() throws Exception {
+        int commits = Integer.getInteger("reactor.benchmark.commits", 20);
+        int submodules = Integer.getInteger("reactor.benchmark.submodules", 0);
+        String counts = System.getProperty("reactor.benchmark.modules", "10,100,500");
+        List<Result> results = new ArrayList<>();
+        for (String count : Utils.split(',', counts)) {
+            int modules = Integer.parseInt(count.trim());
+            Path base = Files.createTempDirectory("reactor-bench-");
+            try {
+                SyntheticReactor reactor = SyntheticReactor.create(base, modules,
+                        commits, Math.min(submodules, modules));
+                results.add(run(reactor, commits, Math.min(submodules, modules)));
+            } finally {
+                Fixtures.delete(base);
+            }
+        }
+        report(results);
+    }
+
+    private Result run(SyntheticReactor reactor, int commits, int submodules) throws Exception {
+        List<Path> modules = reactor.modules();
+        long[] revisionInfo = new long[modules.size()];
+        long[] automodule = new long[modules.size()];
+        long bytes = 0;
+        // Model building is Maven's cost, not the plugins' - configure
+        // every mojo before starting the clock
+        List<RevisionInfoMojo> revs = new ArrayList<>();
+        List<AutomoduleInjectMojo> autos = new ArrayList<>();
+        MavenSession session = null;
+        for (Path module : modules) {
+            RevisionInfoMojo rev = (RevisionInfoMojo) rule.lookupConfiguredMojo(module.toFile(), "revision-info");
+            // The harness creates a session per lookup; a real reactor has
+            // one, which Maven clones for each project it builds
+            if (session == null) {
+                session = rev.session;
+            }
+            rev.session = session.clone();
+            rev.session.setCurrentProject(rev.project);
+            revs.add(rev);
+            autos.add(automoduleMojo(rev.project));
+        }
+        long forksBefore = LibInfo.gitProcessesStarted();
+        long totalStart = System.nanoTime();
+        for (int i = 0; i < modules.size(); i++) {
+            RevisionInfoMojo rev = revs.get(i);
+            long start = System.nanoTime();
+            autos.get(i).execute();
+            long mid = System.nanoTime();
+            rev.execute();
+            long end = System.nanoTime();
+            automodule[i] = mid - start;
+            revisionInfo[i] = end - mid;
+
+            bytes += Files.size(rev.propertiesOutputFile());
+            Path src = rev.sourceOutputFile();
+            if (src != null) {
+                bytes += Files.size(src);
+            }
+        }
+        long total = System.nanoTime() - totalStart;
+        long forks = LibInfo.gitProcessesStarted() - forksBefore;
+        return new Result(modules.size(), commits, submodules, total,
+                revisionInfo, automodule, forks, bytes);
+    }
+
+    private AutomoduleInjectMojo automoduleMojo(MavenProject project) throws IllegalAccessException {
+        AutomoduleInjectMojo result = new AutomoduleInjectMojo();
+        rule.setVariableValueToObject(result, "project", project);
+        rule.setVariableValueToObject(result, "includeGroupId", true);
+        return result;
+    }
+
+    private void report(List<Result> results) throws IOException {
+        Path csv = Paths.get("target", "reactor-benchmark.csv");
+        boolean exists = Files.exists(csv);
+        Files.createDirectories(csv.getParent());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(csv,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), true, "UTF-8")) {
+            if (!exists) {
+                out.println(CSV_HEADER);
+            }
+            System.out.println(String.format("%8s %8s %10s %10s %10s %10s %8s %12s",
+                    "modules", "commits", "total ms", "mean us", "p95 us", "max us",
+                    "forks", "bytes"));
+            for (Result r : results) {
+                out.println(r.toCsv());
+                System.out.println(r);
+                assertTrue("Expected git to be run at least once per repository "
+                        + "but it ran " + r.forks + " times for " + r.modules,
+                        r.forks >= r.submodules + 1);
+            }
+        }
+        System.out.println("Appended results to " + csv.toAbsolutePath());
+    }
+
+    static final class Result {
+
+        final int modules;
+        final int commits;
+        final int submodules;
+        final long totalNanos;
+        final long[] perModuleNanos;
+        final long revisionInfoNanos;
+        final long automoduleNanos;
+        final long forks;
+        final long bytesWritten;
+
+        Result(int modules, int commits, int submodules, long totalNanos,
+                long[] revisionInfo, long[] automodule, long forks, long bytesWritten) {
+            this.modules = modules;
+            this.commits = commits;
+            this.submodules = submodules;
+            this.totalNanos = totalNanos;
+            this.forks = forks;
+            this.bytesWritten = bytesWritten;
+            perModuleNanos = new long[modules];
+            long rev = 0;
+            long auto = 0;
+            for (int i = 0; i < modules; i++) {
+                perModuleNanos[i] = revisionInfo[i] + automodule[i];
+                rev += revisionInfo[i];
+                auto += automodule[i];
+            }
+            revisionInfoNanos = rev;
+            automoduleNanos = auto;
+            Arrays.sort(perModuleNanos);
+        }
+
+        long micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+
+        long mean() {
+            return micros((revisionInfoNanos + automoduleNanos) / modules);
+        }
+
+        long percentile(double pct) {
+            int ix = Math.min(modules - 1, (int) Math.ceil(pct * modules) - 1);
+            return micros(perModuleNanos[Math.max(0, ix)]);
+        }
+
+        String toCsv() {
+            return modules + "," + commits + "," + submodules + ","
+                    + TimeUnit.NANOSECONDS.toMillis(totalNanos) + "," + mean() + ","
+                    + percentile(0.5) + "," + percentile(0.95) + ","
+                    + percentile(1) + "," + micros(revisionInfoNanos) + ","
+                    + micros(automoduleNanos) + "," + forks + "," + bytesWritten;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8d %8d %10d %10d %10d %10d %8d %12d",
+                    modules, commits, TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                    mean(), percentile(0.95), percentile(1), forks, bytesWritten);
+        }
+    }
+}
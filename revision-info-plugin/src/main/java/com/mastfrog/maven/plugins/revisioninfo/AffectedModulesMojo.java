@@ -0,0 +1,255 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Determines which projects in the reactor are affected by the changes between
+ * a git ref and the working tree, so a CI build can be limited to them with
+ * <code>-pl</code>. Changed submodule pointers are followed into the
+ * submodule, so bumping a submodule affects only the projects in it whose
+ * files actually changed; and each affected project's downstream dependents
+ * in the reactor are included. A change to a pom a project inherits from
+ * affects that project even when the parent is not in the reactor, and a
+ * change outside every project's directory - one the reactor cannot see
+ * the consequences of - affects every project, unless it matches
+ * <code>affected.ignore</code>. Aggregators (<code>pom</code> packaging)
+ * and the execution root own only their <code>pom.xml</code>, not
+ * everything beneath them, so a change to a script or other file at the
+ * root of the tree affects everything rather than only the root project.
+ * <p>
+ * Run it against the aggregator, e.g.
+ * <code>mvn -q revision-info:affected-modules -Daffected.since=origin/master</code>,
+ * then pass the contents of <code>target/affected-modules.txt</code> to
+ * <code>mvn -pl</code>. An empty file means nothing needs building.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "affected-modules", aggregator = true, threadSafe = true)
+public class AffectedModulesMojo extends AbstractMojo {
+
+    /**
+     * The commit, branch or tag to compare the working tree against.
+     */
+    @Parameter(property = "affected.since", defaultValue = "HEAD")
+    String since;
+
+    /**
+     * If true, files git does not track (and does not ignore) count as
+     * changes.
+     */
+    @Parameter(property = "affected.includeUntracked", defaultValue = "true")
+    boolean includeUntracked = true;
+
+    /**
+     * If true, projects which depend on an affected project, directly or
+     * transitively, are affected too.
+     */
+    @Parameter(property = "affected.includeDownstream", defaultValue = "true")
+    boolean includeDownstream = true;
+
+    /**
+     * Glob patterns, relative to the execution root, for changed files which
+     * should not cause any project to be rebuilt, such as
+     * <code>**&#47;*.md</code>.
+     */
+    @Parameter(property = "affected.ignore")
+    List<String> ignoredPaths;
+
+    /**
+     * The file to write the comma-delimited project list to.
+     */
+    @Parameter(property = "affected.output",
+            defaultValue = "${session.executionRootDirectory}/target/affected-modules.txt")
+    File outputFile;
+
+    /**
+     * A user property to set to the project list, for use by plugins later in
+     * the same build.
+     */
+    @Parameter(property = "affected.property", defaultValue = "affectedModules")
+    String property;
+
+    /**
+     * How to identify projects in the list - <code>ids</code> for
+     * <code>groupId:artifactId</code>, or <code>paths</code> for directories
+     * relative to the execution root.
+     */
+    @Parameter(property = "affected.format", defaultValue = "ids")
+    String format;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (!"ids".equals(format) && !"paths".equals(format)) {
+            throw new MojoExecutionException("Format must be 'ids' or 'paths', not '" + format + "'");
+        }
+        Path executionRoot = Paths.get(session.getExecutionRootDirectory()).toAbsolutePath().normalize();
+        Path gitRoot = LibInfo.findGitRoot(executionRoot);
+        if (gitRoot == null) {
+            throw new MojoExecutionException("Not in a git repository: " + executionRoot);
+        }
+        StringBuilder errors = new StringBuilder();
+        Set<Path> changed;
+        try {
+            changed = new GitChanges(new LibInfo(Collections.<Path>emptyList()), includeUntracked)
+                    .changedFiles(gitRoot, since, errors);
+        } catch (IOException | InterruptedException ex) {
+            throw new MojoExecutionException("Error running git: " + errors, ex);
+        }
+        if (changed == null) {
+            throw new MojoExecutionException("Could not diff against " + since + ": " + errors);
+        }
+        changed = withoutIgnored(executionRoot, changed);
+        getLog().debug(changed.size() + " changed files since " + since);
+
+        ProjectDependencyGraph graph = session.getProjectDependencyGraph();
+        List<MavenProject> sorted = graph.getSortedProjects();
+        Map<Path, MavenProject> byBasedir = new LinkedHashMap<>();
+        Map<Path, Set<MavenProject>> inheritors = new LinkedHashMap<>();
+        for (MavenProject p : sorted) {
+            Path basedir = p.getBasedir().toPath().toAbsolutePath().normalize();
+            if (!"pom".equals(p.getPackaging()) && !basedir.equals(executionRoot)) {
+                byBasedir.put(basedir, p);
+            }
+            if (p.getFile() != null) {
+                inheritors.computeIfAbsent(p.getFile().toPath().toAbsolutePath().normalize(),
+                        f -> new LinkedHashSet<>()).add(p);
+            }
+            for (MavenProject parent = p.getParent(); parent != null; parent = parent.getParent()) {
+                // Null for parents resolved from a repository
+                if (parent.getFile() != null) {
+                    inheritors.computeIfAbsent(parent.getFile().toPath().toAbsolutePath().normalize(),
+                            f -> new LinkedHashSet<>()).add(p);
+                }
+            }
+        }
+        Set<MavenProject> affected = owners(byBasedir, inheritors, changed);
+        if (includeDownstream) {
+            for (MavenProject p : new ArrayList<>(affected)) {
+                affected.addAll(graph.getDownstreamProjects(p, true));
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (MavenProject p : sorted) {
+            if (affected.contains(p)) {
+                result.add(identify(executionRoot, p));
+            }
+        }
+        String list = Utils.join(',', result);
+        if (property != null && !property.isEmpty()) {
+            session.getUserProperties().setProperty(property, list);
+        }
+        try {
+            Utils.writeAtomically(outputFile.toPath(), list.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Could not write " + outputFile, ex);
+        }
+        getLog().info(result.size() + " of " + sorted.size() + " projects affected by "
+                + changed.size() + " changed files since " + since
+                + (result.isEmpty() ? "" : ": " + list));
+    }
+
+    private String identify(Path executionRoot, MavenProject p) {
+        if ("paths".equals(format)) {
+            String rel = executionRoot.relativize(p.getBasedir().toPath().toAbsolutePath().normalize()).toString();
+            return rel.isEmpty() ? "." : rel.replace(File.separatorChar, '/');
+        }
+        return p.getGroupId() + ":" + p.getArtifactId();
+    }
+
+    private Set<Path> withoutIgnored(Path root, Set<Path> changed) {
+        if (ignoredPaths == null || ignoredPaths.isEmpty()) {
+            return changed;
+        }
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : ignoredPaths) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+        }
+        Set<Path> result = new LinkedHashSet<>();
+        outer:
+        for (Path p : changed) {
+            // Paths above the execution root relativize to ../x, which
+            // patterns like **/*.md still match
+            Path rel = root.relativize(p);
+            for (PathMatcher m : matchers) {
+                if (m.matches(rel)) {
+                    continue outer;
+                }
+            }
+            result.add(p);
+        }
+        return result;
+    }
+
+    /**
+     * Map changed paths to the things whose base directory most closely
+     * contains them. A changed path which is a directory (a submodule whose
+     * history could not be followed) also affects everything beneath it; a
+     * changed pom affects everything which inherits from it; and a changed
+     * path none of those account for affects everything.
+     *
+     * @param <T> The type
+     * @param byBasedir Things which own the files beneath their absolute,
+     * normalized base directory - not aggregators
+     * @param inheritors Things keyed by the absolute, normalized paths of
+     * their own pom and the poms in their inheritance chain
+     * @param changed Absolute paths which changed
+     * @return The affected things
+     */
+    static <T> Set<T> owners(Map<Path, T> byBasedir, Map<Path, ? extends Collection<T>> inheritors,
+            Collection<Path> changed) {
+        Set<T> result = new LinkedHashSet<>();
+        for (Path p : changed) {
+            Path owner = null;
+            boolean contains = false;
+            for (Path dir : byBasedir.keySet()) {
+                if (p.startsWith(dir) && (owner == null || dir.getNameCount() > owner.getNameCount())) {
+                    owner = dir;
+                }
+                if (dir.startsWith(p) && Files.isDirectory(p)) {
+                    result.add(byBasedir.get(dir));
+                    contains = true;
+                }
+            }
+            if (owner != null) {
+                result.add(byBasedir.get(owner));
+            }
+            Collection<T> inheriting = inheritors.get(p);
+            if (inheriting != null) {
+                result.addAll(inheriting);
+            } else if (owner == null && !contains) {
+                Set<T> everything = new LinkedHashSet<>(byBasedir.values());
+                for (Collection<T> c : inheritors.values()) {
+                    everything.addAll(c);
+                }
+                return everything;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A directory of javadoc and source archives built earlier, keyed by the
+ * fingerprint of the module they were built from and the commit it was
+ * built at - the commit is part of the key because the archives' manifests
+ * carry it. Entries are written to a temporary file and renamed into place,
+ * so concurrent builds sharing a cache never see a partial archive.
+ *
+ * @author Tim Boudreau
+ */
+final class ArchiveCache {
+
+    /**
+     * Project context key for the cache key of a project's archives.
+     */
+    static final String KEY_CONTEXT = ArchiveCache.class.getName() + ".key";
+    /**
+     * Project context key for the set of classifiers restored from the
+     * cache, which need not be stored again.
+     */
+    static final String RESTORED_CONTEXT = ArchiveCache.class.getName() + ".restored";
+    private final Path dir;
+
+    ArchiveCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Compute the key for a module's archives.
+     *
+     * @param fingerprint The module's fingerprint
+     * @param revision The commit hash and repository status
+     * @return A hex SHA-256 hash
+     */
+    static String key(String fingerprint, String revision) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(revision.getBytes(StandardCharsets.UTF_8));
+            return Utils.hex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * The classifiers configured for the store and restore goals, trimmed,
+     * so both goals agree on what <code>javadoc, sources</code> means.
+     *
+     * @param configured The configured classifiers, or null
+     * @return A set in configuration order, without blanks
+     */
+    static Set<String> classifiers(List<String> configured) {
+        Set<String> result = new LinkedHashSet<>();
+        if (configured != null) {
+            for (String classifier : configured) {
+                if (!classifier.trim().isEmpty()) {
+                    result.add(classifier.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The skip property of the plugin which builds archives with a
+     * classifier, or null if unknown.
+     */
+    static String skipProperty(String classifier) {
+        switch (classifier) {
+            case "javadoc":
+                return "maven.javadoc.skip";
+            case "sources":
+                return "maven.source.skip";
+            default:
+                return null;
+        }
+    }
+
+    Path entry(String key, String classifier) {
+        return dir.resolve(key).resolve(classifier + ".jar");
+    }
+
+    /**
+     * Copy a cached archive to where the build would have written it.
+     *
+     * @param key The key
+     * @param classifier The classifier
+     * @param target The destination
+     * @return true if there was a cached archive
+     * @throws IOException If copying fails
+     */
+    boolean restore(String key, String classifier, Path target) throws IOException {
+        Path entry = entry(key, classifier);
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Files.copy(entry, target, StandardCopyOption.REPLACE_EXISTING);
+        // Record use, so least recently used entries can be pruned
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Add an archive to the cache.
+     *
+     * @param key The key
+     * @param classifier The classifier
+     * @param archive The archive
+     * @throws IOException If copying fails
+     */
+    void store(String key, String classifier, Path archive) throws IOException {
+        Path entry = entry(key, classifier);
+        Path parent = Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(parent, "." + classifier, ".tmp");
+        try {
+            Files.copy(archive, temp, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
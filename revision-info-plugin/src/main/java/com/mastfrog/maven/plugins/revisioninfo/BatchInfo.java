@@ -0,0 +1,164 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves revision info for many repositories in one JVM - the paths named
+ * on the command line, or a superproject and every initialized submodule
+ * found by following <code>.gitmodules</code> files - running git for each
+ * concurrently, and renders the results as a single JSON or properties
+ * document keyed by path.
+ *
+ * @author Tim Boudreau
+ */
+final class BatchInfo {
+
+    private final int threads;
+    private final List<Path> gitBinaryPaths;
+
+    BatchInfo(int threads) {
+        this(threads, Collections.<Path>emptyList());
+    }
+
+    /**
+     * Create an instance which also looks for git in some directories
+     * besides the PATH.
+     *
+     * @param threads The number of repositories to resolve at once
+     * @param gitBinaryPaths Directories to search for git
+     */
+    BatchInfo(int threads, List<Path> gitBinaryPaths) {
+        this.threads = Math.max(1, threads);
+        this.gitBinaryPaths = gitBinaryPaths;
+    }
+
+    /**
+     * Find a repository root and all initialized submodules beneath it,
+     * including submodules of submodules.
+     *
+     * @param root A repository root
+     * @return The root followed by submodule directories, in
+     * <code>.gitmodules</code> order
+     * @throws IOException If a <code>.gitmodules</code> cannot be read
+     */
+    static List<Path> discover(Path root) throws IOException {
+        List<Path> result = new ArrayList<>();
+        discover(root, result);
+        return result;
+    }
+
+    private static void discover(Path repo, List<Path> into) throws IOException {
+        into.add(repo);
+        for (String sub : GitChanges.submodulePaths(repo)) {
+            Path dir = repo.resolve(sub);
+            if (RevisionService.gitDir(dir) != null) {
+                discover(dir, into);
+            }
+        }
+    }
+
+    /**
+     * Resolve revision info for a list of paths concurrently.
+     *
+     * @param base Keys in the result are relative to this where possible
+     * @param paths The paths
+     * @return A map, in the order of the paths passed, of key to either
+     * Properties or an error message
+     * @throws InterruptedException If interrupted
+     */
+    Map<String, Object> resolve(Path base, List<Path> paths) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, paths.size())), r -> {
+            Thread t = new Thread(r, "revision-info-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Object>> futures = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                futures.add(pool.submit(() -> {
+                    StringBuilder errors = new StringBuilder();
+                    // LibInfo's metrics are not thread-safe, so one per task
+                    Properties props = new LibInfo(gitBinaryPaths).getInfo(path, errors);
+                    if (props == null) {
+                        return errors.length() == 0 ? "Not a git repository" : errors.toString().trim();
+                    }
+                    return props;
+                }));
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (int i = 0; i < paths.size(); i++) {
+                Object value;
+                try {
+                    value = futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    value = String.valueOf(ex.getCause());
+                }
+                result.put(key(base, paths.get(i)), value);
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static String key(Path base, Path path) {
+        Path abs = path.toAbsolutePath().normalize();
+        if (abs.startsWith(base)) {
+            String rel = base.relativize(abs).toString().replace(File.separatorChar, '/');
+            return rel.isEmpty() ? "." : rel;
+        }
+        return abs.toString();
+    }
+
+    static String toJson(Map<String, Object> results) {
+        StringBuilder sb = new StringBuilder(results.size() * 256).append('{');
+        int ix = 0;
+        for (Map.Entry<String, Object> e : results.entrySet()) {
+            sb.append(ix++ == 0 ? "\n" : ",\n").append("  ").append(Utils.quoteJson(e.getKey())).append(": {");
+            if (e.getValue() instanceof Properties) {
+                Properties props = (Properties) e.getValue();
+                List<String> keys = new ArrayList<>(props.stringPropertyNames());
+                Collections.sort(keys);
+                for (int i = 0; i < keys.size(); i++) {
+                    sb.append(i == 0 ? "" : ", ").append(Utils.quoteJson(keys.get(i))).append(": ")
+                            .append(Utils.quoteJson(props.getProperty(keys.get(i))));
+                }
+            } else {
+                sb.append("\"error\": ").append(Utils.quoteJson(String.valueOf(e.getValue())));
+            }
+            sb.append('}');
+        }
+        return sb.append(results.isEmpty() ? "}\n" : "\n}\n").toString();
+    }
+
+    static String toProperties(Map<String, Object> results) throws IOException {
+        Properties all = new Properties();
+        for (Map.Entry<String, Object> e : results.entrySet()) {
+            if (e.getValue() instanceof Properties) {
+                Properties props = (Properties) e.getValue();
+                for (String k : props.stringPropertyNames()) {
+                    all.setProperty(e.getKey() + "." + k, props.getProperty(k));
+                }
+            } else {
+                all.setProperty(e.getKey() + ".error", String.valueOf(e.getValue()));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(results.size() * 256);
+        Utils.savePropertiesFile(all, out, "Generated by " + LibInfo.class.getName(), true);
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,142 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Caches the class output and jar of each jar module in a local directory
+ * shared by builds on the same machine - see {@link OutputCache} - keyed on
+ * the module's fingerprint, which covers its sources, resources, effective
+ * model and the fingerprints of the reactor modules it depends on, and on
+ * the commit and repository status RevisionInfoMojo publishes, which end up
+ * in the output. Enable it with <code>-DbuildCache=true</code>;
+ * <code>buildCache.directory</code> and <code>buildCache.maxSize</code>
+ * (e.g. <code>20g</code>) override where it is and how large it may grow.
+ * <p>
+ * Keys are computed here, before anything is built; the
+ * <code>restore-outputs</code> goal, which mastfrog-parent binds to
+ * <code>process-sources</code>, restores output after <code>clean</code> has
+ * run and skips compiling and copying resources for modules it restored,
+ * after which packaging finds the restored jar up to date. The output of
+ * every other module which built successfully is stored when the session
+ * ends.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Named("build-cache")
+@Singleton
+public class BuildCacheParticipant extends AbstractMavenLifecycleParticipant {
+
+    static final String ENABLED_PROPERTY = "buildCache";
+    static final String DIRECTORY_PROPERTY = "buildCache.directory";
+    static final String MAX_SIZE_PROPERTY = "buildCache.maxSize";
+    static final String DEFAULT_MAX_SIZE = "10g";
+    private final Logger logger;
+
+    @Inject
+    public BuildCacheParticipant(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
+        if (!enabled(session)) {
+            return;
+        }
+        Path root = Paths.get(session.getExecutionRootDirectory());
+        Map<String, MavenProject> all = new HashMap<>();
+        for (MavenProject project : session.getAllProjects()) {
+            all.put(project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion(), project);
+        }
+        Map<String, String> fingerprints = new HashMap<>();
+        for (MavenProject project : session.getProjects()) {
+            if (!"jar".equals(project.getPackaging())) {
+                continue;
+            }
+            try {
+                String fingerprint = ModuleFingerprint.inReactor(project, root, all, fingerprints);
+                String revision = RevisionService.instance().revision(project.getBasedir().toPath(),
+                        session, new RevisionInfoMetrics(project.getId()));
+                project.setContextValue(OutputCache.KEY_CONTEXT, OutputCache.key(fingerprint, revision));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new MavenExecutionException("Interrupted", project.getFile());
+            } catch (IOException | ExecutionException ex) {
+                throw new MavenExecutionException("Could not fingerprint " + project.getId(), ex);
+            }
+        }
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+        if (!enabled(session)) {
+            return;
+        }
+        OutputCache cache = cache(session);
+        int stored = 0;
+        int evicted = 0;
+        for (MavenProject project : session.getProjects()) {
+            String key = (String) project.getContextValue(OutputCache.KEY_CONTEXT);
+            if (key == null || project.getContextValue(OutputCache.RESTORED_CONTEXT) != null
+                    || !(session.getResult().getBuildSummary(project) instanceof BuildSuccess)) {
+                continue;
+            }
+            File classes = new File(project.getBuild().getOutputDirectory());
+            File jar = project.getArtifact().getFile();
+            if (!classes.isDirectory() || jar == null || !jar.isFile() || !jar.getName().endsWith(".jar")) {
+                // The build stopped short of packaging
+                continue;
+            }
+            try {
+                evicted += cache.store(key, project.getId(), classes.toPath(), jar.toPath());
+                stored++;
+            } catch (IOException ex) {
+                logger.warn("Could not cache the output of " + project.getId(), ex);
+            }
+        }
+        if (stored > 0) {
+            logger.info("Cached the output of " + stored + " modules in " + directory(session)
+                    + (evicted > 0 ? ", evicting " + evicted + " least recently used" : ""));
+        }
+    }
+
+    static OutputCache cache(MavenSession session) {
+        String maxSize = property(session, MAX_SIZE_PROPERTY);
+        return new OutputCache(directory(session), OutputCache.parseSize(maxSize == null ? DEFAULT_MAX_SIZE : maxSize));
+    }
+
+    private static boolean enabled(MavenSession session) {
+        return Boolean.parseBoolean(property(session, ENABLED_PROPERTY));
+    }
+
+    private static Path directory(MavenSession session) {
+        String dir = property(session, DIRECTORY_PROPERTY);
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        return Paths.get(session.getLocalRepository().getBasedir(), ".cache", "mastfrog-build");
+    }
+
+    private static String property(MavenSession session, String name) {
+        String result = session.getUserProperties().getProperty(name);
+        if (result == null) {
+            result = session.getSystemProperties().getProperty(name);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the files which differ between the working tree and a git ref,
+ * following changed submodule pointers into the submodules listed in
+ * <code>.gitmodules</code>, so that a change to a submodule shows up as
+ * changes to the files in it which actually changed.
+ *
+ * @author Tim Boudreau
+ */
+final class GitChanges {
+
+    private final LibInfo lib;
+    private final boolean includeUntracked;
+
+    GitChanges(LibInfo lib, boolean includeUntracked) {
+        this.lib = lib;
+        this.includeUntracked = includeUntracked;
+    }
+
+    /**
+     * Compute the changed files. A directory in the result means everything
+     * under it should be considered changed - the result for a submodule that
+     * was added since the ref, or whose old commit is not available locally.
+     *
+     * @param root A repository root
+     * @param ref A commit, branch or tag
+     * @param errors Errors are appended here
+     * @return A set of absolute paths, or null if git failed
+     */
+    Set<Path> changedFiles(Path root, String ref, StringBuilder errors) throws IOException, InterruptedException {
+        Set<Path> result = new LinkedHashSet<>();
+        return collect(root, ref, errors, result) ? result : null;
+    }
+
+    private boolean collect(Path root, String ref, StringBuilder errors, Set<Path> into) throws IOException, InterruptedException {
+        String diff = lib.runGit(root, errors, "-c", "core.quotepath=off", "diff",
+                "--name-only", "--no-renames", ref, "--");
+        if (diff == null) {
+            return false;
+        }
+        Set<String> submodules = submodulePaths(root);
+        for (String line : lines(diff)) {
+            Path path = root.resolve(line);
+            if (submodules.contains(line)) {
+                if (!collectSubmodule(root, ref, line, errors, into)) {
+                    into.add(path);
+                }
+            } else {
+                into.add(path);
+            }
+        }
+        if (includeUntracked) {
+            String untracked = lib.runGit(root, errors, "-c", "core.quotepath=off",
+                    "ls-files", "--others", "--exclude-standard");
+            if (untracked == null) {
+                return false;
+            }
+            for (String line : lines(untracked)) {
+                into.add(root.resolve(line));
+            }
+        }
+        return true;
+    }
+
+    private boolean collectSubmodule(Path root, String ref, String subPath, StringBuilder errors, Set<Path> into) throws IOException, InterruptedException {
+        Path sub = root.resolve(subPath);
+        if (RevisionService.gitDir(sub) == null) {
+            // Not checked out
+            return false;
+        }
+        StringBuilder ignored = new StringBuilder();
+        String tree = lib.runGit(root, ignored, "ls-tree", ref, "--", subPath);
+        String oldCommit = submoduleCommit(tree);
+        if (oldCommit == null) {
+            // Added since the ref
+            return false;
+        }
+        if (lib.runGit(sub, ignored, "cat-file", "-e", oldCommit + "^{commit}") == null) {
+            // The old commit was never fetched into the submodule
+            return false;
+        }
+        return collect(sub, oldCommit, errors, into);
+    }
+
+    static String submoduleCommit(String lsTreeOutput) {
+        // 160000 commit 2d3e9e8c5f0f1a...\tpath
+        if (lsTreeOutput == null) {
+            return null;
+        }
+        for (String line : lines(lsTreeOutput)) {
+            String[] parts = line.split("\\s+");
+            if (parts.length >= 3 && "commit".equals(parts[1])) {
+                return parts[2];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the submodule paths from <code>.gitmodules</code> in a
+     * repository root.
+     *
+     * @param root A root
+     * @return The set of submodule paths, relative to the root, using /
+     * @throws IOException If the file cannot be read
+     */
+    static Set<String> submodulePaths(Path root) throws IOException {
+        Path gitmodules = root.resolve(".gitmodules");
+        if (!Files.exists(gitmodules)) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        List<String> lines = Files.readAllLines(gitmodules, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("path")) {
+                int eq = trimmed.indexOf('=');
+                if (eq > 0 && trimmed.substring(0, eq).trim().equals("path")) {
+                    String path = trimmed.substring(eq + 1).trim();
+                    while (path.endsWith("/")) {
+                        path = path.substring(0, path.length() - 1);
+                    }
+                    result.add(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    static String[] lines(String output) {
+        if (output.isEmpty()) {
+            return new String[0];
+        }
+        String[] result = Utils.split('\n', output);
+        int count = 0;
+        for (String s : result) {
+            if (!s.isEmpty()) {
+                result[count++] = s;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,291 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the line-oriented indexes annotation processors write into a
+ * module's class output - <code>META-INF/services</code> files,
+ * <code>META-INF/http/pages.list</code> and the like - correct across
+ * incremental compiles. A processor only sees the classes javac is
+ * compiling, so when only some are recompiled it rewrites an index with
+ * only their lines, and when none of them are annotated any more it leaves
+ * their old lines in place.
+ * <p>
+ * After each compile, each line of each index is attributed to the class it
+ * names, and the attribution saved. On the next run, lines of classes which
+ * were not recompiled and still exist are carried forward from the saved
+ * state; lines of classes which were are taken from whatever the processors
+ * wrote. A full compile recompiles everything, so the result is then just
+ * what the processors wrote.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class IndexMerger {
+
+    private static final Pattern NAME = Pattern.compile("\\p{javaJavaIdentifierStart}[\\p{javaJavaIdentifierPart}.$]*");
+    private final Path classes;
+    private final List<PathMatcher> includes = new ArrayList<>();
+
+    /**
+     * Create a merger.
+     *
+     * @param classes The class output directory
+     * @param includes Globs matching the index files, relative to it
+     */
+    IndexMerger(Path classes, Iterable<String> includes) {
+        this.classes = classes;
+        for (String glob : includes) {
+            glob = glob.trim();
+            if (!glob.isEmpty()) {
+                this.includes.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+            }
+        }
+    }
+
+    /**
+     * Merge the indexes with the contributions recorded in a state file,
+     * and record them for the next run.
+     *
+     * @param stateFile The state file
+     * @return The number of index files rewritten
+     * @throws IOException If something goes wrong
+     */
+    int merge(Path stateFile) throws IOException {
+        State previous = State.load(stateFile);
+        Map<String, Long> compiled = compiledClasses();
+        Set<String> recompiled = new HashSet<>();
+        for (Map.Entry<String, Long> e : compiled.entrySet()) {
+            if (e.getValue() >= previous.time) {
+                recompiled.add(e.getKey());
+            }
+        }
+        Set<String> indexes = new TreeSet<>(previous.entries.keySet());
+        indexes.addAll(indexFiles());
+        State next = new State();
+        int rewritten = 0;
+        for (String index : indexes) {
+            Path file = classes.resolve(index);
+            boolean regenerated = Files.isRegularFile(file)
+                    && Files.getLastModifiedTime(file).toMillis() >= previous.time;
+            Set<Contribution> merged = new LinkedHashSet<>();
+            int dropped = 0;
+            List<Contribution> old = previous.entries.get(index);
+            if (old != null) {
+                for (Contribution c : old) {
+                    boolean keep = c.owner.isEmpty()
+                            ? !regenerated
+                            : compiled.containsKey(c.owner) && !recompiled.contains(c.owner);
+                    if (keep) {
+                        merged.add(c);
+                    } else {
+                        dropped++;
+                    }
+                }
+            }
+            int carried = merged.size();
+            if (regenerated) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        merged.add(new Contribution(owner(line, compiled), line));
+                    }
+                }
+            }
+            // A file the processors wrote with nothing to add is complete,
+            // and one they did not write with nothing to remove is current
+            if ((regenerated && carried > 0) || (!regenerated && dropped > 0)) {
+                if (write(file, merged)) {
+                    rewritten++;
+                }
+            }
+            if (!merged.isEmpty()) {
+                next.entries.put(index, new ArrayList<>(merged));
+            }
+        }
+        // After writing, so the files written here don't look regenerated
+        // next time
+        next.time = System.currentTimeMillis();
+        next.save(stateFile);
+        return rewritten;
+    }
+
+    private boolean write(Path file, Set<Contribution> lines) throws IOException {
+        if (lines.isEmpty()) {
+            // Every class it listed is gone or no longer annotated
+            return Files.deleteIfExists(file);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Contribution c : lines) {
+            sb.append(c.line).append('\n');
+        }
+        return Utils.writeAtomically(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The top-level class a line of an index refers to - the first name in
+     * it which is, or is nested in, a class in the output - or the empty
+     * string for comments and anything else.
+     */
+    static String owner(String line, Map<String, Long> compiled) {
+        if (line.trim().startsWith("#")) {
+            return "";
+        }
+        Matcher m = NAME.matcher(line);
+        while (m.find()) {
+            String name = m.group();
+            int dollar = name.indexOf('$');
+            if (dollar > 0) {
+                name = name.substring(0, dollar);
+            }
+            while (true) {
+                if (compiled.containsKey(name)) {
+                    return name;
+                }
+                int dot = name.lastIndexOf('.');
+                if (dot < 0) {
+                    break;
+                }
+                name = name.substring(0, dot);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Top-level classes in the output, with the most recent modification
+     * time of their class files, including those of nested classes.
+     */
+    Map<String, Long> compiledClasses() throws IOException {
+        Map<String, Long> result = new HashMap<>();
+        if (!Files.isDirectory(classes)) {
+            return result;
+        }
+        try (Stream<Path> all = Files.walk(classes)) {
+            for (Path p : (Iterable<Path>) all::iterator) {
+                String rel = classes.relativize(p).toString().replace('\\', '/');
+                if (!rel.endsWith(".class") || !Files.isRegularFile(p)) {
+                    continue;
+                }
+                String name = rel.substring(0, rel.length() - ".class".length()).replace('/', '.');
+                int dollar = name.indexOf('$');
+                if (dollar > 0) {
+                    name = name.substring(0, dollar);
+                }
+                long modified = Files.getLastModifiedTime(p).toMillis();
+                Long prev = result.get(name);
+                if (prev == null || prev < modified) {
+                    result.put(name, modified);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<String> indexFiles() throws IOException {
+        Set<String> result = new TreeSet<>();
+        Path metaInf = classes.resolve("META-INF");
+        if (!Files.isDirectory(metaInf)) {
+            return result;
+        }
+        try (Stream<Path> all = Files.walk(metaInf)) {
+            for (Path p : (Iterable<Path>) all::iterator) {
+                Path rel = classes.relativize(p);
+                for (PathMatcher m : includes) {
+                    if (m.matches(rel) && Files.isRegularFile(p)) {
+                        result.add(rel.toString().replace('\\', '/'));
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    static final class Contribution {
+
+        final String owner;
+        final String line;
+
+        Contribution(String owner, String line) {
+            this.owner = owner;
+            this.line = line;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Contribution && ((Contribution) o).line.equals(line);
+        }
+
+        @Override
+        public int hashCode() {
+            return line.hashCode();
+        }
+    }
+
+    /**
+     * Contributions recorded by the last run. The file is the time of the
+     * run, followed by a <code>index\towner\tline</code> line per line of
+     * each index.
+     */
+    static final class State {
+
+        long time;
+        final Map<String, List<Contribution>> entries = new TreeMap<>();
+
+        static State load(Path file) throws IOException {
+            State result = new State();
+            if (!Files.isRegularFile(file)) {
+                return result;
+            }
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                return result;
+            }
+            try {
+                result.time = Long.parseLong(lines.get(0).trim());
+            } catch (NumberFormatException ex) {
+                // Corrupt - treat everything as recompiled
+                return new State();
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3) {
+                    List<Contribution> list = result.entries.get(parts[0]);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        result.entries.put(parts[0], list);
+                    }
+                    list.add(new Contribution(parts[1], parts[2]));
+                }
+            }
+            return result;
+        }
+
+        void save(Path file) throws IOException {
+            StringBuilder sb = new StringBuilder().append(time).append('\n');
+            for (Map.Entry<String, List<Contribution>> e : entries.entrySet()) {
+                for (Contribution c : e.getValue()) {
+                    sb.append(e.getKey()).append('\t').append(c.owner).append('\t').append(c.line).append('\n');
+                }
+            }
+            Utils.writeAtomically(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
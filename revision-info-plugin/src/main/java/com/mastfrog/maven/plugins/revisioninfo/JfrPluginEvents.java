@@ -0,0 +1,137 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder implementation of {@link PluginEvents}. Compiled only
+ * when building on Java 11 or later, for Java 11, by the
+ * <code>jfr-events</code> profile; never referenced directly.
+ *
+ * @author Tim Boudreau
+ */
+final class JfrPluginEvents extends PluginEvents {
+
+    private static final String CATEGORY = "revision-info-plugin";
+
+    @Override
+    GitProcess gitProcess(List<String> command) {
+        GitProcessEvent event = new GitProcessEvent();
+        if (!event.isEnabled()) {
+            return NO_GIT_PROCESS;
+        }
+        event.command = Utils.join(' ', command);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    SourceScan sourceScan(Iterable<?> roots) {
+        SourceScanEvent event = new SourceScanEvent();
+        if (!event.isEnabled()) {
+            return NO_SOURCE_SCAN;
+        }
+        event.roots = Utils.join(',', roots);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    OutputWrite outputWrite(Path file) {
+        OutputWriteEvent event = new OutputWriteEvent();
+        if (!event.isEnabled()) {
+            return NO_OUTPUT_WRITE;
+        }
+        event.path = file.toString();
+        event.begin();
+        return event;
+    }
+
+    @Name("com.mastfrog.revisioninfo.GitProcess")
+    @Label("Git Process")
+    @Description("A git process run by revision-info-plugin, from start to exit")
+    @Category({"Maven", CATEGORY})
+    static final class GitProcessEvent extends Event implements GitProcess {
+
+        @Label("Command")
+        String command;
+
+        @Label("Exit Code")
+        int exitCode;
+
+        @Label("Output Size")
+        @Description("Bytes of standard output read from the process")
+        @DataAmount
+        long outputSize;
+
+        @Override
+        public void finish(int exitCode, long outputSize) {
+            end();
+            if (shouldCommit()) {
+                this.exitCode = exitCode;
+                this.outputSize = outputSize;
+                commit();
+            }
+        }
+    }
+
+    @Name("com.mastfrog.revisioninfo.SourceScan")
+    @Label("Source Scan")
+    @Description("A walk of source directories by revision-info-plugin")
+    @Category({"Maven", CATEGORY})
+    static final class SourceScanEvent extends Event implements SourceScan {
+
+        @Label("Roots")
+        String roots;
+
+        @Label("Directories")
+        long directories;
+
+        @Label("Files")
+        long files;
+
+        @Override
+        public void finish(long directories, long files) {
+            end();
+            if (shouldCommit()) {
+                this.directories = directories;
+                this.files = files;
+                commit();
+            }
+        }
+    }
+
+    @Name("com.mastfrog.revisioninfo.OutputWrite")
+    @Label("Output Write")
+    @Description("A file written by revision-info-plugin, or left alone because it was unchanged")
+    @Category({"Maven", CATEGORY})
+    static final class OutputWriteEvent extends Event implements OutputWrite {
+
+        @Label("Path")
+        String path;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Unchanged")
+        @Description("True if the file already had this content and was not rewritten")
+        boolean unchanged;
+
+        @Override
+        public void finish(long bytes, boolean unchanged) {
+            end();
+            if (shouldCommit()) {
+                this.bytes = bytes;
+                this.unchanged = unchanged;
+                commit();
+            }
+        }
+    }
+}
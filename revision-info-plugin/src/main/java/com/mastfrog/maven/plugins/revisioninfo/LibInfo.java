@@ -1,26 +1,39 @@
 package com.mastfrog.maven.plugins.revisioninfo;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.CACHE_HITS;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.FORKS;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.GIT_DESCRIBE;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.GIT_DISCOVERY;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.GIT_LOG;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.GIT_STATUS;
 
 /**
  *
@@ -41,17 +54,50 @@ public class LibInfo {
     public static final String COMMIT_DATE_PROPERTY = "commitDate";
     public static final String LONG_COMMIT_HASH_PROPERTY = "longCommitHash";
     public static final String SHORT_COMMIT_HASH_PROPERTY = "shortCommitHash";
+    public static final String DESCRIBE_PROPERTY = "describe";
     public static final String REPO_STATUS_PROPERTY = "repoStatus";
     private static final String UTC_TIME_ZONE = "UTC";
     private static final String TIME_ZONE_ENV_VAR = "TZ";
+    private static final String OPTIONAL_LOCKS_ENV_VAR = "GIT_OPTIONAL_LOCKS";
+    private static final String TERMINAL_PROMPT_ENV_VAR = "GIT_TERMINAL_PROMPT";
+    private static final String SSH_COMMAND_ENV_VAR = "GIT_SSH_COMMAND";
+    static final long PROCESS_TIMEOUT_SECONDS = 30;
+    static final int DEFAULT_DESCRIBE_DEPTH = 1000;
     public static final String STATUS_CLEAN = "clean";
     private static final String STATUS_DIRTY = "dirty";
-    private static final String STATUS_UNKNOWN = "unknown";
+    static final String STATUS_UNKNOWN = "unknown";
+    private static final AtomicLong GIT_PROCESSES_STARTED = new AtomicLong();
+    // The PATH cannot change within a JVM, so the binary found for a given
+    // list of extra search directories cannot either
+    private static final Map<List<Path>, Path> GIT_BINARIES = new ConcurrentHashMap<>();
+    // Run from a shell script, the PATH may not include where git lives
+    private static final List<Path> COMMAND_LINE_GIT_PATHS = Collections.unmodifiableList(Arrays.asList(
+            Paths.get("/usr/bin"), Paths.get("/usr/local/bin"), Paths.get("/opt/local/bin")));
+    private static final String BATCH_USAGE = "Usage: LibInfo --batch [--json | --properties] "
+            + "[--submodules] [-j threads] [-o file] [paths...]";
 
+    /**
+     * With a single argument, writes the revision info for the working
+     * directory to the named file (default /tmp/libinfo.properties). With
+     * <code>--batch</code>, resolves many repositories concurrently and writes
+     * one document keyed by path to stdout:
+     * <pre>
+     * --batch [--json | --properties] [--submodules] [-j threads] [-o file] [paths...]
+     * </pre>
+     * With no paths, or with <code>--submodules</code>, the repository
+     * containing each path (or the working directory) and all of its
+     * initialized submodules are included.
+     *
+     * @param args The arguments
+     * @throws Exception If something goes wrong
+     */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            System.exit(batch(Arrays.copyOfRange(args, 1, args.length)));
+        }
         String path = args.length == 0 ? "/tmp/libinfo.properties" : args[0];
         Path workingDir = Paths.get(".").toFile().getAbsoluteFile().toPath();
-        String errors = new LibInfo(Arrays.asList(Paths.get("/usr/bin"), Paths.get("/usr/local/bin"), Paths.get("/opt/local/bin")))
+        String errors = new LibInfo(COMMAND_LINE_GIT_PATHS)
                 .writeInfoTo(workingDir, Paths.get(path), LibInfo.class.getName(), null);
         if (!errors.isEmpty()) {
             System.err.println(errors);
@@ -59,22 +105,119 @@ public class LibInfo {
         }
     }
 
+    static int batch(String... args) throws Exception {
+        Path workingDir = Paths.get(".").toAbsolutePath().normalize();
+        boolean json = true;
+        boolean submodules = false;
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        Path output = null;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--json":
+                    json = true;
+                    break;
+                case "--properties":
+                    json = false;
+                    break;
+                case "--submodules":
+                    submodules = true;
+                    break;
+                case "-j":
+                    if (i == args.length - 1 || !args[i + 1].matches("\\d+")) {
+                        System.err.println(BATCH_USAGE);
+                        return 2;
+                    }
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-o":
+                    if (i == args.length - 1) {
+                        System.err.println(BATCH_USAGE);
+                        return 2;
+                    }
+                    output = Paths.get(args[++i]);
+                    break;
+                default:
+                    paths.add(workingDir.resolve(args[i]).normalize());
+            }
+        }
+        if (paths.isEmpty()) {
+            submodules = true;
+            paths.add(workingDir);
+        }
+        if (submodules) {
+            Set<Path> all = new LinkedHashSet<>();
+            for (Path p : paths) {
+                Path root = findGitRoot(p);
+                if (root == null) {
+                    all.add(p);
+                } else {
+                    all.addAll(BatchInfo.discover(root));
+                }
+            }
+            paths = new ArrayList<>(all);
+        }
+        Map<String, Object> results = new BatchInfo(threads, COMMAND_LINE_GIT_PATHS).resolve(workingDir, paths);
+        String doc = json ? BatchInfo.toJson(results) : BatchInfo.toProperties(results);
+        if (output == null) {
+            System.out.print(doc);
+            System.out.flush();
+        } else {
+            Utils.writeAtomically(output, doc.getBytes(json ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1));
+        }
+        for (Object o : results.values()) {
+            if (!(o instanceof Properties)) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The number of git processes this JVM has started, for benchmarking.
+     *
+     * @return A count
+     */
+    static long gitProcessesStarted() {
+        return GIT_PROCESSES_STARTED.get();
+    }
+
     private static ProcessBuilder process(String binary, String... command) {
         String[] args = Utils.prepend(binary, command);
         return new ProcessBuilder(args);
     }
     private final List<Path> gitBinaryPaths;
+    private final RevisionInfoMetrics metrics;
+    private int describeDepth = DEFAULT_DESCRIBE_DEPTH;
 
     LibInfo(List<Path> gitBinaryPaths) {
+        this(gitBinaryPaths, new RevisionInfoMetrics(LibInfo.class.getSimpleName()));
+    }
+
+    LibInfo(List<Path> gitBinaryPaths, RevisionInfoMetrics metrics) {
         this.gitBinaryPaths = gitBinaryPaths;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set how many commits back from HEAD to look for a tag when computing
+     * the <code>describe</code> property; 0 omits the property.
+     *
+     * @param depth A depth
+     * @return this
+     */
+    LibInfo describeDepth(int depth) {
+        this.describeDepth = depth;
+        return this;
     }
 
     public String writeInfoTo(Path gitPath, Path file, String generatorName, ThrowingConsumer<Properties> propConsumer) throws Exception {
         StringBuilder errors = new StringBuilder(120);
         Properties props = getInfo(gitPath, errors);
         if (props != null) {
-            OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(512);
             Utils.savePropertiesFile(props, out, "Generated by " + generatorName, true);
+            Utils.writeAtomically(file, out.toByteArray());
             if (propConsumer != null) {
                 propConsumer.accept(props);
             }
@@ -84,24 +227,64 @@ public class LibInfo {
     }
 
     public Properties getInfo(Path path, StringBuilder errors) throws IOException, InterruptedException, ExecutionException {
+        long start = System.nanoTime();
         Path gitMetadataParent = findGitRoot(path);
         if (gitMetadataParent == null) {
+            metrics.elapsed(GIT_DISCOVERY, start);
             return null;
         }
         Path binary = findGitBinary();
+        metrics.elapsed(GIT_DISCOVERY, start);
         if (binary == null) {
             errors.append("Could not find git binary in ").append(Utils.join(',', searchPath()));
             return null;
         }
+        start = System.nanoTime();
         String output = runGitForLogInfo(binary, gitMetadataParent, errors);
+        start += metrics.elapsed(GIT_LOG, start);
         String repoStatus = runGitForRepoStatus(binary, gitMetadataParent, errors);
+        metrics.elapsed(GIT_STATUS, start);
         if (output != null && !output.trim().isEmpty()) {
-            return gitOutputToProperties(output, repoStatus, errors);
+            Properties result = gitOutputToProperties(output, repoStatus, errors);
+            if (result != null && describeDepth > 0) {
+                start = System.nanoTime();
+                String describe = describe(gitMetadataParent, result, errors);
+                if (describe != null) {
+                    result.setProperty(DESCRIBE_PROPERTY, describe);
+                }
+                metrics.elapsed(GIT_DESCRIBE, start);
+            }
+            return result;
         }
         return null;
     }
 
-    private Properties gitOutputToProperties(String output, String status, StringBuilder errors) {
+    private String describe(Path root, Properties props, StringBuilder errors) throws IOException, InterruptedException {
+        String shortHash = props.getProperty(SHORT_COMMIT_HASH_PROPERTY);
+        if (shortHash == null) {
+            return null;
+        }
+        TagIndex tags = TagIndex.forRepository(root, this, errors);
+        if (tags == null) {
+            return null;
+        }
+        boolean dirty = STATUS_DIRTY.equals(props.getProperty(REPO_STATUS_PROPERTY));
+        List<String[]> history = new ArrayList<>();
+        // No tags, no need to look at history
+        if (!tags.isEmpty()) {
+            String revList = runGit(root, errors, "rev-list", "--parents",
+                    "--max-count=" + describeDepth, "HEAD");
+            if (revList == null) {
+                return null;
+            }
+            for (String line : GitChanges.lines(revList)) {
+                history.add(Utils.split(' ', line.trim()));
+            }
+        }
+        return tags.describe(history, shortHash, dirty);
+    }
+
+    static Properties gitOutputToProperties(String output, String status, StringBuilder errors) {
         Properties props = new Properties();
         props.setProperty(REPO_STATUS_PROPERTY, status);
         Matcher m = SHORT_HASH_PATTERN.matcher(output);
@@ -141,7 +324,17 @@ public class LibInfo {
     }
 
     private Path findGitBinary() {
-        return searchGitBinary(searchPath());
+        List<Path> key = gitBinaryPaths == null ? Collections.<Path>emptyList() : gitBinaryPaths;
+        Path result = GIT_BINARIES.get(key);
+        if (result != null) {
+            metrics.increment(CACHE_HITS);
+            return result;
+        }
+        result = searchGitBinary(searchPath());
+        if (result != null) {
+            GIT_BINARIES.put(key, result);
+        }
+        return result;
     }
 
     private Iterable<Path> systemPath() {
@@ -175,7 +368,7 @@ public class LibInfo {
         return null;
     }
 
-    private Path findGitRoot(Path path) {
+    static Path findGitRoot(Path path) {
         if (!Files.isDirectory(path)) {
             path = path.getParent();
         }
@@ -188,53 +381,146 @@ public class LibInfo {
         return null;
     }
 
-    private String runGitForLogInfo(Path binary, Path gitMetadataParent, StringBuilder errors) throws IOException, InterruptedException, ExecutionException {
-        ProcessBuilder pb = process(binary.toString(),
-                LOG_ARGS);
-        pb.environment().put(TIME_ZONE_ENV_VAR, UTC_TIME_ZONE);
-        pb.directory(gitMetadataParent.toFile());
-        Process proc = pb.start();
-        waitForProcess(proc);
-        if (proc.exitValue() != 0) {
-            errors.append("Process '").append(Utils.join(' ', pb.command())).append("' exited with code ").append(proc.exitValue()).append(". Error output:\n");
-            errors.append(Utils.readString(proc.getErrorStream(), Charset.defaultCharset().name(), 1536));
-        }
+    private String runGitForLogInfo(Path binary, Path gitMetadataParent, StringBuilder errors) throws IOException, InterruptedException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(768);
+        int exit = runGit(binary, gitMetadataParent, errors, PROCESS_TIMEOUT_SECONDS,
+                Collections.singletonMap(TIME_ZONE_ENV_VAR, UTC_TIME_ZONE), output, LOG_ARGS);
         // For log encoding, we explicitly request UTF-8, so this is correct
-        return Utils.readString(proc.getInputStream(), StandardCharsets.UTF_8.name(), 768);
+        return exit == 0 ? new String(output.toByteArray(), StandardCharsets.UTF_8) : null;
     }
 
-    private String runGitForRepoStatus(Path binary, Path gitMetadataParent, StringBuilder errors) throws IOException, InterruptedException, ExecutionException {
-        ProcessBuilder pb = process(binary.toString(), STATUS_ARGS);
-        pb.directory(gitMetadataParent.toFile());
-        Process proc = pb.start();
-        waitForProcess(proc);
-        if (proc.exitValue() != 0) {
-            errors.append("Process '").append(Utils.join(' ', pb.command())).append("' exited with code ").append(proc.exitValue()).append(". Error output:\n");
-            errors.append(Utils.readString(proc.getErrorStream(), Charset.defaultCharset().name(), 1536));
+    private String runGitForRepoStatus(Path binary, Path gitMetadataParent, StringBuilder errors) throws IOException, InterruptedException {
+        // Only whether there is any output matters, so don't buffer what may
+        // be a very long list of changed files
+        CountingOutputStream output = new CountingOutputStream();
+        int exit = runGit(binary, gitMetadataParent, errors, PROCESS_TIMEOUT_SECONDS,
+                Collections.<String, String>emptyMap(), output, STATUS_ARGS);
+        if (exit != 0) {
             return STATUS_UNKNOWN;
         }
-        if (Utils.copy(proc.getInputStream(), Utils.nullOutputStream()) > 0) {
-            return STATUS_DIRTY;
+        return output.count > 0 ? STATUS_DIRTY : STATUS_CLEAN;
+    }
+
+    /**
+     * Run git with arbitrary arguments in a directory, for plumbing commands
+     * whose output may be large - output is consumed while the process runs,
+     * so it cannot block on a full pipe.
+     *
+     * @param dir The working directory
+     * @param errors Error output is appended here if git fails
+     * @param args The arguments
+     * @return The output, or null if git could not be found or failed
+     * @throws IOException If the process cannot be started
+     * @throws InterruptedException If interrupted
+     */
+    String runGit(Path dir, StringBuilder errors, String... args) throws IOException, InterruptedException {
+        return runGit(dir, errors, PROCESS_TIMEOUT_SECONDS, args);
+    }
+
+    /**
+     * Run git with a timeout other than the default, for commands which talk
+     * to a remote.
+     *
+     * @param dir The working directory
+     * @param errors Error output is appended here if git fails
+     * @param timeoutSeconds How long to wait for git to exit
+     * @param args The arguments
+     * @return The output, or null if git could not be found or failed
+     * @throws IOException If the process cannot be started
+     * @throws InterruptedException If interrupted
+     */
+    String runGit(Path dir, StringBuilder errors, long timeoutSeconds, String... args) throws IOException, InterruptedException {
+        Path binary = findGitBinary();
+        if (binary == null) {
+            errors.append("Could not find git binary in ").append(Utils.join(',', searchPath()));
+            return null;
         }
-        return STATUS_CLEAN;
+        ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+        int exit = runGit(binary, dir, errors, timeoutSeconds, Collections.<String, String>emptyMap(), output, args);
+        return exit == 0 ? new String(output.toByteArray(), StandardCharsets.UTF_8) : null;
     }
 
-    private int waitForProcess(Process proc) throws InterruptedException, ExecutionException {
-        // JDK 9
-        // proc.onExit().get();
-        long then = System.currentTimeMillis();
-        for (;;) {
-            if (proc.isAlive()) {
-                Thread.sleep(10);
-            }
-            try {
-                return proc.exitValue();
-            } catch (IllegalThreadStateException ex) {
-                // keep going, not exited
-            }
-            if (System.currentTimeMillis() - then > 30 * 1000) {
-                throw new IllegalStateException("Timed out after 30 seconds waiting for git" + proc);
+    /**
+     * Run git, copying its output to the passed stream while it runs, so it
+     * cannot block on a full pipe and the deadline applies however long git
+     * takes to produce output.
+     *
+     * @return The exit code, or -1 if git was killed for taking too long
+     */
+    private int runGit(Path binary, Path dir, StringBuilder errors, long timeoutSeconds,
+            Map<String, String> env, OutputStream output, String... args) throws IOException, InterruptedException {
+        ProcessBuilder pb = process(binary.toString(), args);
+        // Keep git status from rewriting the index to refresh its stat cache,
+        // which would race with other git processes and trip the
+        // RevisionService watcher into invalidating what we are computing
+        pb.environment().put(OPTIONAL_LOCKS_ENV_VAR, "0");
+        // Fail rather than wait for a password or passphrase nobody will type
+        pb.environment().put(TERMINAL_PROMPT_ENV_VAR, "0");
+        pb.environment().putIfAbsent(SSH_COMMAND_ENV_VAR, "ssh -o BatchMode=yes");
+        pb.environment().putAll(env);
+        pb.directory(dir.toFile());
+        PluginEvents.GitProcess event = PluginEvents.get().gitProcess(pb.command());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        Process proc = pb.start();
+        GIT_PROCESSES_STARTED.incrementAndGet();
+        metrics.increment(FORKS);
+        AtomicLong outputBytes = new AtomicLong();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream(1536);
+        Thread outReader = drain(proc.getInputStream(), output, outputBytes, "git-stdout");
+        Thread errReader = drain(proc.getErrorStream(), stderr, new AtomicLong(), "git-stderr");
+        boolean exited = proc.waitFor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (exited) {
+            // A process git started may still hold stdout open
+            outReader.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        if (!exited || outReader.isAlive()) {
+            proc.destroyForcibly();
+            // No exit code; -1 marks the process as killed
+            event.finish(-1, outputBytes.get());
+            errors.append("Timed out waiting for '").append(Utils.join(' ', pb.command())).append("'\n");
+            return -1;
+        }
+        errReader.join(1000);
+        event.finish(proc.exitValue(), outputBytes.get());
+        if (proc.exitValue() != 0) {
+            errors.append("Process '").append(Utils.join(' ', pb.command())).append("' in ")
+                    .append(dir).append(" exited with code ").append(proc.exitValue())
+                    .append(". Error output:\n").append(new String(stderr.toByteArray(), Charset.defaultCharset()));
+        }
+        return proc.exitValue();
+    }
+
+    private static Thread drain(InputStream in, OutputStream into, AtomicLong count, String name) {
+        // The count is updated as bytes arrive, so a timed out process still
+        // reports how much it wrote
+        Thread result = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream stream = in) {
+                for (int read; (read = stream.read(buffer)) >= 0;) {
+                    into.write(buffer, 0, read);
+                    count.addAndGet(read);
+                }
+            } catch (IOException ex) {
+                // Closed because the process was destroyed
             }
+        }, name);
+        result.setDaemon(true);
+        result.start();
+        return result;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
         }
     }
 }
@@ -0,0 +1,65 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Merges the indexes annotation processors generate into the class output
+ * with those of earlier compiles - see {@link IndexMerger} - so that
+ * compiling only the changed sources of a module, as IDEs and
+ * <code>-Dmaven.compiler.useIncrementalCompilation=false</code> do, leaves
+ * them listing every registered class rather than only the recompiled ones,
+ * and not listing classes which are no longer registered.
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "merge-indexes", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true)
+public class MergeIndexesMojo extends AbstractMojo {
+
+    /**
+     * If true, do nothing.
+     */
+    @Parameter(property = "mergeIndexes.skip", defaultValue = "false")
+    boolean skip;
+
+    /**
+     * The class output directory.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", readonly = true)
+    File outputDirectory;
+
+    /**
+     * Globs matching the line-oriented index files to merge, relative to
+     * the output directory.
+     */
+    @Parameter(property = "mergeIndexes.includes",
+            defaultValue = "META-INF/services/*,META-INF/*.list,META-INF/**/*.list")
+    List<String> includes;
+
+    /**
+     * Where to keep the per-class contributions to each index.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/index-contributions.txt", readonly = true)
+    File stateFile;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || !outputDirectory.isDirectory()) {
+            return;
+        }
+        try {
+            int rewritten = new IndexMerger(outputDirectory.toPath(), includes).merge(stateFile.toPath());
+            if (rewritten > 0) {
+                getLog().info("Merged " + rewritten + " annotation processor indexes with earlier compiles");
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Could not merge indexes in " + outputDirectory, ex);
+        }
+    }
+}
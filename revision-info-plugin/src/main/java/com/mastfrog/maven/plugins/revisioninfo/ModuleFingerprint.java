@@ -0,0 +1,192 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Resource;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Computes a fingerprint of everything that determines what a module's
+ * artifacts contain: its effective model - dependency versions, plugin
+ * configuration and all - its main sources and resources, and the
+ * fingerprints of the reactor projects it depends on. The git properties
+ * RevisionInfoMojo generates are deliberately left out: every one of them
+ * changes with every commit to the repository, whether or not the module
+ * changed.
+ *
+ * @author Tim Boudreau
+ */
+final class ModuleFingerprint {
+
+    private static final String ORIGINAL_PROPERTIES = ModuleFingerprint.class.getName() + ".originals";
+
+    private ModuleFingerprint() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Fingerprint a project.
+     *
+     * @param project The project
+     * @param root The execution root, which absolute paths in the model are
+     * made relative to, so the same tree checked out elsewhere gets the same
+     * fingerprint
+     * @param publishedPrefix The prefix of properties RevisionInfoMojo may
+     * have published into the project, which are ignored
+     * @param reactorFingerprints Fingerprints of projects already computed,
+     * by <code>groupId:artifactId:version</code>
+     * @return A hex SHA-256 hash
+     * @throws IOException If a file cannot be read
+     */
+    static String of(MavenProject project, Path root, String publishedPrefix,
+            Map<String, String> reactorFingerprints) throws IOException {
+        MessageDigest digest = sha256();
+        update(digest, "model", model(project, root, publishedPrefix));
+        for (Dependency d : project.getDependencies()) {
+            String sibling = reactorFingerprints.get(d.getGroupId() + ":" + d.getArtifactId() + ":" + d.getVersion());
+            if (sibling != null) {
+                update(digest, "reactor " + d.getGroupId() + ":" + d.getArtifactId(), sibling);
+            }
+        }
+        List<Path> roots = new ArrayList<>();
+        for (String src : project.getCompileSourceRoots()) {
+            roots.add(Paths.get(src));
+        }
+        for (Resource res : project.getResources()) {
+            roots.add(Paths.get(res.getDirectory()));
+        }
+        update(digest, "sources", sources(roots));
+        return Utils.hex(digest.digest());
+    }
+
+    /**
+     * Fingerprint a project before any of the reactor has been built,
+     * fingerprinting the reactor projects it depends on first, including
+     * ones excluded from the build with <code>-pl</code>, since it still
+     * depends on them.
+     *
+     * @param project The project
+     * @param root The execution root
+     * @param all Every project in the reactor, by
+     * <code>groupId:artifactId:version</code>
+     * @param fingerprints Fingerprints already computed, which this one and
+     * any computed on the way are added to
+     * @return A hex SHA-256 hash
+     * @throws IOException If a file cannot be read
+     */
+    static String inReactor(MavenProject project, Path root, Map<String, MavenProject> all,
+            Map<String, String> fingerprints) throws IOException {
+        String id = project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion();
+        String result = fingerprints.get(id);
+        if (result == null) {
+            for (Dependency d : project.getDependencies()) {
+                MavenProject upstream = all.get(d.getGroupId() + ":" + d.getArtifactId() + ":" + d.getVersion());
+                if (upstream != null && upstream != project) {
+                    inReactor(upstream, root, all, fingerprints);
+                }
+            }
+            // Nothing has been published into the project yet
+            result = of(project, root, null, fingerprints);
+            fingerprints.put(id, result);
+        }
+        return result;
+    }
+
+    /**
+     * Set a property on a project which controls what later goals in the
+     * same build do - such as a plugin's skip property - without changing
+     * the project's fingerprint, so a fingerprint computed by a goal later
+     * in the build matches one computed earlier.
+     *
+     * @param project A project
+     * @param key The property name
+     * @param value The value
+     */
+    static void setControlProperty(MavenProject project, String key, String value) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> originals = (Map<String, String>) project.getContextValue(ORIGINAL_PROPERTIES);
+        if (originals == null) {
+            originals = new HashMap<>();
+            project.setContextValue(ORIGINAL_PROPERTIES, originals);
+        }
+        if (!originals.containsKey(key)) {
+            originals.put(key, project.getProperties().getProperty(key));
+        }
+        project.getProperties().setProperty(key, value);
+    }
+
+    private static String model(MavenProject project, Path root, String publishedPrefix) throws IOException {
+        Model model = project.getModel().clone();
+        @SuppressWarnings("unchecked")
+        Map<String, String> originals = (Map<String, String>) project.getContextValue(ORIGINAL_PROPERTIES);
+        if (originals != null) {
+            for (Map.Entry<String, String> e : originals.entrySet()) {
+                if (e.getValue() == null) {
+                    model.getProperties().remove(e.getKey());
+                } else {
+                    model.getProperties().setProperty(e.getKey(), e.getValue());
+                }
+            }
+        }
+        if (publishedPrefix != null && !publishedPrefix.isEmpty()) {
+            Properties props = model.getProperties();
+            for (String key : new ArrayList<>(props.stringPropertyNames())) {
+                if (key.startsWith(publishedPrefix)) {
+                    props.remove(key);
+                }
+            }
+        }
+        StringWriter out = new StringWriter();
+        new MavenXpp3Writer().write(out, model);
+        String text = out.toString();
+        String basedir = project.getBasedir().getAbsolutePath();
+        String rootDir = root.toAbsolutePath().toString();
+        return text.replace(basedir, "${basedir}").replace(rootDir, "${root}");
+    }
+
+    /**
+     * Hash the relative paths and contents of every file under some
+     * directories; directories which do not exist are ignored.
+     *
+     * @param roots Directories
+     * @return A hex SHA-256 hash
+     * @throws IOException If a file cannot be read
+     */
+    static String sources(List<Path> roots) throws IOException {
+        try {
+            return new SourceFingerprint(null, null).compute(roots);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        }
+    }
+
+    private static void update(MessageDigest digest, String key, String value) {
+        digest.update(key.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
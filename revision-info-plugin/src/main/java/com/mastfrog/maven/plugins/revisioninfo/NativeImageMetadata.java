@@ -0,0 +1,72 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.util.Arrays;
+
+/**
+ * Generates the GraalVM native-image configuration a library ships under
+ * <code>META-INF/native-image/${groupId}/${artifactId}/</code>, which
+ * native-image picks up from the classpath without any flags: a
+ * <code>resource-config.json</code> which includes the revision properties
+ * file in the image, and a <code>native-image.properties</code> which
+ * initializes the generated class at image build time, so its constants are
+ * part of the image heap and reading them at startup runs no static
+ * initializer.
+ *
+ * @author Tim Boudreau
+ */
+final class NativeImageMetadata {
+
+    static final String RESOURCE_CONFIG = "resource-config.json";
+    static final String PROPERTIES = "native-image.properties";
+
+    private NativeImageMetadata() {
+        throw new AssertionError();
+    }
+
+    /**
+     * The directory, relative to the classes directory, native-image looks
+     * for a library's configuration in.
+     */
+    static String directory(String groupId, String artifactId) {
+        return "META-INF/native-image/" + groupId + "/" + artifactId;
+    }
+
+    /**
+     * Generate a <code>resource-config.json</code> including some resources.
+     *
+     * @param resources Paths relative to the classpath root
+     * @return JSON
+     */
+    static String resourceConfig(String... resources) {
+        StringBuilder sb = new StringBuilder("{\n  \"resources\": {\n    \"includes\": [");
+        for (int i = 0; i < resources.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            // Patterns are regular expressions; quote the path so dots in
+            // group ids only match dots
+            sb.append("\n      {\"pattern\": \"")
+                    .append(escape("\\Q" + resources[i] + "\\E")).append("\"}");
+        }
+        return sb.append("\n    ]\n  },\n  \"bundles\": []\n}\n").toString();
+    }
+
+    /**
+     * Generate a <code>native-image.properties</code> initializing classes
+     * at build time.
+     *
+     * @param classNames Fully qualified class names
+     * @return The file content
+     */
+    static String nativeImageProperties(String... classNames) {
+        StringBuilder sb = new StringBuilder("# Generated by com.mastfrog:revision-info-plugin\n");
+        if (classNames.length > 0) {
+            sb.append("Args = --initialize-at-build-time=").append(Utils.join(',', Arrays.asList(classNames))).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
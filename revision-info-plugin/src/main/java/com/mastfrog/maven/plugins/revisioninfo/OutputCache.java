@@ -0,0 +1,360 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * A size-limited directory of modules' class output and jars, keyed by
+ * module fingerprint and commit, for build agents which build the same
+ * modules at the same commit over and over. Each entry is a directory,
+ * named for its key, holding <code>classes/</code>, the jar and an
+ * <code>entry.properties</code> whose timestamp records when it was last
+ * used; when the cache grows past its limit the least recently used entries
+ * are deleted.
+ * <p>
+ * Entries are assembled in a temporary directory and renamed into place, so
+ * no build sees a partial one. Where the file system supports it, restored
+ * class files are hard links to the cache's copies, which are made
+ * read-only, so anything that tried to rewrite one in place fails rather
+ * than corrupting the cache; jars, which packaging may rewrite, are always
+ * copied, and given a timestamp newer than everything else restored so
+ * packaging finds them up to date.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class OutputCache {
+
+    static final String KEY_CONTEXT = OutputCache.class.getName() + ".key";
+    static final String RESTORED_CONTEXT = OutputCache.class.getName() + ".restored";
+    /**
+     * Written into the build directory of a module whose output was
+     * restored, holding its key, so that output can be discarded before it
+     * is rebuilt.
+     */
+    static final String MARKER = "build-cache.key";
+    private static final String ENTRY = "entry.properties";
+    private static final String CLASSES = "classes";
+    private static final String JAR = "module.jar";
+    private static final String POM_PROPERTIES = "pom.properties";
+    private final Path dir;
+    private final long maxBytes;
+
+    OutputCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Compute the key for a module's output.
+     *
+     * @param fingerprint The module's fingerprint
+     * @param revision The commit hash and repository status
+     * @return A hex SHA-256 hash
+     */
+    static String key(String fingerprint, String revision) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(revision.getBytes(StandardCharsets.UTF_8));
+            return Utils.hex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Parse a size such as <code>512m</code> or <code>10g</code>.
+     *
+     * @param size A number of bytes, optionally suffixed with k, m or g
+     * @return The number of bytes
+     */
+    static long parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long multiplier = 1;
+        switch (s.isEmpty() ? ' ' : s.charAt(s.length() - 1)) {
+            case 'k':
+                multiplier = 1024L;
+                break;
+            case 'm':
+                multiplier = 1024L * 1024;
+                break;
+            case 'g':
+                multiplier = 1024L * 1024 * 1024;
+                break;
+            default:
+                return Long.parseLong(s);
+        }
+        return Long.parseLong(s.substring(0, s.length() - 1).trim()) * multiplier;
+    }
+
+    Path entry(String key) {
+        return dir.resolve(key);
+    }
+
+    /**
+     * Restore a module's output, replacing whatever is there.
+     *
+     * @param key The key
+     * @param classes The class output directory
+     * @param jar Where the jar goes, or null
+     * @return true if there was an entry
+     * @throws IOException If restoring fails, in which case the class
+     * output and jar are deleted
+     */
+    boolean restore(String key, Path classes, Path jar) throws IOException {
+        Path entry = entry(key);
+        Path entryFile = entry.resolve(ENTRY);
+        if (!Files.isRegularFile(entryFile) || (jar != null && !Files.isRegularFile(entry.resolve(JAR)))) {
+            return false;
+        }
+        // Record use, so least recently used entries are evicted first
+        Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+        try {
+            delete(classes);
+            Files.createDirectories(classes);
+            boolean link = supportsLinks(classes);
+            Path cached = entry.resolve(CLASSES);
+            try (Stream<Path> all = Files.walk(cached)) {
+                for (Path p : (Iterable<Path>) all::iterator) {
+                    Path target = classes.resolve(cached.relativize(p).toString());
+                    if (Files.isDirectory(p)) {
+                        Files.createDirectories(target);
+                    } else if (link) {
+                        try {
+                            Files.createLink(target, p);
+                        } catch (IOException | UnsupportedOperationException ex) {
+                            // E.g. the cache is on another device
+                            link = false;
+                            Files.copy(p, target, StandardCopyOption.COPY_ATTRIBUTES);
+                        }
+                    } else {
+                        Files.copy(p, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+            }
+            if (jar != null) {
+                Path pomProperties = entry.resolve(POM_PROPERTIES);
+                if (Files.isRegularFile(pomProperties)) {
+                    Path target = pomProperties(jar);
+                    Files.createDirectories(target.getParent());
+                    Files.copy(pomProperties, target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                Files.createDirectories(jar.toAbsolutePath().getParent());
+                Files.copy(entry.resolve(JAR), jar, StandardCopyOption.REPLACE_EXISTING);
+                // Newer than everything restored into it, so the jar plugin
+                // finds it up to date rather than rebuilding it; the file
+                // system's clock can be ahead of ours by its timestamp
+                // granularity, so take the newest restored timestamp, at its
+                // full precision, into account
+                FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+                FileTime newest = newest(classes);
+                Files.setLastModifiedTime(jar, newest.compareTo(now) > 0 ? newest : now);
+            }
+        } catch (IOException ex) {
+            // Probably evicted by another build while we were copying it
+            delete(classes);
+            if (jar != null) {
+                Files.deleteIfExists(jar);
+            }
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * Add a module's output to the cache, and evict least recently used
+     * entries if that puts it over its size limit.
+     *
+     * @param key The key
+     * @param project The id of the project
+     * @param classes The class output directory
+     * @param jar The jar, or null
+     * @return The number of entries evicted
+     * @throws IOException If something goes wrong
+     */
+    int store(String key, String project, Path classes, Path jar) throws IOException {
+        Path entry = entry(key);
+        if (Files.exists(entry)) {
+            return 0;
+        }
+        Files.createDirectories(dir);
+        Path temp = Files.createTempDirectory(dir, "." + key);
+        try {
+            long size = 0;
+            boolean readOnly = supportsLinks(temp);
+            Path cached = temp.resolve(CLASSES);
+            Files.createDirectories(cached);
+            try (Stream<Path> all = Files.walk(classes)) {
+                for (Path p : (Iterable<Path>) all::iterator) {
+                    Path target = cached.resolve(classes.relativize(p).toString());
+                    if (Files.isDirectory(p)) {
+                        Files.createDirectories(target);
+                    } else {
+                        Files.copy(p, target, StandardCopyOption.COPY_ATTRIBUTES);
+                        if (readOnly) {
+                            target.toFile().setReadOnly();
+                        }
+                        size += Files.size(target);
+                    }
+                }
+            }
+            if (jar != null) {
+                Files.copy(jar, temp.resolve(JAR), StandardCopyOption.COPY_ATTRIBUTES);
+                size += Files.size(jar);
+                Path pomProperties = pomProperties(jar);
+                if (Files.isRegularFile(pomProperties)) {
+                    Files.copy(pomProperties, temp.resolve(POM_PROPERTIES), StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+            Properties props = new Properties();
+            props.setProperty("project", project);
+            props.setProperty("size", Long.toString(size));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Utils.savePropertiesFile(props, out, null, true);
+            Files.write(temp.resolve(ENTRY), out.toByteArray());
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, entry);
+            }
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+            // Another build stored the same thing first
+        } finally {
+            delete(temp);
+        }
+        return evict();
+    }
+
+    /**
+     * Delete least recently used entries until the cache is within its size
+     * limit.
+     *
+     * @return The number of entries deleted
+     * @throws IOException If something goes wrong
+     */
+    int evict() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dir)) {
+            for (Path p : dirs) {
+                Path entryFile = p.resolve(ENTRY);
+                if (p.getFileName().toString().startsWith(".") || !Files.isRegularFile(entryFile)) {
+                    continue;
+                }
+                Properties props = new Properties();
+                try (InputStream in = Files.newInputStream(entryFile)) {
+                    props.load(in);
+                } catch (IOException ex) {
+                    // Evicted concurrently
+                    continue;
+                }
+                Entry e = new Entry(p, Long.parseLong(props.getProperty("size", "0")),
+                        Files.getLastModifiedTime(entryFile).toMillis());
+                entries.add(e);
+                total += e.size;
+            }
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+        int result = 0;
+        for (Entry e : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            // Rename first, so no build restores from a half-deleted entry
+            Path doomed = dir.resolve("." + e.dir.getFileName() + "-" + System.nanoTime() + ".deleting");
+            try {
+                Files.move(e.dir, doomed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                continue;
+            }
+            delete(doomed);
+            total -= e.size;
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * The pom.properties the jar plugin writes into the jar, which it does
+     * not rewrite if unchanged, but which is gone after a clean.
+     */
+    private static Path pomProperties(Path jar) {
+        return jar.toAbsolutePath().getParent().resolve("maven-archiver").resolve(POM_PROPERTIES);
+    }
+
+    private static FileTime newest(Path dir) throws IOException {
+        FileTime result = FileTime.fromMillis(0);
+        try (Stream<Path> all = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) all::iterator) {
+                FileTime time = Files.getLastModifiedTime(p);
+                if (time.compareTo(result) > 0) {
+                    result = time;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean supportsLinks(Path dir) throws IOException {
+        // Hard links to read-only files are fine on posix file systems; on
+        // Windows, read-only files cannot be deleted by mvn clean
+        return Files.getFileStore(dir).supportsFileAttributeView(PosixFileAttributeView.class);
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> all = Files.walk(dir)) {
+            all.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path p : paths) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    static String readMarker(Path buildDir) throws IOException {
+        Path marker = buildDir.resolve(MARKER);
+        return Files.isRegularFile(marker)
+                ? new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim() : null;
+    }
+
+    private static final class Entry {
+
+        final Path dir;
+        final long size;
+        final long lastUsed;
+
+        Entry(Path dir, long size, long lastUsed) {
+            this.dir = dir;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import com.mastfrog.packageindex.PackageIndex;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Writes a {@link PackageIndex} of the class output - its packages, the
+ * service providers it registers and the revision info the
+ * <code>revision-info</code> goal wrote - into
+ * <code>META-INF/mastfrog/package-index.bin</code>, before the jar is built,
+ * so applications can find providers and package owners at startup without
+ * scanning the classpath.
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "package-index", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, threadSafe = true)
+public class PackageIndexMojo extends AbstractMojo {
+
+    /**
+     * If true, do nothing.
+     */
+    @Parameter(property = "packageIndex.skip", defaultValue = "false")
+    boolean skip;
+
+    /**
+     * The class output directory.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", readonly = true)
+    File outputDirectory;
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    MavenProject project;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || !outputDirectory.isDirectory()) {
+            return;
+        }
+        Path classes = outputDirectory.toPath();
+        try {
+            PackageIndex.Entry index = PackageIndex.scan(project.getId(), classes, revision(classes));
+            if (Utils.writeAtomically(classes.resolve(PackageIndex.RESOURCE), PackageIndex.write(index))) {
+                getLog().info("Indexed " + index.packages().size() + " packages and "
+                        + index.services().size() + " services of " + project.getArtifactId());
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Could not write package index of " + project.getId(), ex);
+        }
+    }
+
+    private Properties revision(Path classes) throws IOException {
+        Path file = classes.resolve("META-INF/" + project.getGroupId() + "."
+                + project.getArtifactId() + ".versions.properties");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties result = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            result.load(in);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Java Flight Recorder events for the things this plugin spends time on -
+ * running git, scanning sources and writing files - so a build recorded
+ * with <code>-XX:StartFlightRecording</code> shows where plugin time goes.
+ * The plugin is built for Java 8, which has no <code>jdk.jfr</code> API to
+ * compile against, so the events live in <code>JfrPluginEvents</code>, which is
+ * compiled separately for Java 11 and loaded reflectively; where it cannot
+ * be loaded, or nothing is recording, every method returns a shared no-op,
+ * so instrumented code costs a virtual call and an <code>isEnabled()</code>
+ * check.
+ *
+ * @author Tim Boudreau
+ */
+abstract class PluginEvents {
+
+    private static final PluginEvents INSTANCE = load();
+    static final GitProcess NO_GIT_PROCESS = (exitCode, outputSize) -> {
+    };
+    static final SourceScan NO_SOURCE_SCAN = (directories, files) -> {
+    };
+    static final OutputWrite NO_OUTPUT_WRITE = (bytes, unchanged) -> {
+    };
+
+    static PluginEvents get() {
+        return INSTANCE;
+    }
+
+    private static PluginEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PluginEvents.class.getClassLoader());
+            return (PluginEvents) Class.forName(PluginEvents.class.getPackage().getName() + ".JfrPluginEvents")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // Java 8, or built on it
+            return new PluginEvents() {
+            };
+        }
+    }
+
+    /**
+     * Start timing a git process, before starting it.
+     *
+     * @param command The command line
+     * @return A handle to finish when the process exits
+     */
+    GitProcess gitProcess(List<String> command) {
+        return NO_GIT_PROCESS;
+    }
+
+    /**
+     * Start timing a scan of source directories.
+     *
+     * @param roots The directories scanned
+     * @return A handle to finish when the scan is done
+     */
+    SourceScan sourceScan(Iterable<?> roots) {
+        return NO_SOURCE_SCAN;
+    }
+
+    /**
+     * Start timing writing a file.
+     *
+     * @param file The file
+     * @return A handle to finish when it is written, or found to be
+     * unchanged
+     */
+    OutputWrite outputWrite(Path file) {
+        return NO_OUTPUT_WRITE;
+    }
+
+    interface GitProcess {
+
+        /**
+         * Commit the event.
+         *
+         * @param exitCode The process's exit code
+         * @param outputSize The number of bytes of standard output read from
+         * it
+         */
+        void finish(int exitCode, long outputSize);
+    }
+
+    interface SourceScan {
+
+        void finish(long directories, long files);
+    }
+
+    interface OutputWrite {
+
+        void finish(long bytes, boolean unchanged);
+    }
+}
@@ -0,0 +1,157 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Writes a manifest of a fingerprint of every module in the reactor - see
+ * {@link ModuleFingerprint} for what goes into it - and compares it with a
+ * baseline manifest saved by an earlier build, such as the last release or
+ * the last snapshot deploy. Modules whose fingerprint matches the baseline
+ * are marked unchanged: the skip properties of the deploy, staging, gpg,
+ * javadoc and source plugins are set on them, and <code>sign-all</code>
+ * passes over them. The changed modules are also written in a form
+ * <code>-pl</code> accepts, to avoid even packaging unchanged ones.
+ * <p>
+ * Run it before the lifecycle phases in the same invocation, e.g.
+ * <code>mvn revision-info:reactor-manifest install deploy</code>; Maven runs
+ * it once, then the lifecycle over every project. Copy the manifest over the
+ * baseline once the artifacts are published. Since the project's version is
+ * part of its model, bumping versions marks every module changed - this saves
+ * re-uploading unchanged snapshots, or everything that already succeeded when
+ * a release is re-run after a failure.
+ * </p>
+ * <p>
+ * The last project in the reactor is never skipped: the Nexus staging
+ * plugin defers uploading until it deploys the last project, so skipping it
+ * would silently upload nothing.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "reactor-manifest", aggregator = true, threadSafe = true)
+public class ReactorManifestMojo extends AbstractMojo {
+
+    /**
+     * Set to "true" in the properties of each project whose fingerprint
+     * matches the baseline.
+     */
+    static final String UNCHANGED_PROPERTY = "reactorManifest.unchanged";
+    private static final String[] SKIP_PROPERTIES = {
+        "maven.deploy.skip", "skipNexusStagingDeployMojo", "gpg.skip", "maven.javadoc.skip", "maven.source.skip"
+    };
+
+    /**
+     * The manifest from the previous build to compare against; if it does
+     * not exist, every module is changed.
+     */
+    @Parameter(property = "reactorManifest.baseline",
+            defaultValue = "${session.executionRootDirectory}/.reactor-manifest.properties")
+    File baseline;
+
+    /**
+     * Where to write the manifest for this build.
+     */
+    @Parameter(property = "reactorManifest.output",
+            defaultValue = "${session.executionRootDirectory}/target/reactor-manifest.properties")
+    File outputFile;
+
+    /**
+     * Where to write the comma-delimited <code>groupId:artifactId</code>
+     * list of changed modules.
+     */
+    @Parameter(property = "reactorManifest.changed",
+            defaultValue = "${session.executionRootDirectory}/target/changed-modules.txt")
+    File changedFile;
+
+    /**
+     * If true, set skip properties on unchanged modules.
+     */
+    @Parameter(property = "reactorManifest.skipUnchanged", defaultValue = "true")
+    boolean skipUnchanged = true;
+
+    /**
+     * The prefix of properties RevisionInfoMojo publishes, which are
+     * excluded from fingerprints.
+     */
+    @Parameter(property = "revisionInfoPropertyPrefix", defaultValue = "revision.")
+    String propertyPrefix = "revision.";
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        Path root = Paths.get(session.getExecutionRootDirectory());
+        Properties previous = new Properties();
+        if (baseline != null && baseline.isFile()) {
+            try (InputStream in = Files.newInputStream(baseline.toPath())) {
+                previous.load(in);
+            } catch (IOException ex) {
+                throw new MojoExecutionException("Could not read " + baseline, ex);
+            }
+        } else {
+            getLog().info("No baseline manifest at " + baseline + " - all modules are changed");
+        }
+        // Sorted so each project's reactor dependencies are fingerprinted
+        // before it is
+        List<MavenProject> projects = session.getProjectDependencyGraph().getSortedProjects();
+        Map<String, String> fingerprints = new HashMap<>();
+        Properties manifest = new Properties();
+        List<String> changed = new ArrayList<>();
+        MavenProject last = projects.isEmpty() ? null : projects.get(projects.size() - 1);
+        for (MavenProject project : projects) {
+            String fingerprint;
+            try {
+                fingerprint = ModuleFingerprint.of(project, root, propertyPrefix, fingerprints);
+            } catch (IOException ex) {
+                throw new MojoExecutionException("Could not fingerprint " + project.getId(), ex);
+            }
+            fingerprints.put(project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion(), fingerprint);
+            String key = project.getGroupId() + ":" + project.getArtifactId();
+            manifest.setProperty(key, fingerprint);
+            if (fingerprint.equals(previous.getProperty(key))) {
+                if (skipUnchanged && project == last) {
+                    getLog().info("Not skipping " + key + " although it is unchanged - staged "
+                            + "artifacts are uploaded when the last project is deployed");
+                } else if (skipUnchanged) {
+                    ModuleFingerprint.setControlProperty(project, UNCHANGED_PROPERTY, "true");
+                    for (String skip : SKIP_PROPERTIES) {
+                        ModuleFingerprint.setControlProperty(project, skip, "true");
+                    }
+                }
+                getLog().debug("Unchanged: " + key);
+            } else {
+                changed.add(key);
+            }
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Utils.savePropertiesFile(manifest, out, "Module fingerprints", true);
+            Utils.writeAtomically(outputFile.toPath(), out.toByteArray());
+            Utils.writeAtomically(changedFile.toPath(), Utils.join(',', changed).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Could not write " + outputFile, ex);
+        }
+        getLog().info(changed.size() + " of " + projects.size() + " modules changed since "
+                + (baseline == null ? "the baseline" : baseline.getName())
+                + (changed.isEmpty() ? "" : ": " + Utils.join(',', changed)));
+    }
+}
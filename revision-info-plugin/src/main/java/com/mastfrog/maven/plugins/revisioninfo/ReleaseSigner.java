@@ -0,0 +1,215 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs files with detached, ASCII-armored gpg signatures and writes checksum
+ * files for them, processing many files at once - each signature is a
+ * separate <code>gpg</code> process, and gpg-agent is happy to serve several
+ * at a time, so the time to sign a whole reactor's artifacts is bounded by
+ * the number of threads rather than the number of files. Checksums are
+ * computed in a single pass over a memory-mapped view of each file.
+ *
+ * @author Tim Boudreau
+ */
+final class ReleaseSigner {
+
+    static final String SIGNATURE_EXTENSION = ".asc";
+    private static final long SIGN_TIMEOUT_SECONDS = 120;
+    private final String executable;
+    private final String keyname;
+    private final String passphrase;
+    private final Path homedir;
+    private final boolean sign;
+    private final List<String> algorithms;
+    private final int threads;
+
+    ReleaseSigner(String executable, String keyname, String passphrase, Path homedir,
+            boolean sign, List<String> algorithms, int threads) {
+        this.executable = executable == null || executable.isEmpty() ? "gpg" : executable;
+        this.keyname = keyname;
+        this.passphrase = passphrase;
+        this.homedir = homedir;
+        this.sign = sign;
+        this.algorithms = algorithms;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * The extension for a checksum file, e.g. <code>.sha256</code> for
+     * <code>SHA-256</code>.
+     */
+    static String checksumExtension(String algorithm) {
+        return "." + algorithm.replace("-", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The outcome of signing and checksumming one file.
+     */
+    static final class Result {
+
+        final Path file;
+        final Path signature;
+        final Map<String, Path> checksums;
+        final String error;
+
+        Result(Path file, Path signature, Map<String, Path> checksums, String error) {
+            this.file = file;
+            this.signature = signature;
+            this.checksums = checksums;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Sign and checksum files concurrently, writing the results alongside
+     * them.
+     *
+     * @param files The files
+     * @return Results in the order of the files passed; any which failed
+     * have a non-null error
+     * @throws InterruptedException If interrupted
+     */
+    List<Result> process(List<Path> files) throws InterruptedException {
+        return process(files, files);
+    }
+
+    /**
+     * Sign and checksum files concurrently.
+     *
+     * @param files The files
+     * @param outputs For each file, the path to append <code>.asc</code> and
+     * checksum extensions to, so results for a file in the source tree, such
+     * as a pom, can be written elsewhere
+     * @return Results in the order of the files passed; any which failed
+     * have a non-null error
+     * @throws InterruptedException If interrupted
+     */
+    List<Result> process(List<Path> files, List<Path> outputs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())), r -> {
+            Thread t = new Thread(r, "release-signer");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Result>> futures = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                Path output = outputs.get(i);
+                futures.add(pool.submit(() -> process(file, output)));
+            }
+            List<Result> result = new ArrayList<>(files.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    result.add(futures.get(i).get());
+                } catch (ExecutionException ex) {
+                    result.add(new Result(files.get(i), null, Collections.emptyMap(), String.valueOf(ex.getCause())));
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result process(Path file, Path output) {
+        Map<String, Path> checksums = new LinkedHashMap<>();
+        try {
+            if (!algorithms.isEmpty()) {
+                String[] digests = Utils.digest(file, algorithms.toArray(new String[algorithms.size()]));
+                for (int i = 0; i < digests.length; i++) {
+                    String ext = checksumExtension(algorithms.get(i));
+                    Path out = output.resolveSibling(output.getFileName() + ext);
+                    Utils.writeAtomically(out, digests[i].getBytes(StandardCharsets.US_ASCII));
+                    checksums.put(ext.substring(1), out);
+                }
+            }
+            if (!sign) {
+                return new Result(file, null, checksums, null);
+            }
+            Path signature = output.resolveSibling(output.getFileName() + SIGNATURE_EXTENSION);
+            StringBuilder errors = new StringBuilder();
+            if (!sign(file, signature, errors)) {
+                return new Result(file, null, checksums, errors.toString().trim());
+            }
+            return new Result(file, signature, checksums, null);
+        } catch (Exception ex) {
+            return new Result(file, null, checksums, ex.toString());
+        }
+    }
+
+    private boolean sign(Path file, Path signature, StringBuilder errors) throws IOException, InterruptedException {
+        // gpg writes its output in place, so have it write a temp file which
+        // is then renamed, so a signature is never seen half-written
+        Path dir = Files.createDirectories(signature.toAbsolutePath().getParent());
+        Path temp = Utils.tempFileFor(dir.resolve(signature.getFileName()));
+        try {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(executable);
+            if (homedir != null) {
+                cmd.add("--homedir");
+                cmd.add(homedir.toString());
+            }
+            cmd.add("--batch");
+            cmd.add("--yes");
+            cmd.add("--no-tty");
+            if (keyname != null && !keyname.isEmpty()) {
+                cmd.add("--local-user");
+                cmd.add(keyname);
+            }
+            if (passphrase != null) {
+                cmd.add("--pinentry-mode");
+                cmd.add("loopback");
+                cmd.add("--passphrase-fd");
+                cmd.add("0");
+            }
+            cmd.add("--armor");
+            cmd.add("--output");
+            cmd.add(temp.toString());
+            cmd.add("--detach-sign");
+            cmd.add(file.toString());
+            Process proc = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+            try (OutputStream in = proc.getOutputStream()) {
+                if (passphrase != null) {
+                    in.write((passphrase + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            String output = Utils.readString(proc.getInputStream(), "UTF-8", 512);
+            if (!proc.waitFor(SIGN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                proc.destroyForcibly();
+                errors.append("Timed out signing ").append(file);
+                return false;
+            }
+            if (proc.exitValue() != 0 || Files.size(temp) == 0) {
+                errors.append(executable).append(" exited with ").append(proc.exitValue())
+                        .append(" signing ").append(file).append(": ").append(output);
+                return false;
+            }
+            try {
+                Files.move(temp, signature, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, signature, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+
+/**
+ * Restores each module's javadoc and source archives from a cache, when one
+ * was built from the same sources - see {@link ModuleFingerprint} - at the
+ * same commit, attaching them to the project and setting the javadoc and
+ * source plugins' skip properties so they are not built again. Javadoc is
+ * usually the slowest step of a release, and most modules do not change
+ * between releases, or between attempts at one.
+ * <p>
+ * Like <code>reactor-manifest</code>, run it before the lifecycle phases in
+ * the same invocation, and run <code>store-archives</code> after the goals
+ * which build the archives, to cache the ones which were built:
+ * <code>mvn revision-info:restore-archives install javadoc:jar source:jar
+ * revision-info:store-archives deploy</code>.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "restore-archives", aggregator = true, threadSafe = true)
+public class RestoreArchivesMojo extends AbstractMojo {
+
+    /**
+     * If true, do nothing.
+     */
+    @Parameter(property = "archiveCache.skip", defaultValue = "false")
+    boolean skip;
+
+    /**
+     * The cache directory.
+     */
+    @Parameter(property = "archiveCache.directory",
+            defaultValue = "${settings.localRepository}/.cache/mastfrog-archives")
+    File cacheDirectory;
+
+    /**
+     * The classifiers of the archives to cache.
+     */
+    @Parameter(property = "archiveCache.classifiers", defaultValue = "javadoc,sources")
+    List<String> classifiers;
+
+    /**
+     * The prefix of properties RevisionInfoMojo publishes, which are
+     * excluded from fingerprints.
+     */
+    @Parameter(property = "revisionInfoPropertyPrefix", defaultValue = "revision.")
+    String propertyPrefix = "revision.";
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Component
+    MavenProjectHelper projectHelper;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping archive cache");
+            return;
+        }
+        Path root = Paths.get(session.getExecutionRootDirectory());
+        ArchiveCache cache = new ArchiveCache(cacheDirectory.toPath());
+        Map<String, String> fingerprints = new HashMap<>();
+        int restored = 0;
+        int total = 0;
+        for (MavenProject project : session.getProjectDependencyGraph().getSortedProjects()) {
+            String fingerprint;
+            try {
+                fingerprint = ModuleFingerprint.of(project, root, propertyPrefix, fingerprints);
+            } catch (IOException ex) {
+                throw new MojoExecutionException("Could not fingerprint " + project.getId(), ex);
+            }
+            fingerprints.put(project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion(), fingerprint);
+            if ("pom".equals(project.getPackaging())) {
+                continue;
+            }
+            String key = ArchiveCache.key(fingerprint, revision(project));
+            project.setContextValue(ArchiveCache.KEY_CONTEXT, key);
+            Set<String> restoredClassifiers = new HashSet<>();
+            for (String classifier : ArchiveCache.classifiers(classifiers)) {
+                String skipProperty = ArchiveCache.skipProperty(classifier);
+                if (skipProperty == null) {
+                    getLog().warn("Don't know how to skip building " + classifier + " archives");
+                    continue;
+                }
+                total++;
+                Path target = Paths.get(project.getBuild().getDirectory())
+                        .resolve(project.getBuild().getFinalName() + "-" + classifier + ".jar");
+                try {
+                    if (cache.restore(key, classifier, target)) {
+                        projectHelper.attachArtifact(project, "jar", classifier, target.toFile());
+                        ModuleFingerprint.setControlProperty(project, skipProperty, "true");
+                        restoredClassifiers.add(classifier);
+                        restored++;
+                    }
+                } catch (IOException ex) {
+                    throw new MojoExecutionException("Could not restore " + target, ex);
+                }
+            }
+            project.setContextValue(ArchiveCache.RESTORED_CONTEXT, restoredClassifiers);
+        }
+        getLog().info("Restored " + restored + " of " + total + " archives from " + cacheDirectory);
+    }
+
+    private String revision(MavenProject project) throws MojoExecutionException {
+        try {
+            return RevisionService.instance().revision(project.getBasedir().toPath(), session,
+                    new RevisionInfoMetrics(project.getId()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted", ex);
+        } catch (IOException | ExecutionException ex) {
+            throw new MojoExecutionException("Could not run git for " + project.getId(), ex);
+        }
+    }
+}
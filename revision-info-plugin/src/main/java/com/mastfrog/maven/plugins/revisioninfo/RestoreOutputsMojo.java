@@ -0,0 +1,87 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Restores a module's class output and jar from the build cache when
+ * {@link BuildCacheParticipant} found an entry for it, and skips compiling
+ * it and copying its resources. Output restored by an earlier build is
+ * discarded before the module is rebuilt, since its class files may be hard
+ * links into the cache. Does nothing else unless the build cache is
+ * enabled.
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "restore-outputs", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
+public class RestoreOutputsMojo extends AbstractMojo {
+
+    private static final String[] SKIP_PROPERTIES = {"maven.main.skip", "maven.resources.skip"};
+
+    /**
+     * If true, do nothing.
+     */
+    @Parameter(property = "buildCache.skip", defaultValue = "false")
+    boolean skip;
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            return;
+        }
+        String key = (String) project.getContextValue(OutputCache.KEY_CONTEXT);
+        Path buildDir = Paths.get(project.getBuild().getDirectory());
+        Path classes = Paths.get(project.getBuild().getOutputDirectory());
+        Path jar = buildDir.resolve(project.getBuild().getFinalName() + ".jar");
+        try {
+            String restoredBefore = OutputCache.readMarker(buildDir);
+            if (key != null && key.equals(restoredBefore) && Files.isDirectory(classes) && Files.isRegularFile(jar)) {
+                skipBuilding("Output of " + project.getArtifactId() + " is still that restored from the build cache");
+                return;
+            }
+            if (key != null) {
+                try {
+                    if (BuildCacheParticipant.cache(session).restore(key, classes, jar)) {
+                        Utils.writeAtomically(buildDir.resolve(OutputCache.MARKER), key.getBytes(StandardCharsets.UTF_8));
+                        skipBuilding("Restored the output of " + project.getArtifactId() + " from the build cache");
+                        return;
+                    }
+                } catch (IOException ex) {
+                    getLog().warn("Could not restore " + project.getArtifactId() + " from the build cache", ex);
+                }
+            }
+            if (restoredBefore != null) {
+                getLog().info("Discarding output of " + project.getArtifactId() + " restored from the build cache");
+                OutputCache.delete(classes);
+                Files.deleteIfExists(jar);
+                Files.deleteIfExists(buildDir.resolve(OutputCache.MARKER));
+            }
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Could not discard restored output of " + project.getId(), ex);
+        }
+    }
+
+    private void skipBuilding(String message) {
+        for (String prop : SKIP_PROPERTIES) {
+            ModuleFingerprint.setControlProperty(project, prop, "true");
+        }
+        project.setContextValue(OutputCache.RESTORED_CONTEXT, Boolean.TRUE);
+        getLog().info(message);
+    }
+}
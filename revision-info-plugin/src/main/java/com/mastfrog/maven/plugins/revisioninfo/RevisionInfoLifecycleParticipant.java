@@ -0,0 +1,52 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Writes the metrics of every execution of the revision-info goal in a build
+ * to <code>target/revision-info-reactor-metrics.json</code> under the
+ * execution root when the session ends. Only active when the plugin is
+ * declared with <code>&lt;extensions&gt;true&lt;/extensions&gt;</code>.
+ *
+ * @author Tim Boudreau
+ */
+@Named("revision-info")
+@Singleton
+public class RevisionInfoLifecycleParticipant extends AbstractMavenLifecycleParticipant {
+
+    private final Logger logger;
+
+    @Inject
+    public RevisionInfoLifecycleParticipant(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+        RevisionInfoMetrics.Reactor reactor = RevisionInfoMetrics.removeReactor(session.getRequest());
+        if (reactor == null || reactor.isEmpty() || session.getExecutionRootDirectory() == null) {
+            return;
+        }
+        Path file = Paths.get(session.getExecutionRootDirectory(), "target",
+                RevisionInfoMetrics.REACTOR_METRICS_FILE);
+        try {
+            Utils.writeAtomically(file, reactor.toJson().getBytes(StandardCharsets.UTF_8));
+            if (logger.isDebugEnabled()) {
+                logger.debug(reactor.total().summary());
+            }
+            logger.info("Wrote revision-info metrics to " + file);
+        } catch (IOException ex) {
+            logger.warn("Could not write " + file, ex);
+        }
+    }
+}
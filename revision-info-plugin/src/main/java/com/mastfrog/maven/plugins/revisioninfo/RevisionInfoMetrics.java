@@ -0,0 +1,224 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nanosecond timings of the phases of one execution of the revision-info goal,
+ * plus counters of the expensive things it does, so a slow build can be
+ * attributed to git discovery, waiting on git, scanning sources or writing
+ * files. Instances are used by a single thread; the per-build aggregate is
+ * synchronized.
+ *
+ * @author Tim Boudreau
+ */
+final class RevisionInfoMetrics {
+
+    static final String MODULE_METRICS_FILE = "revision-info-metrics.json";
+    static final String REACTOR_METRICS_FILE = "revision-info-reactor-metrics.json";
+    private static final Map<Object, Reactor> REACTORS = new WeakHashMap<>();
+
+    enum Phase {
+        GIT_DISCOVERY("gitDiscovery"),
+        GIT_LOG("gitLog"),
+        GIT_STATUS("gitStatus"),
+        GIT_DESCRIBE("gitDescribe"),
+        SOURCE_SCAN("sourceScan"),
+        SOURCE_FINGERPRINT("sourceFingerprint"),
+        WRITE_PROPERTIES("writeProperties"),
+        WRITE_SOURCE("writeSource"),
+        WRITE_NATIVE_IMAGE("writeNativeImage"),
+        TOTAL("total");
+        private final String jsonName;
+
+        Phase(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        @Override
+        public String toString() {
+            return jsonName;
+        }
+    }
+
+    enum Counter {
+        FORKS("forks"),
+        FILES_SCANNED("filesScanned"),
+        BYTES_WRITTEN("bytesWritten"),
+        UNCHANGED_FILES("unchangedFiles"),
+        CACHE_HITS("cacheHits"),
+        FILES_HASHED("filesHashed");
+        private final String jsonName;
+
+        Counter(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        @Override
+        public String toString() {
+            return jsonName;
+        }
+    }
+
+    private final String id;
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] counts = new long[Counter.values().length];
+
+    RevisionInfoMetrics(String id) {
+        this.id = id;
+    }
+
+    String id() {
+        return id;
+    }
+
+    /**
+     * Add elapsed time to a phase.
+     *
+     * @param phase The phase
+     * @param startNanos The value of System.nanoTime() when the phase started
+     * @return The elapsed nanoseconds
+     */
+    long elapsed(Phase phase, long startNanos) {
+        long result = System.nanoTime() - startNanos;
+        nanos[phase.ordinal()] += result;
+        return result;
+    }
+
+    void increment(Counter counter) {
+        counts[counter.ordinal()]++;
+    }
+
+    void add(Counter counter, long amount) {
+        counts[counter.ordinal()] += amount;
+    }
+
+    long nanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    long count(Counter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    private void addAll(RevisionInfoMetrics other) {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] += other.nanos[i];
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * A one-line human-readable summary, for debug logging.
+     *
+     * @return A string
+     */
+    String summary() {
+        StringBuilder sb = new StringBuilder(160).append("revision-info ")
+                .append(id).append(':');
+        for (Phase p : Phase.values()) {
+            sb.append(' ').append(p).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMicros(nanos(p))).append("us");
+        }
+        for (Counter c : Counter.values()) {
+            sb.append(' ').append(c).append('=').append(count(c));
+        }
+        return sb.toString();
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder(320);
+        appendJson(sb, "");
+        return sb.append('\n').toString();
+    }
+
+    private void appendJson(StringBuilder sb, String indent) {
+        sb.append(indent).append("{\n");
+        sb.append(indent).append("  \"id\": ").append(Utils.quoteJson(id)).append(",\n");
+        sb.append(indent).append("  \"phaseNanos\": {");
+        Phase[] phases = Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append('"').append(phases[i])
+                    .append("\": ").append(nanos(phases[i]));
+        }
+        sb.append("},\n").append(indent).append("  \"counters\": {");
+        Counter[] counters = Counter.values();
+        for (int i = 0; i < counters.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append('"').append(counters[i])
+                    .append("\": ").append(count(counters[i]));
+        }
+        sb.append("}\n").append(indent).append('}');
+    }
+
+    /**
+     * Get the aggregate for a build, creating it if necessary.
+     *
+     * @param build The session's execution request - not the session, which
+     * Maven clones for each project - or some other key unique to one build
+     * @return An aggregate
+     */
+    static Reactor reactor(Object build) {
+        synchronized (REACTORS) {
+            Reactor result = REACTORS.get(build);
+            if (result == null) {
+                result = new Reactor();
+                REACTORS.put(build, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Remove and return the aggregate for a build when it ends.
+     *
+     * @param build The session's execution request
+     * @return An aggregate or null
+     */
+    static Reactor removeReactor(Object build) {
+        synchronized (REACTORS) {
+            return REACTORS.remove(build);
+        }
+    }
+
+    /**
+     * Metrics for every project the goal ran against in one build.
+     */
+    static final class Reactor {
+
+        private final List<RevisionInfoMetrics> modules = new ArrayList<>();
+
+        synchronized void add(RevisionInfoMetrics metrics) {
+            modules.add(metrics);
+        }
+
+        synchronized boolean isEmpty() {
+            return modules.isEmpty();
+        }
+
+        synchronized RevisionInfoMetrics total() {
+            RevisionInfoMetrics result = new RevisionInfoMetrics("reactor");
+            for (RevisionInfoMetrics m : modules) {
+                result.addAll(m);
+            }
+            return result;
+        }
+
+        synchronized String toJson() {
+            StringBuilder sb = new StringBuilder(256 + modules.size() * 320);
+            sb.append("{\n  \"projects\": ").append(modules.size()).append(",\n");
+            sb.append("  \"total\":\n");
+            total().appendJson(sb, "  ");
+            sb.append(",\n  \"modules\": [\n");
+            for (int i = 0; i < modules.size(); i++) {
+                modules.get(i).appendJson(sb, "    ");
+                sb.append(i == modules.size() - 1 ? "\n" : ",\n");
+            }
+            return sb.append("  ]\n}\n").toString();
+        }
+    }
+}
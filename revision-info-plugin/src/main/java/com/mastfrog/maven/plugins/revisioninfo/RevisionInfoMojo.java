@@ -7,14 +7,14 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -23,12 +23,34 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Resource;
 import org.apache.maven.project.MavenProject;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.BYTES_WRITTEN;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.CACHE_HITS;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.FILES_SCANNED;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.UNCHANGED_FILES;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.SOURCE_FINGERPRINT;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.SOURCE_SCAN;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.TOTAL;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.WRITE_NATIVE_IMAGE;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.WRITE_PROPERTIES;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.WRITE_SOURCE;
 
 /**
  * Runs git and stores the commit hash and commit date and a few other things in
  * <code>META-INF/${groupId}.${artifactId}.properties</code>, and optionally
  * generates a class with the same information.
+ * <p>
+ * Each execution records how long it spent finding git, waiting on git,
+ * scanning sources and writing files, which is logged at debug level and
+ * written to <code>target/revision-info-metrics.json</code>. If the plugin is
+ * declared with <code>&lt;extensions&gt;true&lt;/extensions&gt;</code>, the
+ * metrics for every project in the build are also aggregated into
+ * <code>target/revision-info-reactor-metrics.json</code> under the execution
+ * root when the session ends.
+ * </p>
  */
 @Mojo(name = "revision-info", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
 public class RevisionInfoMojo extends AbstractMojo {
@@ -81,9 +103,78 @@ public class RevisionInfoMojo extends AbstractMojo {
     @Parameter(property = "includeSystemInfo", defaultValue = "false")
     boolean includeSystemInfo;
 
+    /**
+     * If true, write the timings and counters for this execution to
+     * <code>revision-info-metrics.json</code> in the build directory. Off by
+     * default; the reactor-wide file written by the lifecycle participant is
+     * usually what you want.
+     */
+    @Parameter(property = "revisionInfoMetrics", defaultValue = "false")
+    boolean writeMetrics;
+
+    /**
+     * If true (the default), git is run once per repository per build rather
+     * than once per project, and the result is kept for the life of the
+     * plugin's classloader - which under the Maven daemon spans builds -
+     * until the repository's git metadata changes.
+     */
+    @Parameter(property = "revisionInfoCache", defaultValue = "true")
+    boolean cache = true;
+
+    /**
+     * How many commits back from HEAD to search for the nearest tag when
+     * computing the <code>describe</code> property, which looks like the
+     * output of <code>git describe --always --dirty</code>. Set to 0 to omit
+     * it.
+     */
+    @Parameter(property = "revisionInfoDescribeDepth", defaultValue = "1000")
+    int describeDepth = LibInfo.DEFAULT_DESCRIBE_DEPTH;
+
+    /**
+     * If true, also set each revision property as a project property -
+     * <code>revision.longCommitHash</code>, <code>revision.commitDateISO</code>,
+     * <code>revision.repoStatus</code> and so on - so later plugins such as
+     * maven-jar-plugin can put them in <code>MANIFEST.MF</code>. If git
+     * cannot be run, they are set to <code>unknown</code> rather than left
+     * undefined.
+     */
+    @Parameter(property = "revisionInfoPublish", defaultValue = "false")
+    boolean publishProperties;
+
+    /**
+     * The prefix for project properties set when
+     * <code>publishProperties</code> is true.
+     */
+    @Parameter(property = "revisionInfoPropertyPrefix", defaultValue = "revision.")
+    String propertyPrefix = "revision.";
+
+    /**
+     * If true, add a <code>sourceFingerprint</code> property - a SHA-256 hash
+     * of the relative paths and contents of every file in the compile source
+     * roots and resource directories, excluding generated sources. Unlike
+     * <code>repoStatus</code>, it tells apart two builds of different
+     * uncommitted changes. Per-file hashes are cached in the build directory
+     * by size and modification time, so only changed files are re-read.
+     */
+    @Parameter(property = "revisionInfoSourceFingerprint", defaultValue = "false")
+    boolean sourceFingerprint;
+
+    /**
+     * If true, generate GraalVM native-image configuration under
+     * <code>META-INF/native-image/${groupId}/${artifactId}/</code> which
+     * includes the revision properties file in native images and
+     * initializes the generated class at image build time, so applications
+     * compiled to native images need no hand-written configuration for it.
+     */
+    @Parameter(property = "revisionInfoNativeImage", defaultValue = "false")
+    boolean nativeImage;
+
     @Parameter(defaultValue = "${project}", readonly = true)
     MavenProject project;
 
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
     /**
      * The source directories containing the sources to be processed.
      *
@@ -92,11 +183,30 @@ public class RevisionInfoMojo extends AbstractMojo {
      * @readonly
      */
     @Parameter(defaultValue = "${project.compileSourceRoots}", readonly = true)
-    private List<String> compileSourceRoots;
+    List<String> compileSourceRoots;
+
+    @Parameter(defaultValue = "${project.resources}", readonly = true)
+    List<Resource> resources;
+
+    private static final String SOURCE_FINGERPRINT_CACHE = "revision-info-source-hashes.txt";
+    private static final String[] PUBLISHED_IF_UNKNOWN = {LibInfo.COMMIT_DATE_PROPERTY,
+        LibInfo.COMMIT_DATE_ISO_PROPERTY, LibInfo.LONG_COMMIT_HASH_PROPERTY,
+        LibInfo.SHORT_COMMIT_HASH_PROPERTY, LibInfo.DESCRIBE_PROPERTY, LibInfo.REPO_STATUS_PROPERTY};
+    private RevisionInfoMetrics metrics = new RevisionInfoMetrics("unknown");
+    private boolean fqnComputed;
+    private String fqn;
 
     Path propertiesOutputFile() {
-        return outputDirectory.toPath().resolve("classes/META-INF/" + project.getGroupId() + "."
-                + project.getArtifactId() + ".versions.properties");
+        return outputDirectory.toPath().resolve("classes/" + propertiesResource());
+    }
+
+    private String propertiesResource() {
+        return "META-INF/" + project.getGroupId() + "." + project.getArtifactId() + ".versions.properties";
+    }
+
+    Path nativeImageOutputDirectory() {
+        return outputDirectory.toPath().resolve("classes/"
+                + NativeImageMetadata.directory(project.getGroupId(), project.getArtifactId()));
     }
 
     private void log(String what) {
@@ -118,13 +228,25 @@ public class RevisionInfoMojo extends AbstractMojo {
     }
 
     String generatedClassFqn() throws IOException {
+        if (fqnComputed) {
+            metrics.increment(CACHE_HITS);
+            return fqn;
+        }
+        fqn = computeGeneratedClassFqn();
+        fqnComputed = true;
+        return fqn;
+    }
+
+    private String computeGeneratedClassFqn() throws IOException {
         String genClass = this.genClass;
         if (genClass == null || "none".equals(genClass)) {
             genClass = project.getProperties().getProperty("revisionClass");
         }
         String result = "none".equals(genClass) ? null : genClass;
         if (result == null && auto) {
+            long start = System.nanoTime();
             result = scanForLeastPackageWithSourceFile();
+            metrics.elapsed(SOURCE_SCAN, start);
             if (result != null) {
                 return result + ".RevisionInfo";
             }
@@ -141,25 +263,30 @@ public class RevisionInfoMojo extends AbstractMojo {
         return null;
     }
 
-    private void scan(Path dir, Set<Path> dirs) throws IOException {
-        Files.list(dir).forEach(child -> {
-            if (Files.isDirectory(child)) {
-                try {
-                    scan(child, dirs);
-                } catch (IOException ex) {
-                    Logger.getLogger(RevisionInfoMojo.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            } else {
-                String ext = fileExt(child);
-                if (ext != null) {
-                    switch (ext) {
-                        case "java":
-                        case "groovy":
-                            dirs.add(dir);
+    private void scan(Path dir, Set<Path> dirs, long[] counts) throws IOException {
+        counts[0]++;
+        try (Stream<Path> children = Files.list(dir)) {
+            children.forEach(child -> {
+                if (Files.isDirectory(child)) {
+                    try {
+                        scan(child, dirs, counts);
+                    } catch (IOException ex) {
+                        Logger.getLogger(RevisionInfoMojo.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                } else {
+                    counts[1]++;
+                    metrics.increment(FILES_SCANNED);
+                    String ext = fileExt(child);
+                    if (ext != null) {
+                        switch (ext) {
+                            case "java":
+                            case "groovy":
+                                dirs.add(dir);
+                        }
                     }
                 }
-            }
-        });
+            });
+        }
     }
 
     private int dotCount(String s) {
@@ -170,20 +297,24 @@ public class RevisionInfoMojo extends AbstractMojo {
         return result;
     }
 
-    private String scanForLeastPackageWithSourceFile() throws IOException {
+    String scanForLeastPackageWithSourceFile() throws IOException {
         if (compileSourceRoots != null) {
             Set<String> allPackages = new HashSet<>();
+            // Directories and files visited
+            long[] counts = new long[2];
+            PluginEvents.SourceScan event = PluginEvents.get().sourceScan(compileSourceRoots);
             for (String s : compileSourceRoots) {
                 Path dir = Paths.get(s);
                 if (Files.exists(dir) && Files.isDirectory(dir)) {
                     Set<Path> dirs = new HashSet<>();
-                    scan(dir, dirs);
+                    scan(dir, dirs, counts);
                     for (Path p : dirs) {
                         p = dir.relativize(p);
                         allPackages.add(p.toString().replace(File.separatorChar, '.'));
                     }
                 }
             }
+            event.finish(counts[0], counts[1]);
             List<String> pkgs = new ArrayList<>(allPackages);
             Collections.sort(pkgs, (a, b) -> {
                 Integer dca = dotCount(a);
@@ -211,6 +342,9 @@ public class RevisionInfoMojo extends AbstractMojo {
             getLog().debug("revision-info-plugin ignoring POM project");
             return;
         }
+        long startTime = System.nanoTime();
+        metrics = new RevisionInfoMetrics(project.getGroupId() + ":" + project.getArtifactId());
+        fqnComputed = false;
         StringBuilder errors = new StringBuilder();
         try {
             if (genClass != null && !"none".equals(genClass)) {
@@ -224,8 +358,12 @@ public class RevisionInfoMojo extends AbstractMojo {
                 }
             }
 
-            Properties props = new LibInfo(Collections.<Path>emptyList()).getInfo(outputDirectory.toPath(), errors);
+            LibInfo libInfo = new LibInfo(Collections.<Path>emptyList(), metrics).describeDepth(describeDepth);
+            Properties props = cache
+                    ? RevisionService.instance().info(outputDirectory.toPath(), libInfo, session, errors, metrics)
+                    : libInfo.getInfo(outputDirectory.toPath(), errors);
             if (props == null) {
+                publish(null);
                 if (errors.length() > 0) {
                     getLog().warn(errors);
                     return;
@@ -236,6 +374,13 @@ public class RevisionInfoMojo extends AbstractMojo {
                 }
             }
             props.setProperty("version", project.getVersion());
+            if (sourceFingerprint) {
+                long fingerprintStart = System.nanoTime();
+                props.setProperty(SourceFingerprint.PROPERTY, new SourceFingerprint(
+                        outputDirectory.toPath().resolve(SOURCE_FINGERPRINT_CACHE), metrics)
+                        .compute(fingerprintRoots()));
+                metrics.elapsed(SOURCE_FINGERPRINT, fingerprintStart);
+            }
             if (includeSystemInfo) {
                 props.setProperty("buildJDK", System.getProperty("java.version"));
                 props.setProperty("buildJvmSpec", System.getProperty("java.vm.specification.version"));
@@ -244,6 +389,8 @@ public class RevisionInfoMojo extends AbstractMojo {
                 props.setProperty("buildOs", System.getProperty("os.name"));
             }
 
+            publish(props);
+
             File f = outputDirectory;
             if (!f.exists()) {
                 f.mkdirs();
@@ -251,25 +398,115 @@ public class RevisionInfoMojo extends AbstractMojo {
 
             Path outputFile = propertiesOutputFile();
 
+            long writeStart = System.nanoTime();
             Files.createDirectories(outputFile.getParent());
-            try (OutputStream out = Files.newOutputStream(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                Utils.savePropertiesFile(props, out, "Generated by com.mastfrog:revision-info-plugin", true);
-                getLog().info("Generated revision info to " + project.getBasedir().toPath().relativize(outputFile));
-            }
+            ByteArrayOutputStream propsBytes = new ByteArrayOutputStream(512);
+            Utils.savePropertiesFile(props, propsBytes, "Generated by com.mastfrog:revision-info-plugin", true);
+            boolean written = write(outputFile, propsBytes.toByteArray());
+            metrics.elapsed(WRITE_PROPERTIES, writeStart);
+            getLog().info((written ? "Generated revision info to " : "Revision info up to date in ")
+                    + project.getBasedir().toPath().relativize(outputFile));
+
             Path sourceFilePath = sourceOutputFile();
             String fqn = generatedClassFqn();
             if (sourceFilePath != null && fqn != null) {
                 log("Generate class " + fqn + " in " + sourceFilePath);
                 String source = Utils.javaSourceFromProperties(packagePrivate, fqn, props, project);
-                getLog().info("Generating class " + fqn + " in " + project.getBasedir().toPath().relativize(sourceFilePath));
+                writeStart = System.nanoTime();
                 Path sourceFilePackage = sourceFilePath.getParent();
                 Files.createDirectories(sourceFilePackage);
-                try (OutputStream out = Files.newOutputStream(sourceFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                    out.write(source.getBytes(encoding == null ? "UTF-8" : encoding));
-                }
+                written = write(sourceFilePath, source.getBytes(encoding == null ? "UTF-8" : encoding));
+                metrics.elapsed(WRITE_SOURCE, writeStart);
+                getLog().info((written ? "Generated class " : "Class up to date: ") + fqn + " in "
+                        + project.getBasedir().toPath().relativize(sourceFilePath));
+            }
+            if (nativeImage) {
+                writeStart = System.nanoTime();
+                Path dir = nativeImageOutputDirectory();
+                Files.createDirectories(dir);
+                write(dir.resolve(NativeImageMetadata.RESOURCE_CONFIG),
+                        NativeImageMetadata.resourceConfig(propertiesResource()).getBytes(StandardCharsets.UTF_8));
+                String[] buildTimeClasses = sourceFilePath != null && fqn != null ? new String[]{fqn} : new String[0];
+                write(dir.resolve(NativeImageMetadata.PROPERTIES),
+                        NativeImageMetadata.nativeImageProperties(buildTimeClasses).getBytes(StandardCharsets.UTF_8));
+                metrics.elapsed(WRITE_NATIVE_IMAGE, writeStart);
             }
         } catch (Exception e) {
             throw new MojoExecutionException("Error creating file: " + errors, e);
+        } finally {
+            metrics.elapsed(TOTAL, startTime);
+            recordMetrics();
+        }
+    }
+
+    private List<Path> fingerprintRoots() {
+        // Generated sources are an output of the build, and would change the
+        // fingerprint of the class this plugin generates
+        Path buildDir = outputDirectory.toPath().toAbsolutePath();
+        List<Path> result = new ArrayList<>();
+        List<String> dirs = new ArrayList<>();
+        if (compileSourceRoots != null) {
+            dirs.addAll(compileSourceRoots);
+        }
+        if (resources != null) {
+            for (Resource res : resources) {
+                dirs.add(res.getDirectory());
+            }
+        }
+        for (String dir : dirs) {
+            Path p = Paths.get(dir).toAbsolutePath();
+            if (!p.startsWith(buildDir) && !result.contains(p)) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    private void publish(Properties props) {
+        if (!publishProperties) {
+            return;
+        }
+        Properties target = project.getProperties();
+        if (props == null) {
+            for (String key : PUBLISHED_IF_UNKNOWN) {
+                target.setProperty(propertyPrefix + key, LibInfo.STATUS_UNKNOWN);
+            }
+            return;
+        }
+        for (String key : props.stringPropertyNames()) {
+            target.setProperty(propertyPrefix + key, props.getProperty(key));
+        }
+        // Anything a pom refers to, such as the parent's manifest entries,
+        // must be set, or the literal ${...} expression is used instead -
+        // describe is absent when describeDepth is 0
+        for (String key : PUBLISHED_IF_UNKNOWN) {
+            if (!props.containsKey(key)) {
+                target.setProperty(propertyPrefix + key, LibInfo.STATUS_UNKNOWN);
+            }
+        }
+    }
+
+    private boolean write(Path file, byte[] bytes) throws IOException {
+        if (Utils.writeAtomically(file, bytes)) {
+            metrics.add(BYTES_WRITTEN, bytes.length);
+            return true;
+        }
+        metrics.increment(UNCHANGED_FILES);
+        return false;
+    }
+
+    private void recordMetrics() {
+        getLog().debug(metrics.summary());
+        if (session != null) {
+            RevisionInfoMetrics.reactor(session.getRequest()).add(metrics);
+        }
+        if (writeMetrics && outputDirectory.isDirectory()) {
+            Path metricsFile = outputDirectory.toPath().resolve(RevisionInfoMetrics.MODULE_METRICS_FILE);
+            try {
+                Utils.writeAtomically(metricsFile, metrics.toJson().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                getLog().warn("Could not write " + metricsFile, ex);
+            }
         }
     }
 
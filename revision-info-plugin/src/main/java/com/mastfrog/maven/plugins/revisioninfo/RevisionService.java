@@ -0,0 +1,341 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.maven.execution.MavenSession;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.CACHE_HITS;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Phase.GIT_DISCOVERY;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Caches git revision info per repository for the life of the plugin's
+ * classloader, which under the Maven daemon (mvnd) outlives a single build.
+ * Every module in the same repository shares one result, and the git
+ * metadata directory - <code>HEAD</code>, <code>index</code>,
+ * <code>packed-refs</code> and <code>refs/heads</code> and
+ * <code>refs/tags</code> - is watched with a WatchService, so an entry is
+ * discarded only when a commit, checkout, reset, tag or staging operation
+ * could have changed it; other churn in the metadata directory, such as
+ * <code>FETCH_HEAD</code> or lock files, is ignored.
+ * <p>
+ * Editing a working-tree file does not touch the git metadata, so a cached
+ * <code>clean</code> status is trusted only within the build that computed
+ * it; subsequent builds recheck it. Maven clones the session for each
+ * project, so a build is identified by its execution request, which the
+ * clones share. A cached <code>dirty</code> status stays
+ * valid until the metadata changes.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class RevisionService {
+
+    private static final RevisionService INSTANCE = new RevisionService();
+    private static final Logger LOG = Logger.getLogger(RevisionService.class.getName());
+    private static final Set<String> METADATA_FILES
+            = new HashSet<>(Arrays.asList("HEAD", "index", "packed-refs"));
+    private final Map<Path, Path> gitRoots = new ConcurrentHashMap<>();
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Path, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<Path, Object> locks = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+    private final Set<WatchKey> metadataKeys = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Boolean> watchedRepositories = new ConcurrentHashMap<>();
+    private volatile WatchService watcher;
+    private volatile boolean watchUnavailable;
+
+    static RevisionService instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get revision info for the repository containing a path, computing it
+     * if there is no valid cached result.
+     *
+     * @param path A path within a git repository
+     * @param lib Used to compute the info if necessary
+     * @param session Identifies the current build - a MavenSession, or any
+     * object in tests
+     * @param errors Error output
+     * @param metrics Metrics to record cache hits and discovery time in
+     * @return A copy of the cached properties, or null
+     */
+    Properties info(Path path, LibInfo lib, Object session, StringBuilder errors,
+            RevisionInfoMetrics metrics) throws IOException, InterruptedException, ExecutionException {
+        Object build = build(session);
+        long start = System.nanoTime();
+        Path root = gitRoot(path);
+        metrics.elapsed(GIT_DISCOVERY, start);
+        if (root == null) {
+            return null;
+        }
+        Entry entry = entries.get(root);
+        if (entry != null && entry.isValidFor(build)) {
+            metrics.increment(CACHE_HITS);
+            return entry.copy();
+        }
+        // Under -T, don't let every module in the repository fork git at once
+        synchronized (locks.computeIfAbsent(root, r -> new Object())) {
+            entry = entries.get(root);
+            if (entry != null && entry.isValidFor(build)) {
+                metrics.increment(CACHE_HITS);
+                return entry.copy();
+            }
+            // Watch before computing, so a change made while git runs
+            // bumps the generation and the result is not cached
+            boolean watched = watch(root);
+            AtomicLong generation = generations.computeIfAbsent(root, r -> new AtomicLong());
+            long gen = generation.get();
+            Properties props = lib.getInfo(root, errors);
+            if (props == null) {
+                return null;
+            }
+            if (generation.get() == gen) {
+                entries.put(root, new Entry(props, build, watched));
+            }
+            Properties result = new Properties();
+            result.putAll(props);
+            return result;
+        }
+    }
+
+    /**
+     * The long commit hash and repository status of the repository
+     * containing a path, as one string for use in cache keys, or
+     * <code>unknown</code> if it is not in one.
+     *
+     * @param path A path
+     * @param session Identifies the current build
+     * @param metrics Metrics to record into
+     * @return A string
+     */
+    String revision(Path path, Object session, RevisionInfoMetrics metrics)
+            throws IOException, InterruptedException, ExecutionException {
+        Properties props = info(path, new LibInfo(Collections.<Path>emptyList(), metrics),
+                session, new StringBuilder(), metrics);
+        if (props == null) {
+            return LibInfo.STATUS_UNKNOWN;
+        }
+        return props.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY, LibInfo.STATUS_UNKNOWN)
+                + "-" + props.getProperty(LibInfo.REPO_STATUS_PROPERTY, LibInfo.STATUS_UNKNOWN);
+    }
+
+    /**
+     * Maven hands each project a clone of the session (Maven 3.6 and 3.8
+     * clone it per project under the default builder), so identity of the
+     * session does not identify a build; the request all clones share does.
+     */
+    private static Object build(Object session) {
+        return session instanceof MavenSession
+                ? ((MavenSession) session).getRequest()
+                : session;
+    }
+
+    Path gitRoot(Path path) {
+        Path result = gitRoots.get(path);
+        if (result == null) {
+            result = LibInfo.findGitRoot(path);
+            if (result != null) {
+                gitRoots.put(path, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Discard any cached info for the repository containing a path.
+     *
+     * @param path A path
+     */
+    void invalidate(Path path) {
+        Path root = gitRoot(path);
+        if (root != null) {
+            invalidateRoot(root);
+        }
+    }
+
+    private void invalidateRoot(Path root) {
+        generations.computeIfAbsent(root, r -> new AtomicLong()).incrementAndGet();
+        if (entries.remove(root) != null) {
+            LOG.log(Level.FINE, "Invalidated cached revision info for {0}", root);
+        }
+    }
+
+    /**
+     * Find the real git metadata directory for a repository root, following
+     * the <code>gitdir:</code> indirection used by submodules and worktrees.
+     *
+     * @param root A repository root
+     * @return The directory, or null
+     * @throws IOException If something goes wrong
+     */
+    static Path gitDir(Path root) throws IOException {
+        Path dotGit = root.resolve(".git");
+        if (Files.isDirectory(dotGit)) {
+            return dotGit;
+        }
+        if (Files.isRegularFile(dotGit)) {
+            String content = new String(Files.readAllBytes(dotGit), StandardCharsets.UTF_8).trim();
+            if (content.startsWith("gitdir:")) {
+                Path dir = root.resolve(content.substring(7).trim()).normalize();
+                if (Files.isDirectory(dir)) {
+                    return dir;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean watch(Path root) {
+        if (watchUnavailable) {
+            return false;
+        }
+        if (watchedRepositories.containsKey(root)) {
+            return true;
+        }
+        try {
+            Path gitDir = gitDir(root);
+            if (gitDir == null) {
+                return false;
+            }
+            WatchService ws = watcher();
+            metadataKeys.add(register(ws, gitDir, root, false));
+            register(ws, gitDir.resolve("refs").resolve("heads"), root, true);
+            register(ws, gitDir.resolve("refs").resolve("tags"), root, true);
+            watchedRepositories.put(root, true);
+            return true;
+        } catch (IOException | UnsupportedOperationException ex) {
+            LOG.log(Level.INFO, "Cannot watch " + root + "; revision info will "
+                    + "only be cached within a build", ex);
+            watchUnavailable = true;
+            return false;
+        }
+    }
+
+    private WatchKey register(WatchService ws, Path dir, Path root, boolean recursive) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        WatchKey key = dir.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        watchKeys.put(key, root);
+        if (recursive) {
+            // Branch names containing / are subdirectories
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir, Files::isDirectory)) {
+                for (Path child : children) {
+                    register(ws, child, root, true);
+                }
+            }
+        }
+        return key;
+    }
+
+    private synchronized WatchService watcher() throws IOException {
+        if (watcher == null) {
+            watcher = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::watchLoop, "revision-info-git-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return watcher;
+    }
+
+    private void watchLoop() {
+        WatchService ws = watcher;
+        for (;;) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+            boolean relevant = relevant(key, key.pollEvents());
+            Path root = watchKeys.get(key);
+            if (root != null && relevant) {
+                invalidateRoot(root);
+                // A new branch directory under refs/heads needs watching too,
+                // so re-register the repository on next use
+                watchedRepositories.remove(root);
+            }
+            if (!key.reset()) {
+                watchKeys.remove(key);
+                metadataKeys.remove(key);
+            }
+        }
+    }
+
+    private boolean relevant(WatchKey key, Iterable<WatchEvent<?>> events) {
+        boolean metadata = metadataKeys.contains(key);
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == OVERFLOW) {
+                return true;
+            }
+            String name = String.valueOf(event.context());
+            // Git writes HEAD.lock, index.lock and refs/heads/x.lock, then
+            // renames them into place, which is the event that matters
+            if (name.endsWith(".lock")) {
+                continue;
+            }
+            // The metadata directory itself is watched non-recursively and
+            // is full of churn - FETCH_HEAD, ORIG_HEAD, COMMIT_EDITMSG,
+            // logs, objects - none of which changes what we computed
+            if (!metadata || METADATA_FILES.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry {
+
+        private final Properties props;
+        private final Object session;
+        private final boolean watched;
+        private final boolean clean;
+
+        Entry(Properties props, Object session, boolean watched) {
+            this.props = new Properties();
+            this.props.putAll(props);
+            this.session = session;
+            this.watched = watched;
+            this.clean = LibInfo.STATUS_CLEAN.equals(props.getProperty(LibInfo.REPO_STATUS_PROPERTY));
+        }
+
+        boolean isValidFor(Object currentSession) {
+            if (currentSession == session) {
+                return true;
+            }
+            // Without a watcher, or with a clean status that a working-tree
+            // edit could have silently invalidated, only trust it within
+            // the build that computed it
+            return watched && !clean;
+        }
+
+        Properties copy() {
+            Properties result = new Properties();
+            result.putAll(props);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+
+/**
+ * Signs every artifact of every project in the reactor - poms, jars, and
+ * attached sources and javadoc - with gpg, and writes SHA-256 and SHA-512
+ * checksums for them, all concurrently, attaching the signatures to their
+ * projects so they are deployed alongside. This replaces running
+ * <code>gpg:sign</code> in each module in turn, which signs one file at a
+ * time. Checksum files are not attached, since the deployer checksums
+ * everything it uploads and would upload checksums of checksums.
+ * <p>
+ * Since it needs every project's artifacts, invoke it after the lifecycle
+ * phases that produce them and before the deploy goal, which Maven runs as
+ * separate passes over the reactor:
+ * <code>mvn -Dgpg.skip install revision-info:sign-all nexus-staging:deploy</code>.
+ * The key, passphrase and gpg home directory are read from the same
+ * properties <code>maven-gpg-plugin</code> uses. Projects which
+ * <code>reactor-manifest</code> found unchanged are skipped.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "sign-all", aggregator = true, threadSafe = true)
+public class SignAllMojo extends AbstractMojo {
+
+    /**
+     * If true, do nothing.
+     */
+    @Parameter(property = "signAll.skip", defaultValue = "false")
+    boolean skip;
+
+    /**
+     * If false, only write checksums.
+     */
+    @Parameter(property = "signAll.sign", defaultValue = "true")
+    boolean sign = true;
+
+    /**
+     * The digest algorithms to write checksum files for; empty for none.
+     */
+    @Parameter(property = "signAll.checksums", defaultValue = "SHA-256,SHA-512")
+    List<String> checksums;
+
+    /**
+     * If true, signatures are attached to their projects for installation
+     * and deployment.
+     */
+    @Parameter(property = "signAll.attach", defaultValue = "true")
+    boolean attach = true;
+
+    /**
+     * The number of concurrent gpg processes; 0 for one per processor.
+     */
+    @Parameter(property = "signAll.threads", defaultValue = "0")
+    int threads;
+
+    /**
+     * The gpg executable.
+     */
+    @Parameter(property = "gpg.executable", defaultValue = "gpg")
+    String executable;
+
+    /**
+     * The key to sign with, if not gpg's default key.
+     */
+    @Parameter(property = "gpg.keyname")
+    String keyname;
+
+    /**
+     * The key's passphrase, if gpg-agent does not already have it.
+     */
+    @Parameter(property = "gpg.passphrase")
+    String passphrase;
+
+    /**
+     * The gpg home directory, if not the default.
+     */
+    @Parameter(property = "gpg.homedir")
+    File homedir;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Component
+    MavenProjectHelper projectHelper;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping signing");
+            return;
+        }
+        Map<Path, Target> targets = new LinkedHashMap<>();
+        for (MavenProject project : session.getProjects()) {
+            collect(project, targets);
+        }
+        if (targets.isEmpty()) {
+            getLog().warn("No artifacts to sign - run this goal after the package phase");
+            return;
+        }
+        List<String> algorithms = new ArrayList<>();
+        if (checksums != null) {
+            for (String alg : checksums) {
+                if (!alg.trim().isEmpty()) {
+                    algorithms.add(alg.trim());
+                }
+            }
+        }
+        int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ReleaseSigner signer = new ReleaseSigner(executable, keyname, passphrase,
+                homedir == null ? null : homedir.toPath(), sign, algorithms, count);
+        long start = System.nanoTime();
+        List<ReleaseSigner.Result> results;
+        try {
+            List<Path> files = new ArrayList<>(targets.keySet());
+            List<Path> outputs = new ArrayList<>(files.size());
+            for (Path file : files) {
+                outputs.add(targets.get(file).output);
+            }
+            results = signer.process(files, outputs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted", ex);
+        }
+        StringBuilder errors = new StringBuilder();
+        for (ReleaseSigner.Result result : results) {
+            if (result.error != null) {
+                errors.append('\n').append(result.error);
+                continue;
+            }
+            Target target = targets.get(result.file);
+            if (attach && result.signature != null) {
+                projectHelper.attachArtifact(target.project, target.extension + ReleaseSigner.SIGNATURE_EXTENSION,
+                        target.classifier, result.signature.toFile());
+            }
+        }
+        if (errors.length() > 0) {
+            throw new MojoExecutionException("Signing failed:" + errors);
+        }
+        getLog().info((sign ? "Signed and checksummed " : "Checksummed ") + results.size() + " files from "
+                + session.getProjects().size() + " projects with " + count + " threads in "
+                + ((System.nanoTime() - start) / 1_000_000) + "ms");
+    }
+
+    private void collect(MavenProject project, Map<Path, Target> into) {
+        if ("true".equals(project.getProperties().getProperty(ReactorManifestMojo.UNCHANGED_PROPERTY))) {
+            getLog().debug("Not signing unchanged " + project.getId());
+            return;
+        }
+        if (project.getFile() != null) {
+            // Keep signatures out of the source tree, named as the pom will
+            // be in the repository
+            Path output = Paths.get(project.getBuild().getDirectory())
+                    .resolve(project.getArtifactId() + "-" + project.getVersion() + ".pom");
+            add(project, project.getFile(), output, "pom", null, into);
+        }
+        Artifact main = project.getArtifact();
+        if (main != null && main.getFile() != null) {
+            add(project, main.getFile(), null, main.getArtifactHandler().getExtension(), main.getClassifier(), into);
+        }
+        for (Artifact a : project.getAttachedArtifacts()) {
+            String ext = a.getArtifactHandler().getExtension();
+            if (ext.endsWith(ReleaseSigner.SIGNATURE_EXTENSION) || isChecksum(ext)) {
+                continue;
+            }
+            add(project, a.getFile(), null, ext, a.getClassifier(), into);
+        }
+    }
+
+    private boolean isChecksum(String ext) {
+        if (checksums != null) {
+            for (String alg : checksums) {
+                if (ext.endsWith(ReleaseSigner.checksumExtension(alg.trim()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void add(MavenProject project, File file, Path output, String extension, String classifier,
+            Map<Path, Target> into) {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        Path path = file.toPath().toAbsolutePath().normalize();
+        // A pom project's artifact is its pom, which should be signed once
+        into.putIfAbsent(path, new Target(project, output == null ? path : output, extension, classifier));
+    }
+
+    private static final class Target {
+
+        final MavenProject project;
+        final Path output;
+        final String extension;
+        final String classifier;
+
+        Target(MavenProject project, Path output, String extension, String classifier) {
+            this.project = project;
+            this.output = output;
+            this.extension = extension;
+            this.classifier = classifier;
+        }
+    }
+}
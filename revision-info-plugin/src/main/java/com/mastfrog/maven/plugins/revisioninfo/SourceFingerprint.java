@@ -0,0 +1,218 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.CACHE_HITS;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.FILES_HASHED;
+
+/**
+ * Computes a content hash over every file under a set of source roots, so
+ * two builds of a dirty tree can be told apart - <code>repoStatus</code> says
+ * only that a tree is dirty, not how. Files are hashed concurrently on a pool
+ * shared by all projects, and each file's hash is cached in the build
+ * directory keyed by its size and modification time, so an incremental build
+ * only reads the files which changed.
+ * <p>
+ * Like git's index, the cache distrusts an entry whose file was modified so
+ * close to when the cache was written that a later edit could have left the
+ * timestamp unchanged; such files are always rehashed.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+final class SourceFingerprint {
+
+    static final String PROPERTY = "sourceFingerprint";
+    // Coarser than the timestamp resolution of any filesystem a build
+    // is likely to run on
+    private static final long RACY_MILLIS = 2_000;
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "revision-info-fingerprint");
+                t.setDaemon(true);
+                return t;
+            });
+    private final Path cacheFile;
+    private final RevisionInfoMetrics metrics;
+
+    /**
+     * Create a fingerprinter.
+     *
+     * @param cacheFile Where to keep per-file hashes between builds, or null
+     * to hash everything every time
+     * @param metrics Metrics to count hashed files and cache hits in, or
+     * null
+     */
+    SourceFingerprint(Path cacheFile, RevisionInfoMetrics metrics) {
+        this.cacheFile = cacheFile;
+        this.metrics = metrics;
+    }
+
+    private static final class Entry {
+
+        final long modified;
+        final long size;
+        final String hash;
+
+        Entry(long modified, long size, String hash) {
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Hash the relative paths and contents of every file under some
+     * directories, in order; directories which do not exist are ignored.
+     *
+     * @param roots Directories
+     * @return A hex SHA-256 hash
+     * @throws IOException If a file cannot be read
+     * @throws InterruptedException If interrupted
+     */
+    String compute(List<Path> roots) throws IOException, InterruptedException {
+        long cacheWritten = 0;
+        Map<String, Entry> cache = new HashMap<>();
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            cacheWritten = load(cache);
+        }
+        List<String> names = new ArrayList<>();
+        List<Object> hashes = new ArrayList<>();
+        Map<String, Entry> updated = new ConcurrentHashMap<>();
+        boolean changed = false;
+        PluginEvents.SourceScan event = PluginEvents.get().sourceScan(roots);
+        long directories = 0;
+        long fileCount = 0;
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> all = Files.walk(root)) {
+                for (Path p : (Iterable<Path>) all::iterator) {
+                    if (Files.isRegularFile(p)) {
+                        files.add(p);
+                    } else if (Files.isDirectory(p)) {
+                        directories++;
+                    }
+                }
+            }
+            fileCount += files.size();
+            Collections.sort(files);
+            names.add(null);
+            hashes.add(Integer.toString(files.size()));
+            for (Path file : files) {
+                String key = file.toAbsolutePath().toString();
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                long modified = attrs.lastModifiedTime().toMillis();
+                Entry cached = cache.get(key);
+                names.add(root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"));
+                if (cached != null && cached.size == attrs.size() && cached.modified == modified
+                        && modified < cacheWritten - RACY_MILLIS) {
+                    count(CACHE_HITS);
+                    hashes.add(cached.hash);
+                    updated.put(key, cached);
+                } else {
+                    changed = true;
+                    hashes.add(POOL.submit(() -> {
+                        String hash = Utils.digest(file, "SHA-256")[0];
+                        updated.put(key, new Entry(modified, attrs.size(), hash));
+                        return hash;
+                    }));
+                }
+            }
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            String hash = hash(hashes.get(i));
+            digest.update((name == null ? "root" : name).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(hash.getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) '\n');
+        }
+        // Includes waiting for hashes, which is most of the cost
+        event.finish(directories, fileCount);
+        if (cacheFile != null && (changed || updated.size() != cache.size())) {
+            save(updated);
+        }
+        return Utils.hex(digest.digest());
+    }
+
+    private String hash(Object o) throws IOException, InterruptedException {
+        if (o instanceof String) {
+            return (String) o;
+        }
+        try {
+            String result = ((Future<?>) o).get().toString();
+            count(FILES_HASHED);
+            return result;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private void count(RevisionInfoMetrics.Counter counter) {
+        if (metrics != null) {
+            metrics.increment(counter);
+        }
+    }
+
+    private long load(Map<String, Entry> into) throws IOException {
+        // First line is when the cache was written; then modified, size,
+        // hash and path, tab-separated
+        List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return 0;
+        }
+        try {
+            long written = Long.parseLong(lines.get(0).trim());
+            for (String line : lines.subList(1, lines.size())) {
+                String[] parts = line.split("\t", 4);
+                if (parts.length == 4) {
+                    into.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+                }
+            }
+            return written;
+        } catch (NumberFormatException ex) {
+            into.clear();
+            return 0;
+        }
+    }
+
+    private void save(Map<String, Entry> entries) throws IOException {
+        List<String> keys = new ArrayList<>(entries.keySet());
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder().append(System.currentTimeMillis()).append('\n');
+        for (String key : keys) {
+            Entry e = entries.get(key);
+            sb.append(e.modified).append('\t').append(e.size).append('\t').append(e.hash)
+                    .append('\t').append(key).append('\n');
+        }
+        Utils.writeAtomically(cacheFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Adds the javadoc and source archives built in this invocation to the cache
+ * <code>restore-archives</code> restores them from, under the keys it
+ * computed before the build changed anything. Invoke it after the goals
+ * which build them.
+ *
+ * @author Tim Boudreau
+ */
+@Mojo(name = "store-archives", aggregator = true, threadSafe = true)
+public class StoreArchivesMojo extends AbstractMojo {
+
+    /**
+     * If true, do nothing.
+     */
+    @Parameter(property = "archiveCache.skip", defaultValue = "false")
+    boolean skip;
+
+    /**
+     * The cache directory.
+     */
+    @Parameter(property = "archiveCache.directory",
+            defaultValue = "${settings.localRepository}/.cache/mastfrog-archives")
+    File cacheDirectory;
+
+    /**
+     * The classifiers of the archives to cache.
+     */
+    @Parameter(property = "archiveCache.classifiers", defaultValue = "javadoc,sources")
+    List<String> classifiers;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            return;
+        }
+        ArchiveCache cache = new ArchiveCache(cacheDirectory.toPath());
+        int stored = 0;
+        boolean restoreRan = false;
+        Set<String> wanted = ArchiveCache.classifiers(classifiers);
+        for (MavenProject project : session.getProjects()) {
+            String key = (String) project.getContextValue(ArchiveCache.KEY_CONTEXT);
+            if (key == null) {
+                continue;
+            }
+            restoreRan = true;
+            @SuppressWarnings("unchecked")
+            Set<String> restored = (Set<String>) project.getContextValue(ArchiveCache.RESTORED_CONTEXT);
+            if (restored == null) {
+                restored = Collections.emptySet();
+            }
+            for (Artifact a : project.getAttachedArtifacts()) {
+                String classifier = a.getClassifier();
+                if (classifier == null || !wanted.contains(classifier) || restored.contains(classifier)
+                        || !"jar".equals(a.getType()) || a.getFile() == null || !a.getFile().isFile()) {
+                    continue;
+                }
+                try {
+                    cache.store(key, classifier, a.getFile().toPath());
+                    stored++;
+                } catch (IOException ex) {
+                    // A cache failure should not fail a release
+                    getLog().warn("Could not cache " + a.getFile(), ex);
+                }
+            }
+        }
+        if (!restoreRan) {
+            getLog().warn("No cache keys - run restore-archives earlier in the same invocation");
+            return;
+        }
+        getLog().info("Cached " + stored + " archives in " + cacheDirectory);
+    }
+}
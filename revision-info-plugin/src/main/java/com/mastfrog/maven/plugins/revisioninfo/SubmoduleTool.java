@@ -0,0 +1,435 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Commits, pushes or updates all of the submodules of a superproject at once,
+ * replacing the <code>ca</code>, <code>commitAll</code>, <code>pushAll</code>
+ * and <code>update</code> scripts. Submodules are inspected and operated on
+ * concurrently on a bounded pool; each one's output is buffered and printed
+ * in <code>.gitmodules</code> order, and the superproject's submodule
+ * pointers are committed (and pushed) in one step after all of the
+ * submodules have been. A pointer is only committed if the submodule commit
+ * it points to is on a remote branch, so pushing the superproject never
+ * publishes a pointer nobody else can fetch; a submodule on a detached
+ * HEAD is not committed in, and fails the run if it has changes.
+ * <pre>
+ * java -cp revision-info-plugin.jar com.mastfrog.maven.plugins.revisioninfo.SubmoduleTool \
+ *     [-j threads] [-n] [-C dir] [--] status | commit [--nopush] [--] message... | push | update
+ * </pre>
+ * Options are only recognized before the command (and, for
+ * <code>commit</code>, <code>--nopush</code> directly after it), so a
+ * message may contain anything.
+ *
+ * @author Tim Boudreau
+ */
+public final class SubmoduleTool {
+
+    private static final long REMOTE_TIMEOUT_SECONDS = 300;
+    private static final String SYNC_MESSAGE = "Sync";
+    private static final String USAGE = "Usage: SubmoduleTool [-j threads] [-n] [-C dir] [--] "
+            + "status | commit [--nopush] [--] message... | push | update";
+    private final Path root;
+    private final LibInfo git;
+    private final int threads;
+    private final boolean dryRun;
+    private final PrintStream out;
+
+    SubmoduleTool(Path root, int threads, boolean dryRun, PrintStream out) {
+        this.root = root;
+        this.git = new LibInfo(Collections.<Path>emptyList());
+        this.threads = Math.max(1, threads);
+        this.dryRun = dryRun;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opts = Options.parse(args);
+        if (opts == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        Path root = LibInfo.findGitRoot(opts.dir);
+        if (root == null) {
+            System.err.println("Not in a git repository: " + opts.dir);
+            System.exit(2);
+            return;
+        }
+        SubmoduleTool tool = new SubmoduleTool(root, opts.threads, opts.dryRun, System.out);
+        boolean ok;
+        switch (opts.command) {
+            case "status":
+                ok = tool.status();
+                break;
+            case "commit":
+                if (opts.message.isEmpty()) {
+                    System.err.println("No commit message passed");
+                    System.exit(2);
+                }
+                ok = tool.commit(Utils.join(' ', opts.message), opts.push);
+                break;
+            case "push":
+                ok = tool.push(opts.message.isEmpty() ? SYNC_MESSAGE : Utils.join(' ', opts.message));
+                break;
+            case "update":
+                ok = tool.update();
+                break;
+            default:
+                System.err.println("Unknown command '" + opts.command + "'");
+                System.exit(2);
+                return;
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    boolean status() throws IOException, InterruptedException {
+        return forEachSubmodule((path, log) -> {
+            RepoState state = inspect(path, log);
+            if (state != null) {
+                log.append(state).append('\n');
+            }
+            return state != null;
+        });
+    }
+
+    boolean commit(String message, boolean push) throws IOException, InterruptedException {
+        boolean ok = forEachSubmodule((path, log) -> {
+            RepoState state = inspect(path, log);
+            if (state == null) {
+                return false;
+            }
+            if (state.changes > 0) {
+                if (state.detached()) {
+                    // A commit here would be on no branch, so could never be
+                    // pushed, and its pointer must not be committed
+                    log.append("detached HEAD, not committing ").append(state.changes)
+                            .append(" changes - check out a branch first\n");
+                    return false;
+                }
+                if (!mutate(path, log, "add", "-A") || !mutate(path, log, "commit", "-q", "-m", message)) {
+                    return false;
+                }
+                log.append("committed ").append(state.changes).append(" changes\n");
+                state.ahead++;
+            }
+            return !push || pushIfAhead(path, state, log);
+        });
+        return commitPointers(message, push) && ok;
+    }
+
+    boolean push(String pointerMessage) throws IOException, InterruptedException {
+        boolean ok = forEachSubmodule((path, log) -> {
+            RepoState state = inspect(path, log);
+            return state != null && pushIfAhead(path, state, log);
+        });
+        return commitPointers(pointerMessage, true) && ok;
+    }
+
+    boolean update() throws IOException, InterruptedException {
+        StringBuilder log = new StringBuilder();
+        boolean ok = mutate(root, log, REMOTE_TIMEOUT_SECONDS, "pull", "-q");
+        print(".", log, ok);
+        return forEachSubmodule((path, sublog) -> {
+            RepoState state = inspect(path, sublog);
+            if (state == null) {
+                return false;
+            }
+            if (state.detached()) {
+                sublog.append("detached HEAD, not pulling\n");
+                return true;
+            }
+            String before = git.runGit(path, sublog, "rev-parse", "HEAD");
+            if (!mutate(path, sublog, REMOTE_TIMEOUT_SECONDS, "pull", "-q", "--all")) {
+                return false;
+            }
+            String after = git.runGit(path, sublog, "rev-parse", "HEAD");
+            if (before != null && !before.equals(after)) {
+                sublog.append("updated to ").append(after == null ? "?" : after.trim()).append('\n');
+            }
+            return true;
+        }) && ok;
+    }
+
+    private boolean pushIfAhead(Path path, RepoState state, StringBuilder log) throws IOException, InterruptedException {
+        if (state.ahead == 0) {
+            return true;
+        }
+        if (state.detached() || state.upstream == null) {
+            log.append(state.detached() ? "detached HEAD" : "no upstream for " + state.branch)
+                    .append(", cannot push ").append(state.ahead).append(" commits\n");
+            return false;
+        }
+        if (!mutate(path, log, REMOTE_TIMEOUT_SECONDS, "push", "-q")) {
+            return false;
+        }
+        log.append("pushed ").append(state.ahead).append(" commits to ").append(state.upstream).append('\n');
+        return true;
+    }
+
+    /**
+     * Stage and commit the superproject's submodule pointers - and nothing
+     * else the user may have staged there - then push it. Pointers to
+     * commits which are not on any of the submodule's remote branches are
+     * left out, and fail the run.
+     */
+    private boolean commitPointers(String message, boolean push) throws IOException, InterruptedException {
+        StringBuilder log = new StringBuilder();
+        List<String> paths = new ArrayList<>();
+        boolean ok = true;
+        for (String path : GitChanges.submodulePaths(root)) {
+            if (published(root.resolve(path), log)) {
+                paths.add(path);
+            } else {
+                log.append(path).append(" is at a commit on no remote branch, not committing its pointer\n");
+                ok = false;
+            }
+        }
+        if (!paths.isEmpty()) {
+            ok &= mutate(root, log, withPaths(paths, "add"));
+            String staged = ok ? git.runGit(root, log, withPaths(paths, "diff", "--cached", "--name-only")) : null;
+            if (staged != null && !staged.trim().isEmpty()) {
+                String[] moved = GitChanges.lines(staged);
+                ok = mutate(root, log, withPaths(paths, "commit", "-q", "-m", message));
+                if (ok) {
+                    log.append("committed ").append(moved.length).append(" submodule pointers\n");
+                }
+            }
+        }
+        if (ok && push) {
+            RepoState state = inspect(root, log);
+            ok = state != null && pushIfAhead(root, state, log);
+        }
+        print(".", log, ok);
+        return ok;
+    }
+
+    /**
+     * Whether an initialized submodule's HEAD is contained in one of its
+     * remote-tracking branches, which a push updates. Uninitialized
+     * submodules have no pointer change to commit.
+     */
+    private boolean published(Path dir, StringBuilder log) throws IOException, InterruptedException {
+        if (RevisionService.gitDir(dir) == null) {
+            return true;
+        }
+        String refs = git.runGit(dir, log, "for-each-ref", "--count=1", "--contains", "HEAD",
+                "--format=%(refname)", "refs/remotes");
+        return refs != null && !refs.trim().isEmpty();
+    }
+
+    private static String[] withPaths(List<String> paths, String... args) {
+        String[] result = new String[args.length + 1 + paths.size()];
+        System.arraycopy(args, 0, result, 0, args.length);
+        result[args.length] = "--";
+        for (int i = 0; i < paths.size(); i++) {
+            result[args.length + 1 + i] = paths.get(i);
+        }
+        return result;
+    }
+
+    private boolean mutate(Path dir, StringBuilder log, String... args) throws IOException, InterruptedException {
+        return mutate(dir, log, LibInfo.PROCESS_TIMEOUT_SECONDS, args);
+    }
+
+    private boolean mutate(Path dir, StringBuilder log, long timeout, String... args) throws IOException, InterruptedException {
+        if (dryRun) {
+            log.append("would run: git ").append(Utils.join(' ', Arrays.asList(args))).append('\n');
+            return true;
+        }
+        return git.runGit(dir, log, timeout, args) != null;
+    }
+
+    RepoState inspect(Path dir, StringBuilder log) throws IOException, InterruptedException {
+        String status = git.runGit(dir, log, "status", "--porcelain=v2", "--branch");
+        return status == null ? null : RepoState.parse(status);
+    }
+
+    private boolean forEachSubmodule(SubmoduleTask task) throws IOException, InterruptedException {
+        List<String> paths = new ArrayList<>(GitChanges.submodulePaths(root));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, paths.size())), r -> {
+            Thread t = new Thread(r, "submodule-tool");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(paths.size());
+            List<StringBuilder> logs = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                StringBuilder log = new StringBuilder();
+                logs.add(log);
+                Path dir = root.resolve(path);
+                results.add(pool.submit(() -> {
+                    if (RevisionService.gitDir(dir) == null) {
+                        log.append("not initialized\n");
+                        return true;
+                    }
+                    return task.run(dir, log);
+                }));
+            }
+            // Print in order as each completes, so output is stable
+            // regardless of which submodule finishes first
+            boolean ok = true;
+            for (int i = 0; i < paths.size(); i++) {
+                boolean success;
+                try {
+                    success = results.get(i).get();
+                } catch (ExecutionException ex) {
+                    logs.get(i).append(ex.getCause()).append('\n');
+                    success = false;
+                }
+                print(paths.get(i), logs.get(i), success);
+                ok &= success;
+            }
+            return ok;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void print(String path, StringBuilder log, boolean success) {
+        if (log.length() == 0 && success) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : GitChanges.lines(log.toString())) {
+            sb.append(success ? "" : "FAILED ").append(path).append(": ").append(line).append('\n');
+        }
+        out.print(sb);
+        out.flush();
+    }
+
+    /**
+     * Parsed command line arguments.
+     */
+    static final class Options {
+
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        boolean dryRun;
+        boolean push = true;
+        Path dir = Paths.get(".").toAbsolutePath().normalize();
+        String command;
+        final List<String> message = new ArrayList<>();
+
+        /**
+         * Parse arguments; options are only recognized before the command
+         * word, except <code>--nopush</code> directly after
+         * <code>commit</code>, and <code>--</code> ends them.
+         *
+         * @param args The arguments
+         * @return The options, or null if they are not usable
+         */
+        static Options parse(String... args) {
+            Options result = new Options();
+            int i = 0;
+            for (; i < args.length && result.command == null; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-j":
+                        if (i == args.length - 1 || !args[i + 1].matches("\\d+")) {
+                            return null;
+                        }
+                        result.threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-C":
+                        if (i == args.length - 1) {
+                            return null;
+                        }
+                        result.dir = Paths.get(args[++i]).toAbsolutePath().normalize();
+                        break;
+                    case "-n":
+                    case "--dry-run":
+                        result.dryRun = true;
+                        break;
+                    case "--":
+                        if (i == args.length - 1) {
+                            return null;
+                        }
+                        result.command = args[++i];
+                        break;
+                    default:
+                        if (arg.startsWith("-")) {
+                            return null;
+                        }
+                        result.command = arg;
+                }
+            }
+            if (result.command == null) {
+                return null;
+            }
+            if ("commit".equals(result.command)) {
+                if (i < args.length && "--nopush".equals(args[i])) {
+                    result.push = false;
+                    i++;
+                }
+                if (i < args.length && "--".equals(args[i])) {
+                    i++;
+                }
+            }
+            result.message.addAll(Arrays.asList(args).subList(i, args.length));
+            return result;
+        }
+    }
+
+    interface SubmoduleTask {
+
+        boolean run(Path dir, StringBuilder log) throws IOException, InterruptedException;
+    }
+
+    /**
+     * The parsed output of <code>git status --porcelain=v2 --branch</code>.
+     */
+    static final class RepoState {
+
+        String branch;
+        String upstream;
+        int ahead;
+        int behind;
+        int changes;
+
+        static RepoState parse(String status) {
+            RepoState result = new RepoState();
+            for (String line : GitChanges.lines(status)) {
+                if (line.startsWith("# branch.head ")) {
+                    result.branch = line.substring(14).trim();
+                } else if (line.startsWith("# branch.upstream ")) {
+                    result.upstream = line.substring(18).trim();
+                } else if (line.startsWith("# branch.ab ")) {
+                    // # branch.ab +1 -0
+                    String[] ab = Utils.split(' ', line.substring(12).trim());
+                    if (ab.length == 2) {
+                        result.ahead = Integer.parseInt(ab[0].substring(1));
+                        result.behind = Integer.parseInt(ab[1].substring(1));
+                    }
+                } else if (!line.startsWith("#")) {
+                    result.changes++;
+                }
+            }
+            return result;
+        }
+
+        boolean detached() {
+            return branch == null || "(detached)".equals(branch);
+        }
+
+        @Override
+        public String toString() {
+            return (detached() ? "detached" : branch)
+                    + (upstream == null ? "" : " -> " + upstream)
+                    + (ahead == 0 ? "" : " ahead " + ahead)
+                    + (behind == 0 ? "" : " behind " + behind)
+                    + (changes == 0 ? " clean" : " " + changes + " changes");
+        }
+    }
+}
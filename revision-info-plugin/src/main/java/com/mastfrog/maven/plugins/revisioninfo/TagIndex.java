@@ -0,0 +1,307 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Maps commits to the tags that point at them, for computing a
+ * <code>git describe</code>-style string without running
+ * <code>git describe</code>. The index is read directly from
+ * <code>packed-refs</code> and <code>refs/tags</code>, peeling annotated tags
+ * from loose objects; only if a tag cannot be resolved that way is
+ * <code>git for-each-ref</code> run. Indexes are cached per repository for
+ * the life of the classloader, and rebuilt only when the tag refs change.
+ *
+ * @author Tim Boudreau
+ */
+final class TagIndex {
+
+    private static final Map<Path, TagIndex> INDEXES = new ConcurrentHashMap<>();
+    private static final String TAGS_PREFIX = "refs/tags/";
+    private final String stamp;
+    private final Map<String, List<String>> tagsByCommit;
+
+    TagIndex(String stamp, Map<String, List<String>> tagsByCommit) {
+        this.stamp = stamp;
+        this.tagsByCommit = tagsByCommit;
+    }
+
+    /**
+     * Get the tag index for a repository, reusing a cached one if no tag refs
+     * have changed since it was built.
+     *
+     * @param root A repository root
+     * @param lib Used to run git if tags cannot be read directly
+     * @param errors Error output
+     * @return An index, or null if it could not be built
+     * @throws IOException If something goes wrong
+     * @throws InterruptedException If interrupted
+     */
+    static TagIndex forRepository(Path root, LibInfo lib, StringBuilder errors) throws IOException, InterruptedException {
+        Path gitDir = RevisionService.gitDir(root);
+        if (gitDir == null) {
+            return null;
+        }
+        Path commonDir = commonDir(gitDir);
+        String stamp = stamp(commonDir);
+        TagIndex result = INDEXES.get(commonDir);
+        if (result != null && result.stamp.equals(stamp)) {
+            return result;
+        }
+        Map<String, List<String>> tags = readRefs(commonDir);
+        if (tags == null) {
+            tags = forEachRef(root, lib, errors);
+            if (tags == null) {
+                return null;
+            }
+        }
+        result = new TagIndex(stamp, tags);
+        INDEXES.put(commonDir, result);
+        return result;
+    }
+
+    private static Path commonDir(Path gitDir) throws IOException {
+        // Worktrees keep their refs in the main repository's git dir
+        Path commondir = gitDir.resolve("commondir");
+        if (Files.isRegularFile(commondir)) {
+            String rel = new String(Files.readAllBytes(commondir), StandardCharsets.UTF_8).trim();
+            return gitDir.resolve(rel).normalize();
+        }
+        return gitDir;
+    }
+
+    private static String stamp(Path gitDir) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Path packed = gitDir.resolve("packed-refs");
+        if (Files.exists(packed)) {
+            BasicFileAttributes attrs = Files.readAttributes(packed, BasicFileAttributes.class);
+            sb.append(attrs.lastModifiedTime().toMillis()).append(':').append(attrs.size());
+        }
+        Path tags = gitDir.resolve("refs").resolve("tags");
+        if (Files.isDirectory(tags)) {
+            List<String> entries = new ArrayList<>();
+            try (Stream<Path> all = Files.walk(tags)) {
+                all.filter(Files::isRegularFile).forEach(p -> {
+                    try {
+                        entries.add(tags.relativize(p) + "@" + Files.getLastModifiedTime(p).toMillis());
+                    } catch (IOException ex) {
+                        entries.add(p.toString());
+                    }
+                });
+            }
+            Collections.sort(entries);
+            for (String e : entries) {
+                sb.append(';').append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read tags from packed-refs and loose refs, returning null if any
+     * cannot be peeled to a commit without git.
+     */
+    static Map<String, List<String>> readRefs(Path gitDir) throws IOException {
+        Map<String, String> targets = new HashMap<>();
+        Path packed = gitDir.resolve("packed-refs");
+        if (Files.exists(packed)) {
+            boolean fullyPeeled = false;
+            String last = null;
+            for (String line : Files.readAllLines(packed, StandardCharsets.UTF_8)) {
+                if (line.startsWith("#")) {
+                    fullyPeeled = line.contains(" fully-peeled") || line.contains(" peeled");
+                } else if (line.startsWith("^")) {
+                    if (last != null) {
+                        targets.put(last, line.substring(1).trim());
+                    }
+                } else {
+                    int ix = line.indexOf(' ');
+                    last = null;
+                    if (ix > 0 && line.startsWith(TAGS_PREFIX, ix + 1)) {
+                        last = line.substring(ix + 1 + TAGS_PREFIX.length()).trim();
+                        targets.put(last, fullyPeeled ? line.substring(0, ix) : null);
+                    }
+                }
+            }
+        }
+        Path tags = gitDir.resolve("refs").resolve("tags");
+        if (Files.isDirectory(tags)) {
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> all = Files.walk(tags)) {
+                all.filter(Files::isRegularFile).forEach(files::add);
+            }
+            for (Path file : files) {
+                String name = tags.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                String sha = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+                // Loose refs take precedence over packed ones
+                targets.put(name, peel(gitDir, sha));
+            }
+        }
+        Map<String, List<String>> result = new HashMap<>();
+        for (Map.Entry<String, String> e : targets.entrySet()) {
+            if (e.getValue() == null) {
+                return null;
+            }
+            result.computeIfAbsent(e.getValue(), k -> new ArrayList<>(1)).add(e.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Resolve a loose object to the commit it is or that it tags, or null if
+     * the object is packed or is something else.
+     */
+    static String peel(Path gitDir, String sha) throws IOException {
+        if (sha.length() < 3) {
+            return null;
+        }
+        Path obj = gitDir.resolve("objects").resolve(sha.substring(0, 2)).resolve(sha.substring(2));
+        if (!Files.exists(obj)) {
+            return null;
+        }
+        byte[] head = new byte[256];
+        int count = 0;
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(obj))) {
+            int read;
+            while (count < head.length && (read = in.read(head, count, head.length - count)) > 0) {
+                count += read;
+            }
+        }
+        // "commit 231\0tree ..." or "tag 150\0object <sha>\ntype commit\n..."
+        String header = new String(head, 0, count, StandardCharsets.US_ASCII);
+        if (header.startsWith("commit ")) {
+            return sha;
+        }
+        int nul = header.indexOf('\0');
+        if (header.startsWith("tag ") && nul > 0) {
+            String[] lines = Utils.split('\n', header.substring(nul + 1));
+            if (lines.length > 1 && lines[0].startsWith("object ") && "type commit".equals(lines[1])) {
+                return lines[0].substring(7).trim();
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, List<String>> forEachRef(Path root, LibInfo lib, StringBuilder errors) throws IOException, InterruptedException {
+        String output = lib.runGit(root, errors, "for-each-ref",
+                "--format=%(objectname) %(*objectname) %(refname)", TAGS_PREFIX);
+        if (output == null) {
+            return null;
+        }
+        Map<String, List<String>> result = new HashMap<>();
+        for (String line : GitChanges.lines(output)) {
+            // Lightweight tags have an empty peeled object name
+            String[] parts = line.split(" ", 3);
+            if (parts.length == 3 && parts[2].startsWith(TAGS_PREFIX)) {
+                String commit = parts[1].isEmpty() ? parts[0] : parts[1];
+                result.computeIfAbsent(commit, k -> new ArrayList<>(1))
+                        .add(parts[2].substring(TAGS_PREFIX.length()));
+            }
+        }
+        return result;
+    }
+
+    boolean isEmpty() {
+        return tagsByCommit.isEmpty();
+    }
+
+    /**
+     * Compute a describe string from a window of history, as
+     * <code>tag</code>, <code>tag-distance-gHASH</code>, or just the
+     * abbreviated hash if no tag is reachable within the window, with
+     * <code>-dirty</code> appended if the working tree is dirty. The nearest
+     * tag is found breadth-first; the distance is the number of commits
+     * reachable from HEAD but not from the tag, as git counts it, limited to
+     * the window.
+     *
+     * @param history Lines of <code>%H %P</code> - commit followed by
+     * parents - starting from HEAD
+     * @param shortHash The abbreviated hash of HEAD
+     * @param dirty Whether the working tree has changes
+     * @return A string
+     */
+    String describe(List<String[]> history, String shortHash, boolean dirty) {
+        String suffix = dirty ? "-dirty" : "";
+        if (history.isEmpty() || tagsByCommit.isEmpty()) {
+            return shortHash + suffix;
+        }
+        Map<String, String[]> parents = new HashMap<>(history.size() * 2);
+        for (String[] commit : history) {
+            parents.put(commit[0], commit);
+        }
+        String head = history.get(0)[0];
+        String tagged = null;
+        List<String> level = Collections.singletonList(head);
+        Set<String> seen = new HashSet<>();
+        seen.add(head);
+        while (tagged == null && !level.isEmpty()) {
+            List<String> next = new ArrayList<>();
+            for (String commit : level) {
+                String[] entry = parents.get(commit);
+                if (entry == null) {
+                    // Beyond the window
+                    continue;
+                }
+                if (tagsByCommit.containsKey(commit)) {
+                    if (tagged == null || bestTag(commit).compareTo(bestTag(tagged)) > 0) {
+                        tagged = commit;
+                    }
+                }
+                for (int i = 1; i < entry.length; i++) {
+                    if (seen.add(entry[i])) {
+                        next.add(entry[i]);
+                    }
+                }
+            }
+            level = next;
+        }
+        if (tagged == null) {
+            return shortHash + suffix;
+        }
+        Set<String> fromTag = reachable(tagged, parents);
+        int distance = 0;
+        for (String commit : reachable(head, parents)) {
+            if (!fromTag.contains(commit)) {
+                distance++;
+            }
+        }
+        String tag = bestTag(tagged);
+        return (distance == 0 ? tag : tag + "-" + distance + "-g" + shortHash) + suffix;
+    }
+
+    private String bestTag(String commit) {
+        // Several tags on one commit - prefer the greatest, for stability
+        return Collections.max(tagsByCommit.get(commit));
+    }
+
+    private static Set<String> reachable(String from, Map<String, String[]> parents) {
+        Set<String> result = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(from);
+        result.add(from);
+        while (!queue.isEmpty()) {
+            String[] entry = parents.get(queue.poll());
+            for (int i = 1; entry != null && i < entry.length; i++) {
+                if (result.add(entry[i])) {
+                    queue.add(entry[i]);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * A directory of records of successful test runs, keyed by the fingerprint
+ * of the module - which covers its model, main sources and upstream reactor
+ * modules - plus its test sources and resources. A module whose key has a
+ * record has nothing on its test classpath that differs from a run which
+ * passed, so need not run its tests again.
+ *
+ * @author Tim Boudreau
+ */
+final class TestResultCache {
+
+    /**
+     * Project context key for the cache key of a project's test results.
+     */
+    static final String KEY_CONTEXT = TestResultCache.class.getName() + ".key";
+    /**
+     * Project context key set when a project's tests were skipped because of
+     * a recorded pass.
+     */
+    static final String RESTORED_CONTEXT = TestResultCache.class.getName() + ".restored";
+    private static final Pattern TEST_SUITE = Pattern.compile("<testsuite\\b([^>]*)>");
+    private static final Pattern COUNT = Pattern.compile("\\b(tests|failures|errors|skipped)=\"(\\d+)\"");
+    private final Path dir;
+
+    TestResultCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Compute the key for a module's test results.
+     *
+     * @param fingerprint The module's fingerprint
+     * @param project The module
+     * @return A hex SHA-256 hash
+     * @throws IOException If a file cannot be read
+     */
+    static String key(String fingerprint, MavenProject project) throws IOException {
+        List<Path> roots = new ArrayList<>();
+        for (String src : project.getTestCompileSourceRoots()) {
+            roots.add(Paths.get(src));
+        }
+        for (Resource res : project.getTestResources()) {
+            roots.add(Paths.get(res.getDirectory()));
+        }
+        String tests = ModuleFingerprint.sources(roots);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(tests.getBytes(StandardCharsets.UTF_8));
+            return Utils.hex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    Path entry(String key) {
+        return dir.resolve(key + ".properties");
+    }
+
+    /**
+     * Find the record of a passing run.
+     *
+     * @param key The key
+     * @return The record, or null
+     * @throws IOException If reading fails
+     */
+    Properties lookup(String key) throws IOException {
+        Path entry = entry(key);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        Properties result = new Properties();
+        try (InputStream in = Files.newInputStream(entry)) {
+            result.load(in);
+        }
+        // Record use, so least recently used entries can be pruned
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return result;
+    }
+
+    /**
+     * Record a passing run.
+     *
+     * @param key The key
+     * @param project The id of the project
+     * @param summary Its test results
+     * @throws IOException If writing fails
+     */
+    void put(String key, String project, Summary summary) throws IOException {
+        Properties props = summary.toProperties();
+        props.setProperty("project", project);
+        props.setProperty("time", Long.toString(System.currentTimeMillis()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utils.savePropertiesFile(props, out, null, true);
+        Utils.writeAtomically(entry(key), out.toByteArray());
+    }
+
+    /**
+     * Total the surefire reports in a directory which were written at or
+     * after some time.
+     *
+     * @param reports The reports directory
+     * @param since The time in millis
+     * @return A summary, or null if there are no such reports
+     * @throws IOException If reading fails
+     */
+    static Summary summarize(Path reports, long since) throws IOException {
+        if (!Files.isDirectory(reports)) {
+            return null;
+        }
+        Summary result = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(reports, "TEST-*.xml")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < since) {
+                    // Left over from an earlier build
+                    continue;
+                }
+                String xml = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                Matcher suite = TEST_SUITE.matcher(xml);
+                if (!suite.find()) {
+                    continue;
+                }
+                if (result == null) {
+                    result = new Summary();
+                }
+                Matcher m = COUNT.matcher(suite.group(1));
+                while (m.find()) {
+                    result.add(m.group(1), Integer.parseInt(m.group(2)));
+                }
+            }
+        }
+        return result;
+    }
+
+    static final class Summary {
+
+        int tests;
+        int failures;
+        int errors;
+        int skipped;
+
+        void add(String name, int count) {
+            switch (name) {
+                case "tests":
+                    tests += count;
+                    break;
+                case "failures":
+                    failures += count;
+                    break;
+                case "errors":
+                    errors += count;
+                    break;
+                case "skipped":
+                    skipped += count;
+                    break;
+                default:
+                    throw new IllegalArgumentException(name);
+            }
+        }
+
+        boolean passed() {
+            return failures == 0 && errors == 0;
+        }
+
+        Properties toProperties() {
+            Properties result = new Properties();
+            result.setProperty("tests", Integer.toString(tests));
+            result.setProperty("failures", Integer.toString(failures));
+            result.setProperty("errors", Integer.toString(errors));
+            result.setProperty("skipped", Integer.toString(skipped));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "tests=" + tests + " failures=" + failures + " errors=" + errors + " skipped=" + skipped;
+        }
+    }
+}
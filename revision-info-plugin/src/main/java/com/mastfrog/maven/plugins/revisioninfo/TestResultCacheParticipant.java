@@ -0,0 +1,150 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.BuildSuccess;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Skips the tests of modules whose test classpath - the module's fingerprint,
+ * including those of the reactor modules it depends on, plus its test
+ * sources and resources - matches that of a run which passed, and records
+ * the passing runs of the rest when the session ends. Enable it with
+ * <code>-DtestCache=true</code>; <code>testCache.directory</code> overrides
+ * where records are kept. Only active when the plugin is declared with
+ * <code>&lt;extensions&gt;true&lt;/extensions&gt;</code>, as it is in
+ * mastfrog-parent.
+ * <p>
+ * Dependencies outside the reactor are fingerprinted by version only, so a
+ * changed external snapshot is not noticed; clear the cache, or leave it
+ * off, when that matters.
+ * </p>
+ *
+ * @author Tim Boudreau
+ */
+@Named("test-result-cache")
+@Singleton
+public class TestResultCacheParticipant extends AbstractMavenLifecycleParticipant {
+
+    static final String ENABLED_PROPERTY = "testCache";
+    static final String DIRECTORY_PROPERTY = "testCache.directory";
+    private static final String SKIP_PROPERTY = "skipTests";
+    // Set, any of these mean a successful build does not show every test
+    // passed
+    private static final String[] PARTIAL_RUN_PROPERTIES = {"test", "skipTests",
+        "maven.test.skip", "maven.test.skip.exec"};
+    private final Logger logger;
+
+    @Inject
+    public TestResultCacheParticipant(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
+        if (!enabled(session)) {
+            return;
+        }
+        TestResultCache cache = new TestResultCache(directory(session));
+        Path root = Paths.get(session.getExecutionRootDirectory());
+        Map<String, MavenProject> all = new HashMap<>();
+        for (MavenProject project : session.getAllProjects()) {
+            all.put(id(project), project);
+        }
+        Map<String, String> fingerprints = new HashMap<>();
+        int skipped = 0;
+        for (MavenProject project : session.getProjects()) {
+            if ("pom".equals(project.getPackaging())) {
+                continue;
+            }
+            try {
+                String key = TestResultCache.key(ModuleFingerprint.inReactor(project, root, all, fingerprints), project);
+                project.setContextValue(TestResultCache.KEY_CONTEXT, key);
+                Properties passed = cache.lookup(key);
+                if (passed != null) {
+                    ModuleFingerprint.setControlProperty(project, SKIP_PROPERTY, "true");
+                    project.setContextValue(TestResultCache.RESTORED_CONTEXT, Boolean.TRUE);
+                    logger.info("Tests of " + project.getArtifactId() + " passed with the same inputs ("
+                            + passed.getProperty("tests", "?") + " tests); skipping them");
+                    skipped++;
+                }
+            } catch (IOException ex) {
+                throw new MavenExecutionException("Could not fingerprint " + project.getId(), ex);
+            }
+        }
+        logger.info("Skipping tests of " + skipped + " modules with recorded passes in " + directory(session));
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+        if (!enabled(session)) {
+            return;
+        }
+        for (String prop : PARTIAL_RUN_PROPERTIES) {
+            if (session.getUserProperties().getProperty(prop) != null
+                    || session.getSystemProperties().getProperty(prop) != null) {
+                logger.debug("Not recording test results, since " + prop + " is set");
+                return;
+            }
+        }
+        TestResultCache cache = new TestResultCache(directory(session));
+        long start = session.getRequest().getStartTime().getTime();
+        int recorded = 0;
+        for (MavenProject project : session.getProjects()) {
+            String key = (String) project.getContextValue(TestResultCache.KEY_CONTEXT);
+            if (key == null || project.getContextValue(TestResultCache.RESTORED_CONTEXT) != null
+                    || !(session.getResult().getBuildSummary(project) instanceof BuildSuccess)) {
+                continue;
+            }
+            try {
+                // Reports written by this session show the tests ran; a
+                // module with none, or a build that stopped short of the
+                // test phase, leaves nothing to record
+                TestResultCache.Summary summary = TestResultCache.summarize(
+                        Paths.get(project.getBuild().getDirectory(), "surefire-reports"), start);
+                if (summary != null && summary.passed()) {
+                    cache.put(key, project.getId(), summary);
+                    recorded++;
+                }
+            } catch (IOException ex) {
+                logger.warn("Could not record test results of " + project.getId(), ex);
+            }
+        }
+        logger.info("Recorded passing tests of " + recorded + " modules");
+    }
+
+    private static String id(MavenProject project) {
+        return project.getGroupId() + ":" + project.getArtifactId() + ":" + project.getVersion();
+    }
+
+    private static boolean enabled(MavenSession session) {
+        return Boolean.parseBoolean(property(session, ENABLED_PROPERTY));
+    }
+
+    private static Path directory(MavenSession session) {
+        String dir = property(session, DIRECTORY_PROPERTY);
+        if (dir != null) {
+            return Paths.get(dir);
+        }
+        return Paths.get(session.getLocalRepository().getBasedir(), ".cache", "mastfrog-tests");
+    }
+
+    private static String property(MavenSession session, String name) {
+        String result = session.getUserProperties().getProperty(name);
+        if (result == null) {
+            result = session.getSystemProperties().getProperty(name);
+        }
+        return result;
+    }
+}
@@ -8,7 +8,18 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.time.Instant;
@@ -18,6 +29,7 @@ import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,6 +39,7 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.maven.project.MavenProject;
@@ -119,7 +132,7 @@ final class Utils {
 
     // From here, borrowed from Streams in util-streams
     static String readString(final InputStream in, String charset, int bufferSize) throws IOException {
-        try (Reader r = bufferSize == 0 ? new InputStreamReader(in) : new BufferedReader(new InputStreamReader(in), bufferSize)) {
+        try (Reader r = bufferSize == 0 ? new InputStreamReader(in, charset) : new BufferedReader(new InputStreamReader(in, charset), bufferSize)) {
             return readString(r);
         }
     }
@@ -149,6 +162,119 @@ final class Utils {
         return bytesCopied;
     }
 
+    /**
+     * Write a file by writing a temporary file in the same directory and
+     * renaming it over the target, so a concurrent reader - another module's
+     * build under -T, or an IDE scanning the output directory - sees either the
+     * old file or the new one, never a partial one. If the file already has
+     * exactly the requested content it is left alone, so its timestamp does
+     * not trigger a rebuild of whatever depends on it.
+     *
+     * @param file The target file
+     * @param bytes The content
+     * @return True if the file was written, false if it was already up to
+     * date
+     * @throws IOException If something goes wrong
+     */
+    static boolean writeAtomically(Path file, byte[] bytes) throws IOException {
+        PluginEvents.OutputWrite event = PluginEvents.get().outputWrite(file);
+        if (Files.isRegularFile(file) && Files.size(file) == bytes.length
+                && Arrays.equals(bytes, Files.readAllBytes(file))) {
+            event.finish(bytes.length, true);
+            return false;
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = tempFileFor(file);
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        event.finish(bytes.length, false);
+        return true;
+    }
+
+    /**
+     * Create an empty file beside another, to write and then rename over it.
+     * Files.createTempFile makes files only their owner can read, which a
+     * rename would carry over to the target; this one gets the permissions
+     * of the target if it exists, and otherwise those any new file gets
+     * under the current umask.
+     *
+     * @param file The file which will be replaced
+     * @return A new, empty file in the same directory
+     * @throws IOException If something goes wrong
+     */
+    static Path tempFileFor(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        for (;;) {
+            Path temp = dir.resolve("." + file.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                Files.createFile(temp);
+            } catch (FileAlreadyExistsException ex) {
+                continue;
+            }
+            try {
+                if (Files.exists(file) && Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+                }
+            } catch (IOException ex) {
+                Files.deleteIfExists(temp);
+                throw ex;
+            }
+            return temp;
+        }
+    }
+
+    // Large enough that mapping overhead is noise; small enough to map
+    // anything on a 32-bit JVM
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+
+    /**
+     * Compute several digests of a file in one pass over it, reading through
+     * memory-mapped buffers rather than copying it onto the heap.
+     *
+     * @param file A file
+     * @param algorithms MessageDigest algorithm names
+     * @return Lower-case hex digests, in the order of the algorithms
+     * @throws IOException If the file cannot be read
+     * @throws NoSuchAlgorithmException If an algorithm is unknown
+     */
+    static String[] digest(Path file, String... algorithms) throws IOException, NoSuchAlgorithmException {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_CHUNK, size - pos));
+                for (MessageDigest d : digests) {
+                    d.update(buffer.duplicate());
+                }
+            }
+        }
+        String[] result = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            result[i] = hex(digests[i].digest());
+        }
+        return result;
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     static OutputStream nullOutputStream() {
         return new NullOutputStream();
     }
@@ -222,7 +348,7 @@ final class Utils {
         printLines(lines, out, ISO_8859_1, close);
     }
 
-    private static String convert(String keyVal, boolean escapeSpace) {
+    static String convert(String keyVal, boolean escapeSpace) {
         int len = keyVal.length();
         StringBuilder sb = new StringBuilder(len * 2 < 0 ? Integer.MAX_VALUE : len * 2);
 
@@ -300,6 +426,35 @@ final class Utils {
         return count;
     }
 
+    static String quoteJson(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '\n':
+                    appendEscaped('n', sb);
+                    break;
+                case '\r':
+                    appendEscaped('r', sb);
+                    break;
+                case '\t':
+                    appendEscaped('t', sb);
+                    break;
+                default:
+                    if (c < 0x0020) {
+                        appendEscapedHex(c, sb);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
     public static String bicapitalizedToConstantName(String prop) {
         StringBuilder sb = new StringBuilder();
         int max = prop.length();
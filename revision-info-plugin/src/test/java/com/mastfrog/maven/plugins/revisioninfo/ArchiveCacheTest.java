@@ -0,0 +1,71 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveCacheTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testStoreAndRestore() throws Exception {
+        ArchiveCache cache = new ArchiveCache(dir.resolve("cache"));
+        String key = ArchiveCache.key("abc", "1234-clean");
+        assertNotEquals(key, ArchiveCache.key("abc", "5678-clean"));
+        assertNotEquals(key, ArchiveCache.key("abd", "1234-clean"));
+        assertEquals(key, ArchiveCache.key("abc", "1234-clean"));
+
+        Path target = dir.resolve("target/thing-1.0-javadoc.jar");
+        assertFalse(cache.restore(key, "javadoc", target));
+        assertFalse(Files.exists(target));
+
+        Path built = dir.resolve("built-javadoc.jar");
+        byte[] bytes = "not really a jar".getBytes(StandardCharsets.UTF_8);
+        Files.write(built, bytes);
+        cache.store(key, "javadoc", built);
+        Path entry = cache.entry(key, "javadoc");
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(1000));
+
+        assertTrue(cache.restore(key, "javadoc", target));
+        assertArrayEquals(bytes, Files.readAllBytes(target));
+        assertTrue("Restoring should mark the entry as used",
+                Files.getLastModifiedTime(entry).toMillis() > 1000);
+        assertFalse(cache.restore(key, "sources", dir.resolve("target/thing-1.0-sources.jar")));
+        assertNull(ArchiveCache.skipProperty("tests"));
+
+        // Storing again replaces the entry without leaving temp files behind
+        cache.store(key, "javadoc", built);
+        try (java.util.stream.Stream<Path> files = Files.list(entry.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testClassifiersAreTrimmed() {
+        assertEquals(Arrays.asList("javadoc", "sources"),
+                new ArrayList<>(ArchiveCache.classifiers(Arrays.asList("javadoc", " sources ", "", "sources"))));
+        assertTrue(ArchiveCache.classifiers(null).isEmpty());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+}
@@ -0,0 +1,87 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.git;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchInfoTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+    private Path app;
+
+    @Test
+    public void testDiscoverAndResolve() throws Exception {
+        List<Path> paths = BatchInfo.discover(app);
+        assertEquals(Arrays.asList(app, app.resolve("lib"), app.resolve("lib/nested")), paths);
+        Path notGit = Files.createDirectories(dir.resolve("plain"));
+        List<Path> withBad = new ArrayList<>(paths);
+        withBad.add(notGit);
+
+        Map<String, Object> results = new BatchInfo(3).resolve(app, withBad);
+        assertEquals(Arrays.asList(".", "lib", "lib/nested", notGit.toString()), new ArrayList<>(results.keySet()));
+        Properties root = (Properties) results.get(".");
+        Properties lib = (Properties) results.get("lib");
+        assertEquals(git(app, "rev-parse", "HEAD"), root.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY));
+        assertEquals(git(app.resolve("lib"), "rev-parse", "HEAD"), lib.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY));
+        assertTrue(results.get(notGit.toString()) instanceof String);
+
+        String json = BatchInfo.toJson(results);
+        assertTrue(json, json.contains("\"lib/nested\": {\"commitDate\": "));
+        assertTrue(json, json.contains("\"error\": \"Not a git repository\""));
+
+        Properties all = new Properties();
+        all.load(new StringReader(BatchInfo.toProperties(results)));
+        assertEquals(lib.getProperty(LibInfo.SHORT_COMMIT_HASH_PROPERTY), all.getProperty("lib.shortCommitHash"));
+        assertEquals(LibInfo.STATUS_CLEAN, all.getProperty("..repoStatus"));
+    }
+
+    @Test
+    public void testMissingOptionValuesAreUsageErrors() throws Exception {
+        assertEquals(2, LibInfo.batch(app.toString(), "-o"));
+        assertEquals(2, LibInfo.batch(app.toString(), "-j"));
+        assertEquals(2, LibInfo.batch("-j", "lots", app.toString()));
+        Path out = dir.resolve("out.json");
+        assertEquals(0, LibInfo.batch("-o", out.toString(), app.toString()));
+        assertTrue(Files.exists(out));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+        Path nested = repo("nested");
+        Path lib = repo("lib");
+        submodule(lib, nested, "nested");
+        app = repo("app");
+        submodule(app, lib, "lib");
+        git(app, "-c", "protocol.file.allow=always", "submodule", "update", "-q", "--init", "--recursive");
+    }
+
+    private Path repo(String name) throws Exception {
+        Path result = Files.createDirectories(dir.resolve(name));
+        git(result, "init", "-q");
+        write(result.resolve("File.txt"), name);
+        git(result, "add", "-A");
+        git(result, "commit", "-q", "-m", "First");
+        return result;
+    }
+
+    private static void submodule(Path in, Path sub, String as) throws Exception {
+        git(in, "-c", "protocol.file.allow=always", "submodule", "add", "-q", sub.toString(), as);
+        git(in, "commit", "-q", "-m", "Add " + as);
+    }
+}
@@ -0,0 +1,126 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.git;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitChangesTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+    private Path lib;
+    private Path app;
+
+    @Test
+    public void testSubmodulePointerChangesAreFollowed() throws Exception {
+        String base = git(app, "rev-parse", "HEAD").trim();
+        write(lib.resolve("b/B.java"), "class B { int x; }");
+        git(lib, "commit", "-q", "-am", "Change b");
+        git(app.resolve("lib"), "pull", "-q");
+        write(app.resolve("README.md"), "Hello");
+
+        GitChanges changes = new GitChanges(new LibInfo(Collections.<Path>emptyList()), true);
+        StringBuilder errors = new StringBuilder();
+        Set<Path> changed = changes.changedFiles(app, base, errors);
+        assertNotNull(errors.toString(), changed);
+        assertEquals(new HashSet<>(Arrays.asList(
+                app.resolve("lib/b/B.java"), app.resolve("README.md"))), changed);
+
+        // As the mojo maps them: the root aggregator owns only its pom
+        Map<Path, String> projects = new LinkedHashMap<>();
+        projects.put(app.resolve("lib/a"), "a");
+        projects.put(app.resolve("lib/b"), "b");
+        Map<Path, Set<String>> poms = new LinkedHashMap<>();
+        poms.put(app.resolve("pom.xml"), new HashSet<>(Arrays.asList("root", "a", "b")));
+        assertEquals(Collections.singleton("b"),
+                AffectedModulesMojo.owners(projects, poms, Collections.singleton(app.resolve("lib/b/B.java"))));
+        // A file at the root of the tree belongs to no module
+        assertEquals(new HashSet<>(Arrays.asList("root", "a", "b")),
+                AffectedModulesMojo.owners(projects, poms, Collections.singleton(app.resolve("README.md"))));
+        assertEquals(new HashSet<>(Arrays.asList("root", "a", "b")),
+                AffectedModulesMojo.owners(projects, poms, Collections.singleton(app.resolve("pom.xml"))));
+    }
+
+    @Test
+    public void testUnresolvableSubmoduleAffectsEverythingInIt() throws Exception {
+        Map<Path, String> projects = new LinkedHashMap<>();
+        projects.put(app, "root");
+        projects.put(app.resolve("lib/a"), "a");
+        projects.put(app.resolve("lib/b"), "b");
+        assertEquals(new HashSet<>(Arrays.asList("root", "a", "b")),
+                AffectedModulesMojo.owners(projects, Collections.<Path, Set<String>>emptyMap(),
+                        Collections.singleton(app.resolve("lib"))));
+    }
+
+    @Test
+    public void testInheritedAndUnownedChanges() throws Exception {
+        Map<Path, String> projects = new LinkedHashMap<>();
+        projects.put(app.resolve("a"), "a");
+        projects.put(app.resolve("b"), "b");
+        projects.put(app.resolve("c"), "c");
+        // A parent outside the reactor, inherited by a and b
+        Map<Path, Set<String>> inheritors = new LinkedHashMap<>();
+        inheritors.put(app.resolve("parent/pom.xml"), new HashSet<>(Arrays.asList("a", "b")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")),
+                AffectedModulesMojo.owners(projects, inheritors,
+                        Collections.singleton(app.resolve("parent/pom.xml"))));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")),
+                AffectedModulesMojo.owners(projects, inheritors,
+                        Collections.singleton(app.resolve("parent/src/site/index.md"))));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")),
+                AffectedModulesMojo.owners(projects, inheritors,
+                        Arrays.asList(app.resolve("c/pom.xml"), app.resolve(".mvn/maven.config"))));
+        assertEquals(Collections.singleton("c"),
+                AffectedModulesMojo.owners(projects, inheritors,
+                        Collections.singleton(app.resolve("c/src/main/java/C.java"))));
+    }
+
+    @Test
+    public void testNoChanges() throws Exception {
+        GitChanges changes = new GitChanges(new LibInfo(Collections.<Path>emptyList()), true);
+        StringBuilder errors = new StringBuilder();
+        Set<Path> changed = changes.changedFiles(app, "HEAD", errors);
+        assertNotNull(errors.toString(), changed);
+        assertEquals(Collections.emptySet(), changed);
+    }
+
+    @Test
+    public void testParseGitmodules() throws Exception {
+        assertEquals(Collections.singleton("lib"), GitChanges.submodulePaths(app));
+        assertEquals("0123abcd", GitChanges.submoduleCommit("160000 commit 0123abcd\tlib\n"));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+        lib = dir.resolve("lib");
+        app = dir.resolve("app");
+        Files.createDirectories(lib);
+        Files.createDirectories(app);
+        git(lib, "init", "-q");
+        write(lib.resolve("a/A.java"), "class A {}");
+        write(lib.resolve("b/B.java"), "class B {}");
+        git(lib, "add", "-A");
+        git(lib, "commit", "-q", "-m", "First");
+
+        git(app, "init", "-q");
+        write(app.resolve("pom.xml"), "<project/>");
+        git(app, "-c", "protocol.file.allow=always", "submodule", "add", "-q", lib.toString(), "lib");
+        git(app, "add", "-A");
+        git(app, "commit", "-q", "-m", "First");
+    }
+}
@@ -0,0 +1,54 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writing files and running git for tests which build repositories in a
+ * temporary folder.
+ *
+ * @author Tim Boudreau
+ */
+final class GitFixtures {
+
+    private GitFixtures() {
+        throw new AssertionError();
+    }
+
+    static Path write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Run git, failing the test if it fails. Commits get a fixed author, and
+     * local paths may be used as submodule URLs.
+     *
+     * @param in The working directory
+     * @param args The arguments
+     * @return The output, trimmed
+     */
+    static String git(Path in, String... args) throws Exception {
+        List<String> cmd = new ArrayList<>(Arrays.asList(args));
+        cmd.add(0, "git");
+        ProcessBuilder pb = new ProcessBuilder(cmd).directory(in.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        Map<String, String> env = pb.environment();
+        env.put("GIT_AUTHOR_NAME", "Test");
+        env.put("GIT_AUTHOR_EMAIL", "test@example.com");
+        env.put("GIT_COMMITTER_NAME", "Test");
+        env.put("GIT_COMMITTER_EMAIL", "test@example.com");
+        env.put("GIT_ALLOW_PROTOCOL", "file");
+        Process proc = pb.start();
+        String out = Utils.readString(proc.getInputStream(), "UTF-8", 512);
+        assertEquals(cmd.toString(), 0, proc.waitFor());
+        return out.trim();
+    }
+}
@@ -0,0 +1,130 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IndexMergerTest {
+
+    private static final String PAGES = "META-INF/http/pages.list";
+    private static final String SERVICES = "META-INF/services/com.x.Plugin";
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+    private Path classes;
+    private Path state;
+    private long clock;
+
+    @Test
+    public void testIncrementalCompilesKeepIndexesComplete() throws Exception {
+        // Full compile
+        compile("com.x.A", "com.x.B", "com.x.B$Inner", "com.x.C", "com.x.Impl");
+        index(PAGES, "# generated", "com.x.A:100", "com.x.B:200", "com.x.C:300");
+        index(SERVICES, "com.x.Impl");
+        assertEquals(0, merge());
+        assertEquals(Arrays.asList("# generated", "com.x.A:100", "com.x.B:200", "com.x.C:300"), read(PAGES));
+
+        // Only B recompiled, and the processor writes only B's line
+        compile("com.x.B", "com.x.B$Inner");
+        index(PAGES, "# generated", "com.x.B:250");
+        assertEquals(1, merge());
+        assertEquals(Arrays.asList("com.x.A:100", "com.x.C:300", "# generated", "com.x.B:250"), read(PAGES));
+        assertEquals(Arrays.asList("com.x.Impl"), read(SERVICES));
+
+        // C recompiled without its annotation - the processor writes nothing
+        compile("com.x.C");
+        assertEquals(1, merge());
+        assertEquals(Arrays.asList("com.x.A:100", "# generated", "com.x.B:250"), read(PAGES));
+
+        // A nested class registered, B deleted
+        compile("com.x.D", "com.x.D$Handler");
+        Files.delete(classFile("com.x.B"));
+        Files.delete(classFile("com.x.B$Inner"));
+        index(PAGES, "# generated", "com.x.D$Handler:50");
+        assertEquals(1, merge());
+        assertEquals(Arrays.asList("com.x.A:100", "# generated", "com.x.D$Handler:50"), read(PAGES));
+
+        // Impl deleted, leaving an empty service file, which is removed
+        Files.delete(classFile("com.x.Impl"));
+        assertEquals(1, merge());
+        assertFalse(Files.exists(classes.resolve(SERVICES)));
+
+        // Nothing changed
+        assertEquals(0, merge());
+        assertEquals(Arrays.asList("com.x.A:100", "# generated", "com.x.D$Handler:50"), read(PAGES));
+    }
+
+    @Test
+    public void testOwner() {
+        Map<String, Long> compiled = new HashMap<>();
+        compiled.put("com.x.A", 1L);
+        compiled.put("com.x.y.B", 1L);
+        assertEquals("com.x.A", IndexMerger.owner("com.x.A", compiled));
+        assertEquals("com.x.A", IndexMerger.owner("com.x.A$Nested:10", compiled));
+        assertEquals("com.x.A", IndexMerger.owner("com.x.A.Nested", compiled));
+        assertEquals("com.x.y.B", IndexMerger.owner("/path=com.x.y.B", compiled));
+        assertEquals("", IndexMerger.owner("# com.x.A", compiled));
+        assertEquals("", IndexMerger.owner("org.other.Thing", compiled));
+    }
+
+    private int merge() throws IOException {
+        int result = new IndexMerger(classes, Arrays.asList("META-INF/services/*", "META-INF/**/*.list"))
+                .merge(state);
+        // Everything written so far - including files the merge rewrote -
+        // predates the recorded run, and the next compile follows it,
+        // whatever the file system's timestamp granularity
+        try (java.util.stream.Stream<Path> all = Files.walk(classes)) {
+            for (Path p : (Iterable<Path>) all::iterator) {
+                Files.setLastModifiedTime(p, FileTime.fromMillis(clock));
+            }
+        }
+        String text = new String(Files.readAllBytes(state), StandardCharsets.UTF_8);
+        Files.write(state, ((clock + 5_000) + text.substring(text.indexOf('\n'))).getBytes(StandardCharsets.UTF_8));
+        clock += 10_000;
+        return result;
+    }
+
+    private void compile(String... names) throws IOException {
+        for (String name : names) {
+            touch(classFile(name), "");
+        }
+    }
+
+    private void index(String name, String... lines) throws IOException {
+        touch(classes.resolve(name), String.join("\n", lines) + "\n");
+    }
+
+    private void touch(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(clock));
+    }
+
+    private Path classFile(String name) {
+        return classes.resolve(name.replace('.', '/') + ".class");
+    }
+
+    private List<String> read(String name) throws IOException {
+        return Files.readAllLines(classes.resolve(name), StandardCharsets.UTF_8);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+        classes = dir.resolve("classes");
+        state = dir.resolve("index-contributions.txt");
+        clock = 1_000_000_000_000L;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ModuleFingerprintTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testFingerprintTracksContentNotLocation() throws Exception {
+        Path one = dir.resolve("one");
+        Path two = dir.resolve("two");
+        write(one.resolve("src/main/java/x/A.java"), "class A {}");
+        write(two.resolve("src/main/java/x/A.java"), "class A {}");
+        Map<String, String> reactor = new HashMap<>();
+        String a = ModuleFingerprint.of(project(one), one, "revision.", reactor);
+        assertEquals(a, ModuleFingerprint.of(project(two), two, "revision.", reactor));
+
+        // Published revision info is ignored
+        MavenProject published = project(one);
+        published.getProperties().setProperty("revision.longCommitHash", "abcdef");
+        assertEquals(a, ModuleFingerprint.of(published, one, "revision.", reactor));
+
+        // So are skip properties goals set to control the rest of the build
+        MavenProject skipped = project(one);
+        skipped.getProperties().setProperty("maven.source.skip", "false");
+        String unskipped = ModuleFingerprint.of(skipped, one, "revision.", reactor);
+        ModuleFingerprint.setControlProperty(skipped, "maven.javadoc.skip", "true");
+        ModuleFingerprint.setControlProperty(skipped, "maven.source.skip", "true");
+        ModuleFingerprint.setControlProperty(skipped, "maven.source.skip", "true");
+        assertEquals("true", skipped.getProperties().getProperty("maven.source.skip"));
+        assertEquals(unskipped, ModuleFingerprint.of(skipped, one, "revision.", reactor));
+
+        // A reactor dependency's fingerprint is part of the dependent's
+        MavenProject dependent = project(two);
+        Dependency dep = new Dependency();
+        dep.setGroupId("com.x");
+        dep.setArtifactId("lib");
+        dep.setVersion("1.0");
+        dependent.getModel().addDependency(dep);
+        reactor.put("com.x:lib:1.0", "1234");
+        String withDep = ModuleFingerprint.of(dependent, two, "revision.", reactor);
+        reactor.put("com.x:lib:1.0", "5678");
+        assertNotEquals(withDep, ModuleFingerprint.of(dependent, two, "revision.", reactor));
+
+        write(two.resolve("src/main/java/x/A.java"), "class A { }");
+        assertNotEquals(a, ModuleFingerprint.of(project(two), two, "revision.", Collections.emptyMap()));
+        write(two.resolve("src/main/java/x/A.java"), "class A {}");
+        write(two.resolve("src/main/java/x/B.java"), "");
+        assertNotEquals(a, ModuleFingerprint.of(project(two), two, "revision.", Collections.emptyMap()));
+    }
+
+    private static MavenProject project(Path basedir) {
+        Model model = new Model();
+        model.setModelVersion("4.0.0");
+        model.setGroupId("com.x");
+        model.setArtifactId("app");
+        model.setVersion("1.0");
+        model.setBuild(new Build());
+        MavenProject result = new MavenProject(model);
+        result.setFile(basedir.resolve("pom.xml").toFile());
+        result.addCompileSourceRoot(basedir.resolve("src/main/java").toString());
+        return result;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+}
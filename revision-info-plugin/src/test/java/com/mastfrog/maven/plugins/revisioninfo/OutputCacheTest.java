@@ -0,0 +1,90 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputCacheTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testStoreAndRestore() throws Exception {
+        assertNotEquals(OutputCache.key("abc", "1234-clean"), OutputCache.key("abc", "1234-dirty"));
+        Path classes = dir.resolve("a/target/classes");
+        Path jar = dir.resolve("a/target/a-1.0.jar");
+        write(classes.resolve("a/A.class"), "A");
+        write(classes.resolve("a/A$1.class"), "A$1");
+        write(classes.resolve("a.properties"), "x=1");
+        write(jar, "jar");
+        write(dir.resolve("a/target/maven-archiver/pom.properties"), "version=1.0");
+        FileTime built = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(classes.resolve("a/A.class"), built);
+
+        OutputCache cache = new OutputCache(dir.resolve("cache"), Long.MAX_VALUE);
+        assertFalse(cache.restore("k1", classes, jar));
+        assertEquals(0, cache.store("k1", "t:a:jar:1.0", classes, jar));
+        // Storing what is already there is harmless
+        assertEquals(0, cache.store("k1", "t:a:jar:1.0", classes, jar));
+
+        OutputCache.delete(dir.resolve("a/target"));
+        write(classes.resolve("stale.class"), "stale");
+        assertTrue(cache.restore("k1", classes, jar));
+        assertFalse("Restoring replaces what was there", Files.exists(classes.resolve("stale.class")));
+        assertArrayEquals("A$1".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(classes.resolve("a/A$1.class")));
+        assertArrayEquals("jar".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(jar));
+        assertTrue(Files.exists(dir.resolve("a/target/maven-archiver/pom.properties")));
+        assertEquals(built, Files.getLastModifiedTime(classes.resolve("a/A.class")));
+        assertTrue("Jar should be newer than its contents",
+                Files.getLastModifiedTime(jar).compareTo(Files.getLastModifiedTime(classes)) >= 0);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        Path classes = dir.resolve("classes");
+        Path jar = dir.resolve("x.jar");
+        write(classes.resolve("x/X.class"), "0123456789");
+        write(jar, "0123456789");
+        // Room for two entries of 20 bytes
+        OutputCache cache = new OutputCache(dir.resolve("cache"), 45);
+        assertEquals(0, cache.store("k1", "x", classes, jar));
+        assertEquals(0, cache.store("k2", "x", classes, jar));
+        Files.setLastModifiedTime(cache.entry("k1").resolve("entry.properties"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(cache.entry("k2").resolve("entry.properties"), FileTime.fromMillis(2000));
+        // Using k1 makes k2 the least recently used
+        assertTrue(cache.restore("k1", dir.resolve("restored"), dir.resolve("restored.jar")));
+
+        assertEquals(1, cache.store("k3", "x", classes, jar));
+        assertTrue(Files.exists(cache.entry("k1")));
+        assertFalse(Files.exists(cache.entry("k2")));
+        assertTrue(Files.exists(cache.entry("k3")));
+        assertFalse(cache.restore("k2", dir.resolve("restored"), dir.resolve("restored.jar")));
+    }
+
+    @Test
+    public void testParseSize() {
+        assertEquals(100, OutputCache.parseSize("100"));
+        assertEquals(2048, OutputCache.parseSize("2k"));
+        assertEquals(512L * 1024 * 1024, OutputCache.parseSize("512M"));
+        assertEquals(10L * 1024 * 1024 * 1024, OutputCache.parseSize("10g"));
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+}
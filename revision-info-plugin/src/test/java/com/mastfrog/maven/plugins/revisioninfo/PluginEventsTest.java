@@ -0,0 +1,101 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PluginEventsTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testNoOpWhenNotRecording() {
+        PluginEvents events = PluginEvents.get();
+        assertSame(PluginEvents.NO_OUTPUT_WRITE, events.outputWrite(dir));
+        assertSame(PluginEvents.NO_SOURCE_SCAN, events.sourceScan(Collections.singletonList(dir)));
+        assertSame(PluginEvents.NO_GIT_PROCESS, events.gitProcess(Collections.singletonList("git")));
+    }
+
+    @Test
+    public void testEventsAreRecorded() throws Exception {
+        // Tests are compiled for Java 8, so the JFR API is used reflectively
+        Class<?> recordingType;
+        try {
+            recordingType = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException ex) {
+            Assume.assumeTrue("No Flight Recorder", false);
+            return;
+        }
+        Assume.assumeTrue("Built without JFR events",
+                "JfrPluginEvents".equals(PluginEvents.get().getClass().getSimpleName()));
+        Path out = dir.resolve("out.txt");
+        write(dir.resolve("src/a/A.java"), "class A {}");
+        write(dir.resolve("src/a/b/B.java"), "class B {}");
+        Path jfr = dir.resolve("recording.jfr");
+        String gitOutput;
+        Object recording = recordingType.getConstructor().newInstance();
+        try {
+            Method enable = recordingType.getMethod("enable", String.class);
+            enable.invoke(recording, "com.mastfrog.revisioninfo.OutputWrite");
+            enable.invoke(recording, "com.mastfrog.revisioninfo.SourceScan");
+            enable.invoke(recording, "com.mastfrog.revisioninfo.GitProcess");
+            recordingType.getMethod("start").invoke(recording);
+            Utils.writeAtomically(out, "hello".getBytes(StandardCharsets.UTF_8));
+            Utils.writeAtomically(out, "hello".getBytes(StandardCharsets.UTF_8));
+            new SourceFingerprint(null, null).compute(Collections.singletonList(dir.resolve("src")));
+            gitOutput = new LibInfo(Collections.<Path>emptyList()).runGit(dir, new StringBuilder(), "--version");
+            recordingType.getMethod("stop").invoke(recording);
+            recordingType.getMethod("dump", Path.class).invoke(recording, jfr);
+        } finally {
+            recordingType.getMethod("close").invoke(recording);
+        }
+        List<String> writes = new ArrayList<>();
+        List<String> scans = new ArrayList<>();
+        List<Object> gitOutputSizes = new ArrayList<>();
+        Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+        for (Object event : (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, jfr)) {
+            Object type = event.getClass().getMethod("getEventType").invoke(event);
+            String name = (String) type.getClass().getMethod("getName").invoke(type);
+            Method value = event.getClass().getMethod("getValue", String.class);
+            switch (name) {
+                case "com.mastfrog.revisioninfo.OutputWrite":
+                    if (out.toString().equals(value.invoke(event, "path"))) {
+                        writes.add(value.invoke(event, "bytes") + ":" + value.invoke(event, "unchanged"));
+                    }
+                    break;
+                case "com.mastfrog.revisioninfo.SourceScan":
+                    scans.add(value.invoke(event, "directories") + ":" + value.invoke(event, "files"));
+                    break;
+                case "com.mastfrog.revisioninfo.GitProcess":
+                    gitOutputSizes.add(value.invoke(event, "outputSize"));
+                    break;
+                default:
+                    break;
+            }
+        }
+        assertEquals("[5:false, 5:true]", writes.toString());
+        assertEquals("[3:2]", scans.toString());
+        Assume.assumeNotNull(gitOutput);
+        assertEquals(Collections.singletonList((long) gitOutput.getBytes(StandardCharsets.UTF_8).length),
+                gitOutputSizes);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+}
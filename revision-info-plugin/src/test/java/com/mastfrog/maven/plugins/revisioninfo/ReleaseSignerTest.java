@@ -0,0 +1,113 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReleaseSignerTest {
+
+    private static final String PASSPHRASE = "not-a-secret";
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+    private Path gnupg;
+
+    @Test
+    public void testSignsAndChecksumsConcurrently() throws Exception {
+        List<Path> files = new ArrayList<>();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 8; i++) {
+            byte[] bytes = new byte[i * 10_000];
+            rnd.nextBytes(bytes);
+            files.add(Files.write(dir.resolve("artifact-" + i + ".jar"), bytes));
+        }
+        List<ReleaseSigner.Result> results = new ReleaseSigner("gpg", "test@example.com", PASSPHRASE, gnupg,
+                true, Arrays.asList("SHA-256", "SHA-512"), 4).process(files);
+        assertEquals(files.size(), results.size());
+        for (int i = 0; i < files.size(); i++) {
+            ReleaseSigner.Result r = results.get(i);
+            assertEquals(files.get(i), r.file);
+            assertNull(r.error, r.error);
+            assertEquals(files.get(i).resolveSibling("artifact-" + i + ".jar.asc"), r.signature);
+            assertEquals(0, gpg("--verify", r.signature.toString(), r.file.toString()));
+            byte[] bytes = Files.readAllBytes(r.file);
+            assertEquals(hex(MessageDigest.getInstance("SHA-256").digest(bytes)), read(r.checksums.get("sha256")));
+            assertEquals(hex(MessageDigest.getInstance("SHA-512").digest(bytes)), read(r.checksums.get("sha512")));
+        }
+    }
+
+    @Test
+    public void testFailuresAreReported() throws Exception {
+        Path file = Files.write(dir.resolve("thing.pom"), "<project/>".getBytes(StandardCharsets.UTF_8));
+        List<ReleaseSigner.Result> results = new ReleaseSigner("gpg", "nobody@example.com", PASSPHRASE, gnupg,
+                true, Collections.singletonList("SHA-256"), 2).process(Collections.singletonList(file));
+        assertNotNull(results.get(0).error);
+        assertTrue(Files.exists(dir.resolve("thing.pom.sha256")));
+        assertTrue(!Files.exists(dir.resolve("thing.pom.asc")));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+        gnupg = Files.createDirectories(dir.resolve("gnupg"));
+        Files.setPosixFilePermissions(gnupg, java.nio.file.attribute.PosixFilePermissions.fromString("rwx------"));
+        boolean haveGpg;
+        try {
+            haveGpg = gpg("--version") == 0;
+        } catch (IOException ex) {
+            haveGpg = false;
+        }
+        assumeTrue("gpg not installed", haveGpg);
+        assertEquals(0, gpg("--pinentry-mode", "loopback", "--passphrase", PASSPHRASE,
+                "--quick-generate-key", "Test <test@example.com>", "ed25519", "sign", "never"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (dir != null) {
+            try {
+                new ProcessBuilder("gpgconf", "--homedir", gnupg.toString(), "--kill", "gpg-agent")
+                        .redirectErrorStream(true).start().waitFor();
+            } catch (IOException ex) {
+                // not installed
+            }
+        }
+    }
+
+    private int gpg(String... args) throws Exception {
+        List<String> cmd = new ArrayList<>(Arrays.asList("gpg", "--homedir", gnupg.toString(), "--batch"));
+        cmd.addAll(Arrays.asList(args));
+        Process proc = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        Utils.readString(proc.getInputStream(), "UTF-8", 512);
+        return proc.waitFor();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -10,6 +10,9 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Properties;
 
 public class RevisionInfoMojoTest {
@@ -35,6 +38,10 @@ public class RevisionInfoMojoTest {
         RevisionInfoMojo mojo = (RevisionInfoMojo) rule.lookupConfiguredMojo(pom, "revision-info");
         assertNotNull(mojo);
         mojo.genClass = "com.foo.VersionInfo";
+        mojo.publishProperties = true;
+        mojo.sourceFingerprint = true;
+        mojo.nativeImage = true;
+        mojo.writeMetrics = true;
         mojo.execute();
 
         File outputDirectory = (File) rule.getVariableValueFromObject(mojo, "outputDirectory");
@@ -55,12 +62,28 @@ public class RevisionInfoMojoTest {
         assertTrue(p.containsKey(LibInfo.COMMIT_DATE_PROPERTY));
         assertTrue(p.containsKey(LibInfo.LONG_COMMIT_HASH_PROPERTY));
         assertTrue(p.containsKey(LibInfo.SHORT_COMMIT_HASH_PROPERTY));
+        assertTrue(p.containsKey(SourceFingerprint.PROPERTY));
+        Properties published = mojo.project.getProperties();
+        assertEquals(p.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY), published.getProperty("revision.longCommitHash"));
+        assertEquals(p.getProperty(LibInfo.REPO_STATUS_PROPERTY), published.getProperty("revision.repoStatus"));
 
         String source = Utils.readString(Files.newInputStream(sourceFile, StandardOpenOption.READ), "UTF-8", (int) Files.size(sourceFile));
         assertNotNull(source);
         assertTrue(source.contains("package com.foo;"));
         assertTrue(source.contains("class VersionInfo"));
 
+        Path nativeImage = mojo.nativeImageOutputDirectory();
+        String resourceConfig = new String(Files.readAllBytes(nativeImage.resolve(NativeImageMetadata.RESOURCE_CONFIG)), "UTF-8");
+        assertTrue(resourceConfig, resourceConfig.contains("\\\\QMETA-INF/com.mastfrog.revision-info-plugin.versions.properties\\\\E"));
+        String nativeImageProps = new String(Files.readAllBytes(nativeImage.resolve(NativeImageMetadata.PROPERTIES)), "UTF-8");
+        assertTrue(nativeImageProps, nativeImageProps.contains("--initialize-at-build-time=com.foo.VersionInfo"));
+
+        Path metricsFile = outputDirectory.toPath().resolve(RevisionInfoMetrics.MODULE_METRICS_FILE);
+        assertTrue(Files.exists(metricsFile));
+        String metrics = new String(Files.readAllBytes(metricsFile), "UTF-8");
+        assertTrue(metrics, metrics.contains("\"forks\": "));
+        assertTrue(metrics, metrics.contains("\"gitLog\""));
+
         for (String s : p.stringPropertyNames()) {
             switch (s) {
                 case LibInfo.COMMIT_DATE_ISO_PROPERTY:
@@ -73,6 +96,52 @@ public class RevisionInfoMojoTest {
 
     }
 
+    @Test
+    public void testOmittedPropertiesArePublishedAsUnknown() throws Exception {
+        RevisionInfoMojo mojo = (RevisionInfoMojo) rule.lookupConfiguredMojo(
+                new File("target/test-classes/project-to-test/"), "revision-info");
+        mojo.publishProperties = true;
+        mojo.describeDepth = 0;
+        mojo.cache = false;
+        mojo.execute();
+        Properties published = mojo.project.getProperties();
+        assertEquals(LibInfo.STATUS_UNKNOWN, published.getProperty("revision.describe"));
+        assertNotEquals(LibInfo.STATUS_UNKNOWN, published.getProperty("revision.longCommitHash"));
+    }
+
+    @WithoutMojo
+    @Test
+    public void testWriteAtomically() throws Exception {
+        Path dir = Files.createTempDirectory("write-atomically-");
+        Path file = dir.resolve("sub/file.properties");
+        assertTrue(Utils.writeAtomically(file, "a=longer value\n".getBytes("UTF-8")));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        assertFalse(Utils.writeAtomically(file, "a=longer value\n".getBytes("UTF-8")));
+        assertEquals(1000, Files.getLastModifiedTime(file).toMillis());
+        // Shorter content must not leave stale trailing bytes
+        assertTrue(Utils.writeAtomically(file, "a=b\n".getBytes("UTF-8")));
+        assertEquals("a=b\n", new String(Files.readAllBytes(file), "UTF-8"));
+        try (java.util.stream.Stream<Path> files = Files.list(file.getParent())) {
+            assertEquals(1, files.count());
+        }
+        if (Files.getFileStore(file).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            // Not the owner-only permissions of a temp file
+            Path plain = Files.createFile(dir.resolve("plain"));
+            Path other = dir.resolve("other");
+            assertTrue(Utils.writeAtomically(other, "x".getBytes("UTF-8")));
+            assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(other));
+            // Existing permissions are kept
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r-----"));
+            assertTrue(Utils.writeAtomically(file, "a=c\n".getBytes("UTF-8")));
+            assertEquals("rw-r-----", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+            Files.delete(plain);
+            Files.delete(other);
+        }
+        Files.delete(file);
+        Files.delete(file.getParent());
+        Files.delete(dir);
+    }
+
     @WithoutMojo
     @Test
     public void testBicapitalizeToName() {
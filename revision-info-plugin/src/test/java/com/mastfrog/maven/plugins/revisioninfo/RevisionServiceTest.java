@@ -0,0 +1,137 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.CACHE_HITS;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.FORKS;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RevisionServiceTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path repo;
+
+    @Test
+    public void testCachedUntilGitMetadataChanges() throws Exception {
+        RevisionService service = new RevisionService();
+        RevisionInfoMetrics metrics = new RevisionInfoMetrics("test");
+        LibInfo lib = new LibInfo(Collections.<Path>emptyList(), metrics);
+        StringBuilder errors = new StringBuilder();
+        Path module = repo.resolve("module");
+
+        Object firstBuild = new Object();
+        Properties first = service.info(module, lib, firstBuild, errors, metrics);
+        assertNotNull(errors.toString(), first);
+        assertEquals(LibInfo.STATUS_CLEAN, first.getProperty(LibInfo.REPO_STATUS_PROPERTY));
+        assertEquals(2, metrics.count(FORKS));
+
+        // Another module in the same repository in the same build; the git
+        // binary lookup is cached statically too, so count hits from here
+        long hits = metrics.count(CACHE_HITS);
+        Properties second = service.info(repo, lib, firstBuild, errors, metrics);
+        assertEquals(first, second);
+        assertEquals(2, metrics.count(FORKS));
+        assertEquals(hits + 1, metrics.count(CACHE_HITS));
+
+        // A working tree edit is invisible to the watcher, so a clean status
+        // must be rechecked in the next build
+        write(module.resolve("Edited.java"), "class Edited {}");
+        Properties dirty = service.info(module, lib, new Object(), errors, metrics);
+        assertEquals("dirty", dirty.getProperty(LibInfo.REPO_STATUS_PROPERTY));
+        assertEquals(4, metrics.count(FORKS));
+
+        // Dirty stays dirty until the metadata changes
+        service.info(module, lib, new Object(), errors, metrics);
+        assertEquals(4, metrics.count(FORKS));
+
+        git("add", "-A");
+        git("commit", "-q", "-m", "Second");
+        Properties committed = null;
+        for (int i = 0; i < 200; i++) {
+            committed = service.info(module, lib, new Object(), errors, metrics);
+            if (!first.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY)
+                    .equals(committed.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY))) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        assertNotEquals("Commit was not noticed", first.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY),
+                committed.getProperty(LibInfo.LONG_COMMIT_HASH_PROPERTY));
+        assertEquals(LibInfo.STATUS_CLEAN, committed.getProperty(LibInfo.REPO_STATUS_PROPERTY));
+    }
+
+    @Test
+    public void testSessionClonesShareCleanStatus() throws Exception {
+        RevisionService service = new RevisionService();
+        RevisionInfoMetrics metrics = new RevisionInfoMetrics("test");
+        LibInfo lib = new LibInfo(Collections.<Path>emptyList(), metrics);
+        MavenSession session = new MavenSession(null, null, new DefaultMavenExecutionRequest(), null);
+        Properties first = service.info(repo, lib, session, new StringBuilder(), metrics);
+        assertEquals(LibInfo.STATUS_CLEAN, first.getProperty(LibInfo.REPO_STATUS_PROPERTY));
+        assertEquals(2, metrics.count(FORKS));
+        // What Maven hands each project in the same build
+        service.info(repo.resolve("module"), lib, session.clone(), new StringBuilder(), metrics);
+        assertEquals(2, metrics.count(FORKS));
+    }
+
+    @Test
+    public void testUnrelatedMetadataChurnIsIgnored() throws Exception {
+        RevisionService service = new RevisionService();
+        RevisionInfoMetrics metrics = new RevisionInfoMetrics("test");
+        LibInfo lib = new LibInfo(Collections.<Path>emptyList(), metrics);
+        // Dirty, so the entry survives across builds while the metadata is unchanged
+        write(repo.resolve("module").resolve("Edited.java"), "class Edited {}");
+        service.info(repo, lib, new Object(), new StringBuilder(), metrics);
+        assertEquals(2, metrics.count(FORKS));
+        write(repo.resolve(".git").resolve("FETCH_HEAD"), "");
+        write(repo.resolve(".git").resolve("index.lock"), "");
+        Files.delete(repo.resolve(".git").resolve("index.lock"));
+        Thread.sleep(500);
+        service.info(repo, lib, new Object(), new StringBuilder(), metrics);
+        assertEquals("Cache was invalidated by unrelated files", 2, metrics.count(FORKS));
+        // But staging is noticed
+        git("add", "-A");
+        for (int i = 0; i < 200 && metrics.count(FORKS) == 2; i++) {
+            service.info(repo, lib, new Object(), new StringBuilder(), metrics);
+            Thread.sleep(50);
+        }
+        assertEquals("Staging was not noticed", 4, metrics.count(FORKS));
+    }
+
+    @Test
+    public void testReturnedPropertiesAreCopies() throws Exception {
+        RevisionService service = new RevisionService();
+        RevisionInfoMetrics metrics = new RevisionInfoMetrics("test");
+        LibInfo lib = new LibInfo(Collections.<Path>emptyList(), metrics);
+        Object build = new Object();
+        Properties a = service.info(repo, lib, build, new StringBuilder(), metrics);
+        a.setProperty("version", "1.0");
+        Properties b = service.info(repo, lib, build, new StringBuilder(), metrics);
+        assertEquals(null, b.getProperty("version"));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        repo = tmp.getRoot().toPath();
+        git("init", "-q");
+        write(repo.resolve("module").resolve("Foo.java"), "class Foo {}");
+        git("add", "-A");
+        git("commit", "-q", "-m", "First");
+    }
+
+    private void git(String... args) throws Exception {
+        GitFixtures.git(repo, args);
+    }
+}
@@ -0,0 +1,87 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceFingerprintTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testCachedHashesMatchFreshOnes() throws Exception {
+        Path src = dir.resolve("src");
+        Path res = dir.resolve("res");
+        for (int i = 0; i < 50; i++) {
+            write(src.resolve("x/A" + i + ".java"), "class A" + i + " {}");
+        }
+        write(res.resolve("x/messages.properties"), "a=b");
+        List<Path> roots = Arrays.asList(src, res, dir.resolve("missing"));
+        // Old enough that the cache trusts them
+        age(src, res);
+        Path cacheFile = dir.resolve("target/hashes.txt");
+
+        RevisionInfoMetrics first = new RevisionInfoMetrics("first");
+        String hash = new SourceFingerprint(cacheFile, first).compute(roots);
+        assertEquals(51, first.count(RevisionInfoMetrics.Counter.FILES_HASHED));
+        assertTrue(Files.exists(cacheFile));
+        assertEquals(hash, ModuleFingerprint.sources(roots));
+
+        RevisionInfoMetrics second = new RevisionInfoMetrics("second");
+        assertEquals(hash, new SourceFingerprint(cacheFile, second).compute(roots));
+        assertEquals(0, second.count(RevisionInfoMetrics.Counter.FILES_HASHED));
+        assertEquals(51, second.count(RevisionInfoMetrics.Counter.CACHE_HITS));
+
+        // A file changed without changing its size or timestamp is still
+        // rehashed if it was modified too close to when the cache was
+        // written to trust the timestamp
+        Path a = src.resolve("x/A1.java");
+        FileTime old = Files.getLastModifiedTime(a);
+        write(a, "class A2 {}");
+        Files.setLastModifiedTime(a, old);
+        String entries = new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8).split("\n", 2)[1];
+        Files.write(cacheFile, ((old.toMillis() + 1000) + "\n" + entries).getBytes(StandardCharsets.UTF_8));
+        RevisionInfoMetrics third = new RevisionInfoMetrics("third");
+        String changed = new SourceFingerprint(cacheFile, third).compute(roots);
+        assertNotEquals(hash, changed);
+        assertEquals(51, third.count(RevisionInfoMetrics.Counter.FILES_HASHED));
+
+        write(a, "class A1 {}");
+        age(src);
+        assertEquals(hash, new SourceFingerprint(cacheFile, new RevisionInfoMetrics("fourth")).compute(roots));
+
+        // Moving a file between roots changes the hash
+        Files.move(res.resolve("x/messages.properties"), src.resolve("x/messages.properties"));
+        assertNotEquals(hash, new SourceFingerprint(cacheFile, null).compute(roots));
+    }
+
+    private void age(Path... roots) throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        for (Path root : roots) {
+            try (java.util.stream.Stream<Path> all = Files.walk(root)) {
+                for (Path p : (Iterable<Path>) all::iterator) {
+                    Files.setLastModifiedTime(p, old);
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+}
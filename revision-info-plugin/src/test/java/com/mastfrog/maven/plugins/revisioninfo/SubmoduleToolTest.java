@@ -0,0 +1,208 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.git;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SubmoduleToolTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+    private Path remotes;
+    private Path superproject;
+    private ByteArrayOutputStream output;
+
+    @Test
+    public void testCommitAndPushAll() throws Exception {
+        write(superproject.resolve("lib1/File.txt"), "changed");
+        write(superproject.resolve("lib3/New.txt"), "new");
+        assertTrue(output(), tool(false).commit("Change things", true));
+
+        String lib1Head = git(superproject.resolve("lib1"), "rev-parse", "HEAD");
+        String lib3Head = git(superproject.resolve("lib3"), "rev-parse", "HEAD");
+        assertEquals(lib1Head, git(remotes.resolve("lib1.git"), "rev-parse", "master"));
+        assertEquals(lib3Head, git(remotes.resolve("lib3.git"), "rev-parse", "master"));
+        assertEquals("Change things", git(remotes.resolve("lib1.git"), "log", "-1", "--format=%s", "master"));
+        // The superproject remote has the new pointers in a single commit
+        Path superRemote = remotes.resolve("super.git");
+        assertEquals(lib1Head, pointer(superRemote, "lib1"));
+        assertEquals(lib3Head, pointer(superRemote, "lib3"));
+        assertEquals("Change things", git(superRemote, "log", "-1", "--format=%s", "master"));
+        assertEquals("Initial", git(superRemote, "log", "-1", "--format=%s", "master~1"));
+
+        String out = output();
+        assertTrue(out, out.indexOf("lib1: committed") < out.indexOf("lib3: committed"));
+        assertTrue(out, !out.contains("lib2:"));
+        assertTrue(out, out.contains(".: committed 2 submodule pointers"));
+    }
+
+    @Test
+    public void testPushCommitsPointers() throws Exception {
+        Path lib2 = superproject.resolve("lib2");
+        write(lib2.resolve("File.txt"), "changed");
+        git(lib2, "commit", "-q", "-am", "Local");
+        assertTrue(output(), tool(false).push("Sync"));
+        assertEquals(git(lib2, "rev-parse", "HEAD"), git(remotes.resolve("lib2.git"), "rev-parse", "master"));
+        assertEquals(git(lib2, "rev-parse", "HEAD"), pointer(remotes.resolve("super.git"), "lib2"));
+        assertEquals("Sync", git(remotes.resolve("super.git"), "log", "-1", "--format=%s", "master"));
+    }
+
+    @Test
+    public void testUpdatePullsSubmodules() throws Exception {
+        Path other = dir.resolve("other");
+        git(dir, "clone", "-q", remotes.resolve("lib2.git").toString(), other.toString());
+        configure(other);
+        write(other.resolve("File.txt"), "upstream change");
+        git(other, "commit", "-q", "-am", "Upstream");
+        git(other, "push", "-q");
+        String before = git(superproject.resolve("lib2"), "rev-parse", "HEAD");
+        assertTrue(output(), tool(false).update());
+        String after = git(superproject.resolve("lib2"), "rev-parse", "HEAD");
+        assertNotEquals(before, after);
+        assertEquals(git(other, "rev-parse", "HEAD"), after);
+        assertTrue(output(), output().contains("lib2: updated to " + after));
+    }
+
+    @Test
+    public void testDryRunChangesNothing() throws Exception {
+        write(superproject.resolve("lib1/File.txt"), "changed");
+        String before = git(remotes.resolve("lib1.git"), "rev-parse", "master");
+        assertTrue(output(), tool(true).commit("Nope", true));
+        assertEquals(before, git(remotes.resolve("lib1.git"), "rev-parse", "master"));
+        assertTrue(output(), output().contains("lib1: would run: git commit -q -m Nope"));
+    }
+
+    @Test
+    public void testDetachedSubmoduleIsNotCommitted() throws Exception {
+        Path lib1 = superproject.resolve("lib1");
+        git(lib1, "checkout", "-q", "--detach");
+        write(lib1.resolve("File.txt"), "changed");
+        String pointer = pointer(remotes.resolve("super.git"), "lib1");
+        assertFalse(output(), tool(false).commit("Detached", true));
+        assertTrue(output(), output().contains("FAILED lib1: detached HEAD, not committing 1 changes"));
+        assertEquals(pointer, git(lib1, "rev-parse", "HEAD"));
+        assertEquals(pointer, pointer(remotes.resolve("super.git"), "lib1"));
+    }
+
+    @Test
+    public void testUnpublishedPointerIsNotCommitted() throws Exception {
+        Path lib2 = superproject.resolve("lib2");
+        git(lib2, "checkout", "-q", "-b", "local");
+        write(lib2.resolve("File.txt"), "changed");
+        git(lib2, "commit", "-q", "-am", "Local only");
+        String pointer = pointer(remotes.resolve("super.git"), "lib2");
+        assertFalse(output(), tool(false).push("Sync"));
+        assertTrue(output(), output().contains("lib2 is at a commit on no remote branch"));
+        assertEquals(pointer, pointer(remotes.resolve("super.git"), "lib2"));
+        assertEquals(pointer, GitChanges.submoduleCommit(git(superproject, "ls-tree", "HEAD", "--", "lib2")));
+    }
+
+    @Test
+    public void testOptionsEndAtTheCommand() {
+        SubmoduleTool.Options opts = SubmoduleTool.Options.parse("commit", "fix", "-n", "handling");
+        assertFalse(opts.dryRun);
+        assertTrue(opts.push);
+        assertEquals(Arrays.asList("fix", "-n", "handling"), opts.message);
+
+        opts = SubmoduleTool.Options.parse("-n", "-j", "3", "commit", "--nopush", "--", "--nopush", "x");
+        assertTrue(opts.dryRun);
+        assertFalse(opts.push);
+        assertEquals(3, opts.threads);
+        assertEquals(Arrays.asList("--nopush", "x"), opts.message);
+
+        assertEquals("push", SubmoduleTool.Options.parse("--", "push").command);
+        assertNull(SubmoduleTool.Options.parse("-j", "many", "status"));
+        assertNull(SubmoduleTool.Options.parse("-j"));
+        assertNull(SubmoduleTool.Options.parse("--bogus", "status"));
+        assertNull(SubmoduleTool.Options.parse());
+    }
+
+    @Test
+    public void testRemoteTimeoutAppliesWhileGitIsSilent() throws Exception {
+        // Reads stdin, which is never closed, so never exits or writes
+        StringBuilder errors = new StringBuilder();
+        long start = System.nanoTime();
+        assertNull(new LibInfo(Collections.<Path>emptyList()).runGit(superproject, errors, 1,
+                "hash-object", "--stdin"));
+        assertTrue(errors.toString(), errors.toString().startsWith("Timed out"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testParseStatus() {
+        SubmoduleTool.RepoState state = SubmoduleTool.RepoState.parse("# branch.oid abcd\n"
+                + "# branch.head master\n# branch.upstream origin/master\n# branch.ab +2 -1\n"
+                + "1 .M N... 100644 100644 100644 abc abc File.txt\n? Untracked.txt\n");
+        assertEquals("master", state.branch);
+        assertEquals("origin/master", state.upstream);
+        assertEquals(2, state.ahead);
+        assertEquals(1, state.behind);
+        assertEquals(2, state.changes);
+        assertTrue(SubmoduleTool.RepoState.parse("# branch.head (detached)\n").detached());
+    }
+
+    private SubmoduleTool tool(boolean dryRun) {
+        return new SubmoduleTool(superproject, 2, dryRun, new PrintStream(output, true));
+    }
+
+    private String output() {
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String pointer(Path repo, String path) throws Exception {
+        return GitChanges.submoduleCommit(git(repo, "ls-tree", "master", "--", path));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        output = new ByteArrayOutputStream();
+        dir = tmp.getRoot().toPath();
+        remotes = dir.resolve("remotes");
+        Files.createDirectories(remotes);
+        for (String name : new String[]{"lib1", "lib2", "lib3", "super"}) {
+            Path bare = remotes.resolve(name + ".git");
+            git(remotes, "init", "-q", "--bare", bare.toString());
+            git(bare, "symbolic-ref", "HEAD", "refs/heads/master");
+            Path seed = dir.resolve("seed-" + name);
+            Files.createDirectories(seed);
+            git(seed, "init", "-q");
+            configure(seed);
+            git(seed, "checkout", "-q", "-b", "master");
+            git(seed, "remote", "add", "origin", bare.toString());
+            write(seed.resolve("File.txt"), name);
+            git(seed, "add", "-A");
+            git(seed, "commit", "-q", "-m", "Initial");
+            git(seed, "push", "-q", "-u", "origin", "master");
+        }
+        superproject = dir.resolve("seed-super");
+        for (String name : new String[]{"lib1", "lib2", "lib3"}) {
+            git(superproject, "-c", "protocol.file.allow=always", "submodule", "add", "-q",
+                    remotes.resolve(name + ".git").toString(), name);
+            configure(superproject.resolve(name));
+        }
+        git(superproject, "commit", "-q", "--amend", "--no-edit");
+        git(superproject, "push", "-q", "-f");
+    }
+
+    private static void configure(Path repo) throws Exception {
+        git(repo, "config", "user.name", "Test");
+        git(repo, "config", "user.email", "test@example.com");
+    }
+}
@@ -0,0 +1,111 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Properties;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import static com.mastfrog.maven.plugins.revisioninfo.RevisionInfoMetrics.Counter.FORKS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TagIndexTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path repo;
+
+    @Test
+    public void testMatchesGitDescribe() throws Exception {
+        commit("one");
+        git("tag", "-a", "-m", "Release", "v1.0");
+        commit("two");
+        assertDescribe();
+
+        git("checkout", "-q", "-b", "side", "HEAD~1");
+        commit("side-one");
+        git("tag", "side-tag");
+        commit("side-two");
+        git("checkout", "-q", "master");
+        commit("three");
+        git("merge", "-q", "--no-edit", "side");
+        assertDescribe();
+
+        write(repo.resolve("dirty.txt"), "dirty");
+        git("add", "dirty.txt");
+        assertDescribe();
+        git("commit", "-q", "-m", "clean again");
+
+        // Packed refs and packed objects
+        git("tag", "-a", "-m", "Packed", "v2.0");
+        commit("four");
+        git("gc", "-q");
+        assertDescribe();
+
+        git("checkout", "-q", "v2.0");
+        assertDescribe();
+    }
+
+    @Test
+    public void testNoTagsCostsNoExtraForks() throws Exception {
+        commit("one");
+        RevisionInfoMetrics metrics = new RevisionInfoMetrics("test");
+        Properties props = new LibInfo(Collections.<Path>emptyList(), metrics).getInfo(repo, new StringBuilder());
+        assertEquals(props.getProperty(LibInfo.SHORT_COMMIT_HASH_PROPERTY), props.getProperty(LibInfo.DESCRIBE_PROPERTY));
+        assertEquals(2, metrics.count(FORKS));
+    }
+
+    @Test
+    public void testStatusLargerThanThePipeBufferIsRead() throws Exception {
+        commit("one");
+        // Well over the 64k a pipe holds before git blocks writing to it
+        for (int i = 0; i < 2000; i++) {
+            write(repo.resolve(String.format("untracked-file-with-a-long-name-%05d.txt", i)), "x");
+        }
+        StringBuilder errors = new StringBuilder();
+        Properties props = new LibInfo(Collections.<Path>emptyList()).getInfo(repo, errors);
+        assertEquals(errors.toString(), "dirty", props.getProperty(LibInfo.REPO_STATUS_PROPERTY));
+    }
+
+    @Test
+    public void testDepthIsBounded() throws Exception {
+        commit("one");
+        git("tag", "v1.0");
+        commit("two");
+        commit("three");
+        StringBuilder errors = new StringBuilder();
+        Properties props = new LibInfo(Collections.<Path>emptyList()).describeDepth(2).getInfo(repo, errors);
+        assertEquals(props.getProperty(LibInfo.SHORT_COMMIT_HASH_PROPERTY), props.getProperty(LibInfo.DESCRIBE_PROPERTY));
+        props = new LibInfo(Collections.<Path>emptyList()).describeDepth(3).getInfo(repo, errors);
+        assertEquals("v1.0-2-g" + props.getProperty(LibInfo.SHORT_COMMIT_HASH_PROPERTY), props.getProperty(LibInfo.DESCRIBE_PROPERTY));
+        props = new LibInfo(Collections.<Path>emptyList()).describeDepth(0).getInfo(repo, errors);
+        assertEquals(null, props.getProperty(LibInfo.DESCRIBE_PROPERTY));
+    }
+
+    private void assertDescribe() throws Exception {
+        StringBuilder errors = new StringBuilder();
+        Properties props = new LibInfo(Collections.<Path>emptyList()).getInfo(repo, errors);
+        assertNotNull(errors.toString(), props);
+        assertEquals(git("describe", "--tags", "--always", "--dirty"), props.getProperty(LibInfo.DESCRIBE_PROPERTY));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        repo = tmp.getRoot().toPath();
+        git("init", "-q");
+        git("checkout", "-q", "-b", "master");
+    }
+
+    private void commit(String name) throws Exception {
+        write(repo.resolve(name + ".txt"), name);
+        git("add", "-A");
+        git("commit", "-q", "-m", name);
+    }
+
+    private String git(String... args) throws Exception {
+        return GitFixtures.git(repo, args);
+    }
+}
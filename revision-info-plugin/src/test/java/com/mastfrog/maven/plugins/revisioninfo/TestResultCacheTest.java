@@ -0,0 +1,102 @@
+package com.mastfrog.maven.plugins.revisioninfo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import static com.mastfrog.maven.plugins.revisioninfo.GitFixtures.write;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestResultCacheTest {
+
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+    private Path dir;
+
+    @Test
+    public void testKeyTracksTestSources() throws Exception {
+        write(dir.resolve("src/test/java/x/ATest.java"), "class ATest {}");
+        MavenProject project = project();
+        String key = TestResultCache.key("abc", project);
+        assertEquals(key, TestResultCache.key("abc", project));
+        assertNotEquals(key, TestResultCache.key("abd", project));
+
+        write(dir.resolve("src/test/resources/x/data.txt"), "data");
+        String withResource = TestResultCache.key("abc", project);
+        assertNotEquals(key, withResource);
+        write(dir.resolve("src/test/java/x/ATest.java"), "class ATest { }");
+        assertNotEquals(withResource, TestResultCache.key("abc", project));
+    }
+
+    @Test
+    public void testSummarizeAndRecord() throws Exception {
+        Path reports = dir.resolve("target/surefire-reports");
+        assertNull(TestResultCache.summarize(reports, 0));
+        write(reports.resolve("TEST-x.ATest.xml"), suite("x.ATest", 3, 0, 0, 1));
+        write(reports.resolve("TEST-x.BTest.xml"), suite("x.BTest", 2, 0, 0, 0));
+        write(reports.resolve("x.ATest.txt"), "Tests run: 3");
+        Path stale = reports.resolve("TEST-x.OldTest.xml");
+        write(stale, suite("x.OldTest", 5, 1, 0, 0));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(1000));
+
+        TestResultCache.Summary summary = TestResultCache.summarize(reports, 2000);
+        assertNotNull(summary);
+        assertEquals(5, summary.tests);
+        assertEquals(1, summary.skipped);
+        assertTrue(summary.passed());
+        assertFalse(TestResultCache.summarize(reports, 0).passed());
+
+        TestResultCache cache = new TestResultCache(dir.resolve("cache"));
+        assertNull(cache.lookup("1234"));
+        cache.put("1234", "com.x:app:jar:1.0", summary);
+        Properties props = cache.lookup("1234");
+        assertNotNull(props);
+        assertEquals("5", props.getProperty("tests"));
+        assertEquals("com.x:app:jar:1.0", props.getProperty("project"));
+        assertNull(cache.lookup("5678"));
+    }
+
+    private static String suite(String name, int tests, int failures, int errors, int skipped) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<testsuite xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" name=\"" + name
+                + "\" time=\"0.01\" tests=\"" + tests + "\" errors=\"" + errors + "\" skipped=\"" + skipped
+                + "\" failures=\"" + failures + "\">\n"
+                + "  <properties>\n    <property name=\"tests\" value=\"99\"/>\n  </properties>\n"
+                + "</testsuite>\n";
+    }
+
+    private MavenProject project() {
+        Model model = new Model();
+        model.setModelVersion("4.0.0");
+        model.setGroupId("com.x");
+        model.setArtifactId("app");
+        model.setVersion("1.0");
+        model.setBuild(new Build());
+        MavenProject result = new MavenProject(model);
+        result.setFile(dir.resolve("pom.xml").toFile());
+        result.addTestCompileSourceRoot(dir.resolve("src/test/java").toString());
+        Resource res = new Resource();
+        res.setDirectory(dir.resolve("src/test/resources").toString());
+        result.addTestResource(res);
+        return result;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot().toPath();
+    }
+}